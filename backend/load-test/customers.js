@@ -0,0 +1,51 @@
+// k6 load test for CustomerController, compare the default and the "virtual" profile
+//
+//   java -jar target/amigoscode-api-0.0.1-SNAPSHOT.jar
+//   java -jar target/amigoscode-api-0.0.1-SNAPSHOT.jar --spring.profiles.active=virtual   (built with -Pjava21)
+//   k6 run -e BASE_URL=http://localhost:8080 -e VUS=2000 load-test/customers.js
+//
+// watch http_req_duration p(95) and http_reqs/s, and hikaricp pending threads on the app side
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const VUS = parseInt(__ENV.VUS || '1000');
+
+export const options = {
+    scenarios: {
+        reads: {
+            executor: 'ramping-vus',
+            startVUs: 0,
+            stages: [
+                { duration: '30s', target: VUS },
+                { duration: '2m', target: VUS },
+                { duration: '15s', target: 0 },
+            ],
+        },
+    },
+    thresholds: {
+        http_req_failed: ['rate<0.01'],
+    },
+};
+
+// a few customers to read back
+export function setup() {
+    const ids = [];
+    for (let i = 0; i < 100; i++) {
+        const res = http.post(`${BASE_URL}/api/v1/customers`, JSON.stringify({
+            name: `load ${i}`,
+            email: `load-${Date.now()}-${i}@k6.io`,
+            age: 20 + (i % 50),
+        }), { headers: { 'Content-Type': 'application/json' } });
+        ids.push(res.json());
+    }
+    return { ids };
+}
+
+export default function (data) {
+    const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+    const res = Math.random() < 0.8
+        ? http.get(`${BASE_URL}/api/v1/customers/${id}`)
+        : http.get(`${BASE_URL}/api/v1/customers?limit=50`);
+    check(res, { 'status is 200': (r) => r.status === 200 });
+}
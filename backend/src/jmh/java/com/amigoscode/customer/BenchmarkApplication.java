@@ -0,0 +1,47 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.Main;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+// starts the application without a web server for the benchmarks
+// -Dbenchmark.datasource.url=jdbc:postgresql://... uses an existing database, otherwise every fork gets a
+// postgres container (flyway migrates both)
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        String url = System.getProperty("benchmark.datasource.url", "");
+        String username = System.getProperty("benchmark.datasource.username", "amigoscode");
+        String password = System.getProperty("benchmark.datasource.password", "password");
+        if (url.isBlank()) {
+            PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16.1")
+                    .withDatabaseName("customer")
+                    .withUsername(username)
+                    .withPassword(password);
+            postgres.start();
+            url = postgres.getJdbcUrl();
+        }
+
+        return new SpringApplicationBuilder(Main.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "spring.datasource.url=" + url,
+                        "spring.datasource.username=" + username,
+                        "spring.datasource.password=" + password,
+                        // printing every statement would be most of what we measure
+                        "spring.jpa.show-sql=false",
+                        // so is the statement monitor around the DataSource
+                        "customer.sql-monitor.enabled=false",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn"
+                )
+                .properties(properties)
+                .run();
+    }
+}
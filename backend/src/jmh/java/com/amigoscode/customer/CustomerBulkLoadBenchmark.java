@@ -0,0 +1,86 @@
+package com.amigoscode.customer;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// the two ways to load many customers on the same database: the jdbc dao's batched INSERT and COPY FROM STDIN
+// (CustomerCopyDataAccessService, what POST api/v1/customers/csv uses)
+// every invocation loads ROWS new customers, the score is rows per second
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerBulkLoadBenchmark {
+
+    // a constant, @OperationsPerInvocation needs one
+    private static final int ROWS = 20_000;
+
+    private ConfigurableApplicationContext context;
+    private CustomerDAO customerDAO;
+    private CustomerCopyDataAccessService copyDAO;
+    private String emailPrefix;
+    private long loads;
+
+    // what the next invocation loads, made outside of the measurement
+    private List<Customer> customers;
+    private byte[] csv;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        customerDAO = BeanFactoryAnnotationUtils.qualifiedBeanOfType(
+                context.getBeanFactory(), CustomerDAO.class, "jdbc"
+        );
+        copyDAO = context.getBean(CustomerCopyDataAccessService.class);
+        emailPrefix = "bench-" + UUID.randomUUID() + "-";
+    }
+
+    @Setup(Level.Invocation)
+    public void nextLoad() {
+        long load = loads++;
+        customers = new ArrayList<>(ROWS);
+        StringBuilder csv = new StringBuilder("name,email,age\n");
+        for (int i = 0; i < ROWS; i++) {
+            String email = emailPrefix + load + "-" + i + "@amigoscode.com";
+            customers.add(new Customer("bench " + i, email, 18 + i % 80));
+            csv.append("bench ").append(i).append(',').append(email).append(',').append(18 + i % 80).append('\n');
+        }
+        this.csv = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteLoaded() {
+        // so every iteration loads into a table of the same size
+        context.getBean(JdbcTemplate.class).update(
+                "DELETE FROM customer WHERE email LIKE ?", emailPrefix + "%"
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int[] batchInsert() {
+        return customerDAO.insertCustomers(customers);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public CustomerImportResult copyIn() {
+        return copyDAO.copyCustomersIn(new ByteArrayInputStream(csv));
+    }
+}
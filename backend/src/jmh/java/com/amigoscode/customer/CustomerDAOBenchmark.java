@@ -0,0 +1,104 @@
+package com.amigoscode.customer;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the same operations on every CustomerDAO, picked by qualifier
+// Throughput gives ops/ms, SampleTime the latency percentiles, run with -prof gc for the allocation rate
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerDAOBenchmark {
+
+    @Param({"jdbc", "jpa", "memory", "cached"})
+    private String dao;
+
+    // customers inserted before the measurement, on top of whatever the database already has
+    @Param({"1000"})
+    private int customers;
+
+    private ConfigurableApplicationContext context;
+    private CustomerDAO customerDAO;
+    private String emailPrefix;
+    private final AtomicLong inserted = new AtomicLong();
+    private Customer[] seeded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        customerDAO = BeanFactoryAnnotationUtils.qualifiedBeanOfType(
+                context.getBeanFactory(), CustomerDAO.class, dao
+        );
+
+        emailPrefix = "bench-" + UUID.randomUUID() + "-";
+        List<Customer> batch = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            batch.add(new Customer("bench " + i, emailPrefix + i + "@amigoscode.com", 18 + i % 80));
+        }
+        customerDAO.insertCustomers(batch);
+        seeded = customerDAO.selectAllCustomers()
+                .stream()
+                .filter(customer -> customer.getEmail().startsWith(emailPrefix))
+                .toArray(Customer[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // leave the database as we found it, it may be a real one
+        context.getBean(JdbcTemplate.class).update(
+                "DELETE FROM customer WHERE email LIKE ?", emailPrefix + "%"
+        );
+        context.close();
+    }
+
+    private Customer randomCustomer() {
+        return seeded[ThreadLocalRandom.current().nextInt(seeded.length)];
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDAO.selectCustomerById(randomCustomer().getId());
+    }
+
+    @Benchmark
+    public List<Customer> selectAllCustomers() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    @Benchmark
+    public boolean existsCustomerWithEmail() {
+        return customerDAO.existsCustomerWithEmail(randomCustomer().getEmail());
+    }
+
+    @Benchmark
+    public Customer insertCustomer() {
+        Customer customer = new Customer(
+                "bench", emailPrefix + "new-" + inserted.incrementAndGet() + "@amigoscode.com", 30
+        );
+        customerDAO.insertCustomer(customer);
+        return customer;
+    }
+
+    @Benchmark
+    public Customer updateCustomer() {
+        Customer seed = randomCustomer();
+        Customer customer = new Customer(
+                seed.getId(), "bench " + inserted.incrementAndGet(), seed.getEmail(), seed.getAge()
+        );
+        customerDAO.updateCustomer(customer);
+        return customer;
+    }
+}
@@ -0,0 +1,88 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// the customer list in each format CustomerController can answer with (see CustomerBinaryFormatsConfig), both
+// sides of a call between services: the server encoding it and the client decoding it
+// the setup prints the size of the payload, plain and gzipped
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CustomerFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"1000", "100000"})
+    private int customers;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<Customer> list;
+    private byte[] payload;
+    // throws the bytes away, and stays open
+    private final OutputStream response = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = switch (format) {
+            case "json" -> new ObjectMapper();
+            case "smile" -> new SmileMapper();
+            case "cbor" -> new CBORMapper();
+            default -> throw new IllegalArgumentException(format);
+        };
+        objectMapper.registerModule(new CustomerJsonModule());
+        TypeReference<List<Customer>> type = new TypeReference<>() {
+        };
+        writer = objectMapper.writerFor(type);
+        reader = objectMapper.readerFor(type);
+
+        list = new ArrayList<>();
+        for (int i = 1; i <= customers; i++) {
+            list.add(new Customer(i, "customer " + i, "customer" + i + "@amigoscode.com", 18 + i % 80, (long) i % 3));
+        }
+        payload = writer.writeValueAsBytes(list);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(payload);
+        }
+        System.out.printf("%n%s, %d customers: %,d bytes, %,d gzipped%n",
+                format, customers, payload.length, gzipped.size());
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writer.writeValue(response, list);
+    }
+
+    @Benchmark
+    public List<Customer> read() throws IOException {
+        return reader.readValue(payload);
+    }
+}
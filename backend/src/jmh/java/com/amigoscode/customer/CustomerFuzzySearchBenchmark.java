@@ -0,0 +1,82 @@
+package com.amigoscode.customer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the trigram index on its own, no database and no spring
+// names are a first and a last name out of a few hundred combinations, so like real ones every trigram is shared
+// by many customers. the queries are one of them with a typo, or a part of an email
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CustomerFuzzySearchBenchmark {
+    private static final String[] FIRST_NAMES = {
+            "james", "mary", "robert", "patricia", "john", "jennifer", "michael", "linda", "david", "elizabeth",
+            "william", "barbara", "richard", "susan", "joseph", "jessica", "thomas", "sarah", "charles", "karen",
+            "jamila", "alex", "mohamed", "fatima", "wei", "yuki", "olga", "pedro", "ana", "ivan"
+    };
+    private static final String[] LAST_NAMES = {
+            "smith", "johnson", "williams", "brown", "jones", "garcia", "miller", "davis", "rodriguez", "martinez",
+            "hernandez", "lopez", "gonzalez", "wilson", "anderson", "thomas", "taylor", "moore", "jackson", "martin",
+            "ahmed", "kowalski", "nguyen", "tanaka", "ivanova", "silva", "mueller", "rossi", "dubois", "larsen"
+    };
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "amigoscode.com", "outlook.com"};
+
+    @Param({"1000000"})
+    private int customers;
+
+    @Param({"name", "email", "number"})
+    private String query;
+
+    private CustomerTrigramIndex index;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new CustomerTrigramIndex();
+        long start = System.nanoTime();
+        for (int i = 1; i <= customers; i++) {
+            String first = FIRST_NAMES[i % FIRST_NAMES.length];
+            String last = LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+            index.put(new Customer(
+                    i,
+                    first + " " + last,
+                    first + "." + last + i + "@" + DOMAINS[i % DOMAINS.length],
+                    18 + i % 80,
+                    0L
+            ));
+        }
+        System.out.printf("%nindexed %d customers in %d ms%n", customers, (System.nanoTime() - start) / 1_000_000);
+
+        queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            int id = ThreadLocalRandom.current().nextInt(customers) + 1;
+            String first = FIRST_NAMES[id % FIRST_NAMES.length];
+            String last = LAST_NAMES[(id / FIRST_NAMES.length) % LAST_NAMES.length];
+            queries[i] = switch (query) {
+                // a letter dropped from the last name, matches every customer with that name
+                case "name" -> first + " " + last.substring(0, last.length() / 2) + last.substring(last.length() / 2 + 1);
+                // the start of an email with a letter dropped
+                case "email" -> first.substring(1) + "." + last + id;
+                // the last name and the number, like reading it off a form
+                case "number" -> last + id;
+                default -> throw new IllegalArgumentException(query);
+            };
+        }
+    }
+
+    private String query() {
+        return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+    }
+
+    @Benchmark
+    public List<CustomerFuzzyMatch> search() {
+        return index.search(query(), 0.5, 10);
+    }
+}
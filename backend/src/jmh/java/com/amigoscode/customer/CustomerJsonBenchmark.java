@@ -0,0 +1,87 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// a list and a page response written the way MappingJackson2HttpMessageConverter does it (a generator on the
+// response's output stream), with the default bean serializer and with CustomerJsonModule
+// the output stream throws the bytes away, so what is left is the serialization. -prof gc gives the bytes
+// allocated per response
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS) // a response of a thousand customers takes a few hundred microseconds
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CustomerJsonBenchmark {
+
+    @Param({"databind", "module"})
+    private String serializer;
+
+    @Param({"1000"})
+    private int customers;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter listWriter;
+    private ObjectWriter pageWriter;
+    private List<Customer> list;
+    private CustomerPage page;
+    // nullOutputStream() can't be written to once the generator closed it, spring's converter doesn't close the
+    // response's stream either
+    private final OutputStream response = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = switch (serializer) {
+            case "databind" -> new ObjectMapper();
+            case "module" -> new ObjectMapper().registerModule(new CustomerJsonModule());
+            default -> throw new IllegalArgumentException(serializer);
+        };
+        listWriter = objectMapper.writerFor(new TypeReference<List<Customer>>() {
+        });
+        pageWriter = objectMapper.writerFor(CustomerPage.class);
+
+        list = new ArrayList<>();
+        for (int i = 1; i <= customers; i++) {
+            list.add(new Customer(i, "customer " + i, "customer" + i + "@amigoscode.com", 18 + i % 80, (long) i % 3));
+        }
+        page = new CustomerPage(list, customers);
+
+        System.out.printf("%n%s, %d customers: %,d bytes of json%n",
+                serializer, customers, listWriter.writeValueAsBytes(list).length);
+    }
+
+    @Benchmark
+    public void writeList() throws IOException {
+        write(listWriter, list);
+    }
+
+    @Benchmark
+    public void writePage() throws IOException {
+        write(pageWriter, page);
+    }
+
+    private void write(ObjectWriter writer, Object value) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response, JsonEncoding.UTF8)) {
+            writer.writeValue(generator, value);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.amigoscode.customer;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// CustomerService as the controller calls it, through the cached dao
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerServiceBenchmark {
+
+    @Param({"1000"})
+    private int customers;
+
+    @Param({"50"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private CustomerService customerService;
+    private String emailPrefix;
+    private final AtomicLong counter = new AtomicLong();
+    private Integer[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        customerService = context.getBean(CustomerService.class);
+
+        emailPrefix = "bench-" + UUID.randomUUID() + "-";
+        ids = new Integer[customers];
+        for (int i = 0; i < customers; i++) {
+            ids[i] = customerService.addCustomer(new CustomerRegistratioRequest(
+                    "bench " + i, emailPrefix + i + "@amigoscode.com", 18 + i % 80
+            ));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.getBean(JdbcTemplate.class).update(
+                "DELETE FROM customer WHERE email LIKE ?", emailPrefix + "%"
+        );
+        context.close();
+    }
+
+    private Integer randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public Customer getCustomer() {
+        return customerService.getCustomer(randomId());
+    }
+
+    @Benchmark
+    public CustomerPage getCustomersPage() {
+        // start somewhere in the seeded ids, so it's not always the first page
+        return customerService.getCustomersPage(randomId(), pageSize);
+    }
+
+    @Benchmark
+    public Integer addCustomer() {
+        return customerService.addCustomer(new CustomerRegistratioRequest(
+                "bench", emailPrefix + "new-" + counter.incrementAndGet() + "@amigoscode.com", 30
+        ));
+    }
+
+    @Benchmark
+    public void updateCustomer() {
+        // a new name every time, the same value would be a validation error
+        customerService.updateCustomer(randomId(), new CustomerEditRequest(
+                "bench " + counter.incrementAndGet(), null, null
+        ));
+    }
+}
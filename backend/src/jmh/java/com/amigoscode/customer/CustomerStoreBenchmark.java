@@ -0,0 +1,78 @@
+package com.amigoscode.customer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the two in memory daos head to head, no database and no spring
+// the setup prints the footprint of each store (jol walks the object graph, the columnar arena is off-heap;
+// magicFieldOffset lets jol read the fields of the index lambdas)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djol.magicFieldOffset=true"})
+@State(Scope.Benchmark)
+public class CustomerStoreBenchmark {
+
+    @Param({"memory", "columnar"})
+    private String store;
+
+    @Param({"1000000"})
+    private int customers;
+
+    private CustomerDAO customerDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        customerDAO = switch (store) {
+            case "memory" -> new CustomerInMemoryDataAccessService();
+            case "columnar" -> new CustomerColumnarDataAccessService();
+            default -> throw new IllegalArgumentException(store);
+        };
+
+        List<Customer> batch = new ArrayList<>();
+        for (int i = 0; i < customers; i++) {
+            batch.add(new Customer("customer " + i, "customer" + i + "@amigoscode.com", 18 + i % 80));
+            if (batch.size() == 10_000) {
+                customerDAO.insertCustomers(batch);
+                batch.clear();
+            }
+        }
+        customerDAO.insertCustomers(batch);
+
+        GraphLayout layout = GraphLayout.parseInstance(customerDAO);
+        long offHeap = customerDAO instanceof CustomerColumnarDataAccessService columnar
+                ? columnar.offHeapBytes()
+                : 0;
+        System.out.printf(
+                "%n%s store, %d customers: %d objects, %,d bytes heap, %,d bytes off-heap, %.1f bytes per customer%n",
+                store, customers, layout.totalCount(), layout.totalSize(), offHeap,
+                (layout.totalSize() + offHeap) / (double) customers
+        );
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(customers) + 1;
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDAO.selectCustomerById(randomId());
+    }
+
+    @Benchmark
+    public boolean existsCustomerWithEmail() {
+        return customerDAO.existsCustomerWithEmail("customer" + (randomId() - 1) + "@amigoscode.com");
+    }
+
+    @Benchmark
+    public List<Customer> selectCustomersAfter() {
+        return customerDAO.selectCustomersAfter(randomId(), 50);
+    }
+}
@@ -1,10 +1,12 @@
 package com.amigoscode.customer;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Objects;
 
 @Entity
+@DynamicUpdate // only the changed columns end up in the UPDATE
 @Table(
         name = "customer",
         uniqueConstraints = {
@@ -38,6 +40,14 @@ public class Customer implements Cloneable{
             nullable = false
     )
     private Integer age;
+    // bumped by every update, it is the etag of the customer and what optimistic locking checks:
+    // hibernate writes "where id = ? and version = ?" and fails the flush when someone else updated the row,
+    // the jdbc daos do the same in their UPDATE
+    @Version
+    @Column(
+            nullable = false
+    )
+    private Long version;
 
     public Customer() {
     }
@@ -49,6 +59,11 @@ public class Customer implements Cloneable{
         this.age = age;
     }
 
+    public Customer(Integer id, String name, String email, Integer age, Long version) {
+        this(id, name, email, age);
+        this.version = version;
+    }
+
     public Customer(String name, String email, Integer age) {
         this.name = name;
         this.email = email;
@@ -87,7 +102,16 @@ public class Customer implements Cloneable{
         this.age = age;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 
+    // version is left out, two reads of the same data are equal whatever the number of updates in between
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -109,6 +133,7 @@ public class Customer implements Cloneable{
                 ", name='" + name + '\'' +
                 ", email='" + email + '\'' +
                 ", age=" + age +
+                ", version=" + version +
                 '}';
     }
 
@@ -0,0 +1,14 @@
+package com.amigoscode.customer;
+
+public record CustomerBatchRegistrationResult(
+        int index, // position of the row in the request
+        String email,
+        Status status
+) {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE, // email already registered or repeated earlier in the same batch
+        INVALID // name, email or age missing
+    }
+}
@@ -0,0 +1,29 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// binary json for the services calling the api: the same endpoints read and write cbor (application/cbor) or smile
+// (application/x-jackson-smile) when the Accept or Content-Type header asks for it, json stays the default
+// spring would add both converters on its own with a plain mapper, these are built from spring boot's builder so
+// they get the same settings and modules (CustomerJsonModule) as the json one, and they take the place of the
+// default ones, after json
+@Configuration
+public class CustomerBinaryFormatsConfig {
+
+    // the builder is a prototype, every bean gets its own
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,257 @@
+package com.amigoscode.customer;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// read-through cache by id in front of another dao
+// caffeine evicts with W-TinyLFU once maximum-size is reached, and entries expire after the ttl
+// the map holds futures so a load never runs inside the map's lock (a blocking jdbc call in there
+// would pin the carrier thread when requests run on virtual threads)
+// email checks go through CustomerEmailFilter first, only an email it may have seen is looked up
+// every write is published through CustomerInvalidations, so the caches of other nodes drop the customer too
+@Repository("cached")
+public class CustomerCachingDataAccessService implements CustomerDAO, MeterBinder {
+
+    private final CustomerDAO customerDAO;
+    private final AsyncCache<Integer, Customer> customersById;
+    private final CustomerEmailFilter emailFilter;
+    private final CustomerInvalidations invalidations;
+
+    public CustomerCachingDataAccessService(
+            @Qualifier("jdbc") CustomerDAO customerDAO,
+            // only there with customer.write-behind.enabled=true, it sits between the cache and the jdbc dao
+            @Qualifier("write-behind") Optional<CustomerDAO> writeBehind,
+            @Value("${customer.cache.maximum-size:10000}") long maximumSize,
+            @Value("${customer.cache.expire-after-write:5m}") Duration expireAfterWrite,
+            CustomerEmailFilter emailFilter,
+            CustomerInvalidations invalidations
+    ) {
+        this.customerDAO = writeBehind.orElse(customerDAO);
+        this.customersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        this.emailFilter = emailFilter;
+        this.invalidations = invalidations;
+        invalidations.subscribe(this::invalidated);
+    }
+
+    // a write on another node
+    private void invalidated(CustomerInvalidation invalidation) {
+        if (invalidation.all()) {
+            customersById.synchronous().invalidateAll();
+        } else {
+            customersById.synchronous().invalidateAll(invalidation.customerIds());
+        }
+    }
+
+    // hit, miss and eviction counters
+    public CacheStats stats() {
+        return customersById.synchronous().stats();
+    }
+
+    public long estimatedSize() {
+        return customersById.synchronous().estimatedSize();
+    }
+
+    // the same counters as cache_gets_total{cache="customers"...} etc.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, customersById, "customers");
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return customerDAO.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        return customerDAO.searchCustomers(search, afterId, limit);
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        customerDAO.forEachCustomer(action);
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        // concurrent misses for the same id wait for a single load
+        CompletableFuture<Customer> loading = new CompletableFuture<>();
+        CompletableFuture<Customer> cached = customersById.get(customerId, (id, executor) -> loading);
+        if (cached == loading) {
+            // we registered the future, so we do the load, on the caller's thread and outside the lock
+            // a missing customer is not cached (completing with null removes the entry), so a new insert is never hidden
+            try {
+                loading.complete(customerDAO.selectCustomerById(customerId).orElse(null));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        // Customer is mutable, callers get their own copy so they can't change the cached one
+        return Optional.ofNullable(join(cached)).map(Customer::clone);
+    }
+
+    private static Customer join(CompletableFuture<Customer> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // a waiter sees the same exception as the caller that did the load
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        emailFilter.adding(customer.getEmail(), () -> {
+            customerDAO.insertCustomer(customer);
+            return null;
+        });
+        // the id is generated by the db and misses are not cached, so there is nothing to evict
+        // except when the caller brings its own id
+        if (customer.getId() != null) {
+            customersById.synchronous().invalidate(customer.getId());
+        }
+        invalidations.publish(
+                customer.getId() == null ? List.of() : List.of(customer.getId()),
+                emailOf(customer)
+        );
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        // a brand new id, nothing cached for it
+        Optional<Integer> id = emailFilter.adding(
+                customer.getEmail(),
+                () -> customerDAO.insertCustomerReturningId(customer)
+        );
+        if (id.isPresent()) {
+            invalidations.publish(List.of(), emailOf(customer));
+        }
+        return id;
+    }
+
+    @Override
+    public int[] insertCustomers(List<Customer> customers) {
+        // same as insertCustomer, new ids can't be in the cache
+        List<String> emails = customers.stream().map(Customer::getEmail).toList();
+        int[] inserted = emailFilter.adding(emails, () -> customerDAO.insertCustomers(customers));
+        List<String> insertedEmails = new ArrayList<>();
+        for (int i = 0; i < emails.size(); i++) {
+            // 0 for a taken email, another node has it already
+            if (inserted == null || inserted.length != emails.size() || inserted[i] != 0) {
+                insertedEmails.add(emails.get(i));
+            }
+        }
+        invalidations.publish(List.of(), insertedEmails);
+        return inserted;
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        if (!emailFilter.mightContain(email)) {
+            return false;
+        }
+        boolean exists = customerDAO.existsCustomerWithEmail(email);
+        if (!exists) {
+            emailFilter.falsePositives(1);
+        }
+        return exists;
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        // only the possible hits are looked up, usually none of them in a batch of new customers
+        List<String> maybe = emails.stream().filter(emailFilter::mightContain).toList();
+        if (maybe.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> existing = customerDAO.selectExistingEmails(maybe);
+        emailFilter.falsePositives(maybe.size() - existing.size());
+        return existing;
+    }
+
+    @Override
+    public boolean deleteCustomer(Integer customerId) {
+        boolean deleted = customerDAO.deleteCustomer(customerId);
+        customersById.synchronous().invalidate(customerId);
+        if (deleted) {
+            emailFilter.removed();
+            invalidations.publish(List.of(customerId), List.of());
+        }
+        return deleted;
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        // only a completed load counts, don't wait for one in flight
+        CompletableFuture<Customer> cached = customersById.getIfPresent(customerId);
+        if (cached != null && !cached.isCompletedExceptionally() && cached.getNow(null) != null) {
+            return true;
+        }
+        return customerDAO.existsCustomerWithId(customerId);
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        try {
+            // the email may be a new one, there is no telling whether the old one is gone
+            emailFilter.adding(customer.getEmail(), () -> {
+                customerDAO.updateCustomer(customer);
+                return null;
+            });
+            // a stale version threw, the node that won published its own
+            invalidations.publish(List.of(customer.getId()), emailOf(customer));
+        } finally {
+            // a version conflict means someone else wrote, what we have may be stale too
+            customersById.synchronous().invalidate(customer.getId());
+        }
+    }
+
+    @Override
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        Optional<CustomerUpdateResult> result = changes.getEmail() == null
+                ? customerDAO.updateCustomerIfChanged(changes)
+                : emailFilter.adding(changes.getEmail(), () -> customerDAO.updateCustomerIfChanged(changes));
+        if (result.map(CustomerUpdateResult::updated).orElse(false)) {
+            customersById.synchronous().invalidate(changes.getId());
+            if (changes.getEmail() != null && !changes.getEmail().equals(result.get().previous().getEmail())) {
+                emailFilter.removed();
+            }
+            invalidations.publish(List.of(changes.getId()), emailOf(changes));
+        }
+        return result;
+    }
+
+    private static List<String> emailOf(Customer customer) {
+        return customer.getEmail() == null ? List.of() : List.of(customer.getEmail());
+    }
+}
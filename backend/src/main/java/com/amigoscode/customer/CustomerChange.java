@@ -0,0 +1,10 @@
+package com.amigoscode.customer;
+
+// the latest change to one customer, see CustomerSyncDAO
+public record CustomerChange(
+        long xid, // of the transaction that made it
+        Integer customerId,
+        Customer customer // as it is now, null when it was deleted
+) {
+
+}
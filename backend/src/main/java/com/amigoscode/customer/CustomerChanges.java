@@ -0,0 +1,12 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+public record CustomerChanges(
+        List<Customer> customers, // created or updated since, as they are now
+        List<Integer> deletedCustomerIds,
+        String watermark, // pass it back as ?since= next time
+        boolean more // there are more changes already, ask again right away
+) {
+
+}
@@ -0,0 +1,500 @@
+package com.amigoscode.customer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+// in memory dao that stores customers as columns instead of objects
+// - id and age are int[] columns and version a long[] one, a customer is a slot (an index into the columns)
+// - name and email are utf-8 bytes in an off-heap arena, the columns keep offset and length
+// - CustomerSlotIndex maps id -> slot and email -> slot with open addressing
+// Customer objects only exist on the way in and out. a million customers are a handful of arrays and one
+// direct buffer instead of ~5 million objects for the gc to trace, see CustomerStoreBenchmark for the numbers.
+// slots are appended; deleted slots and overwritten strings are garbage until compact() rewrites the store
+@Repository("columnar")
+public class CustomerColumnarDataAccessService implements CustomerDAO {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+    // how many customers forEachCustomer copies per read lock
+    private static final int EXPORT_CHUNK = 1000;
+
+    // readers share the lock, writers are exclusive
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] ids = new int[INITIAL_SLOTS];
+    private int[] ages = new int[INITIAL_SLOTS];
+    private long[] versions = new long[INITIAL_SLOTS];
+    private int[] nameOffsets = new int[INITIAL_SLOTS];
+    private int[] nameLengths = new int[INITIAL_SLOTS];
+    private int[] emailOffsets = new int[INITIAL_SLOTS];
+    private int[] emailLengths = new int[INITIAL_SLOTS];
+    private int[] emailHashes = new int[INITIAL_SLOTS];
+    private BitSet deleted = new BitSet();
+    private int slots; // slots in use, live or deleted
+    private ByteBuffer arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+    private int arenaUsed;
+    private int arenaGarbage;
+    private int lastId;
+    // true while slots are in id order (ids generated here always are), keyset pages then binary search
+    private boolean sortedById = true;
+
+    private CustomerSlotIndex idIndex = newIdIndex(INITIAL_SLOTS);
+    private CustomerSlotIndex emailIndex = newEmailIndex(INITIAL_SLOTS);
+
+    private CustomerSlotIndex newIdIndex(int expectedSize) {
+        return new CustomerSlotIndex(expectedSize, slot -> ids[slot]);
+    }
+
+    private CustomerSlotIndex newEmailIndex(int expectedSize) {
+        return new CustomerSlotIndex(expectedSize, slot -> emailHashes[slot]);
+    }
+
+    // --- reads, under the read lock
+
+    private Customer materialize(int slot) {
+        return new Customer(
+                ids[slot],
+                readString(nameOffsets[slot], nameLengths[slot]),
+                readString(emailOffsets[slot], emailLengths[slot]),
+                ages[slot],
+                versions[slot]
+        );
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        arena.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int slotOfId(int id) {
+        return idIndex.find(id, slot -> ids[slot] == id);
+    }
+
+    private int slotOfEmail(byte[] email, int hash) {
+        return emailIndex.find(hash, slot -> emailHashes[slot] == hash && emailEquals(slot, email));
+    }
+
+    private boolean emailEquals(int slot, byte[] email) {
+        if (emailLengths[slot] != email.length) {
+            return false;
+        }
+        int offset = emailOffsets[slot];
+        for (int i = 0; i < email.length; i++) {
+            if (arena.get(offset + i) != email[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // first slot with an id greater than afterId, slots must be sorted by id
+    private int firstSlotAfter(int afterId) {
+        int low = 0;
+        int high = slots;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] <= afterId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return selectCustomersAfter(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return selectSlotsAfter(afterId, limit, slot -> true);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        // the age column is checked first, names and emails are only decoded for the slots that are left
+        return selectSlotsAfter(afterId, limit, slot -> search.matchesAge(ages[slot])
+                && search.matchesName(readString(nameOffsets[slot], nameLengths[slot]))
+                && search.matchesEmail(readString(emailOffsets[slot], emailLengths[slot])));
+    }
+
+    // live slots with an id greater than afterId that pass matches, in id order, at most limit of them
+    private List<Customer> selectSlotsAfter(Integer afterId, int limit, IntPredicate matches) {
+        int after = afterId == null ? Integer.MIN_VALUE : afterId;
+        lock.readLock().lock();
+        try {
+            List<Customer> customers = new ArrayList<>(Math.min(limit, slots));
+            if (sortedById) {
+                for (int slot = firstSlotAfter(after); slot < slots && customers.size() < limit; slot++) {
+                    if (!deleted.get(slot) && matches.test(slot)) {
+                        customers.add(materialize(slot));
+                    }
+                }
+                return customers;
+            }
+            // an explicit id out of order was inserted, sort the ids left before materializing
+            // id in the high half and slot in the low half, so a primitive sort orders the slots by id
+            long[] idAndSlot = new long[slots - deleted.cardinality()];
+            int count = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                if (!deleted.get(slot) && ids[slot] > after && matches.test(slot)) {
+                    idAndSlot[count++] = ((long) ids[slot] << 32) | slot;
+                }
+            }
+            Arrays.sort(idAndSlot, 0, count);
+            for (int i = 0; i < count && customers.size() < limit; i++) {
+                customers.add(materialize((int) idAndSlot[i]));
+            }
+            return customers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        // keyset chunks, so writers only wait for one chunk to be copied and not for the whole export
+        Integer after = null;
+        while (true) {
+            List<Customer> chunk = selectCustomersAfter(after, EXPORT_CHUNK);
+            chunk.forEach(action);
+            if (chunk.size() < EXPORT_CHUNK) {
+                return;
+            }
+            after = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        if (customerId == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int slot = slotOfId(customerId);
+            return slot < 0 ? Optional.empty() : Optional.of(materialize(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        if (email == null) {
+            return false;
+        }
+        byte[] bytes = utf8(email);
+        int hash = Arrays.hashCode(bytes);
+        lock.readLock().lock();
+        try {
+            return slotOfEmail(bytes, hash) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        for (String email : emails) {
+            if (existsCustomerWithEmail(email)) {
+                existing.add(email);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return slotOfId(customerId) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- writes, under the write lock
+
+    private int writeString(byte[] bytes) {
+        if (arenaUsed + bytes.length > arena.capacity()) {
+            growArena(arenaUsed + bytes.length);
+        }
+        int offset = arenaUsed;
+        arena.put(offset, bytes);
+        arenaUsed += bytes.length;
+        return offset;
+    }
+
+    private void growArena(int needed) {
+        int capacity = arena.capacity();
+        while (capacity < needed) {
+            capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : capacity * 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        grown.put(0, arena, 0, arenaUsed);
+        arena = grown;
+    }
+
+    private void ensureSlots(int needed) {
+        if (needed <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(needed, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        emailOffsets = Arrays.copyOf(emailOffsets, capacity);
+        emailLengths = Arrays.copyOf(emailLengths, capacity);
+        emailHashes = Arrays.copyOf(emailHashes, capacity);
+    }
+
+    // null when the email is taken, the caller decides if that is an error
+    private Integer append(Integer id, String name, String email, int age, long version) {
+        byte[] emailBytes = utf8(email);
+        int emailHash = Arrays.hashCode(emailBytes);
+        if (slotOfEmail(emailBytes, emailHash) >= 0) {
+            return null;
+        }
+        int newId;
+        if (id == null) {
+            newId = ++lastId;
+        } else {
+            if (slotOfId(id) >= 0) {
+                throw new DuplicateKeyException("id already taken: " + id);
+            }
+            // an explicit id moves the generator past it, like setval on a sequence
+            newId = id;
+            lastId = Math.max(lastId, id);
+        }
+        if (slots > 0 && newId < ids[slots - 1]) {
+            sortedById = false;
+        }
+
+        ensureSlots(slots + 1);
+        int slot = slots++;
+        byte[] nameBytes = utf8(name);
+        ids[slot] = newId;
+        ages[slot] = age;
+        versions[slot] = version;
+        nameOffsets[slot] = writeString(nameBytes);
+        nameLengths[slot] = nameBytes.length;
+        emailOffsets[slot] = writeString(emailBytes);
+        emailLengths[slot] = emailBytes.length;
+        emailHashes[slot] = emailHash;
+        idIndex.add(newId, slot);
+        emailIndex.add(emailHash, slot);
+        return newId;
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            if (append(customer.getId(), customer.getName(), customer.getEmail(), customer.getAge(), 0) == null) {
+                throw new DuplicateKeyException("email already taken: " + customer.getEmail());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            return Optional.ofNullable(append(null, customer.getName(), customer.getEmail(), customer.getAge(), 0));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] insertCustomers(List<Customer> customers) {
+        int[] inserted = new int[customers.size()];
+        lock.writeLock().lock();
+        try {
+            ensureSlots(slots + customers.size());
+            for (int i = 0; i < customers.size(); i++) {
+                Customer customer = customers.get(i);
+                if (append(null, customer.getName(), customer.getEmail(), customer.getAge(), 0) != null) {
+                    inserted[i] = 1;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean deleteCustomer(Integer customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = slotOfId(customerId);
+            if (slot < 0) {
+                return false;
+            }
+            idIndex.remove(customerId, slot);
+            emailIndex.remove(emailHashes[slot], slot);
+            deleted.set(slot);
+            arenaGarbage += nameLengths[slot] + emailLengths[slot];
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOfId(customer.getId());
+            // same as the sql: with a version, only that version of the row is written
+            if (customer.getVersion() != null && (slot < 0 || versions[slot] != customer.getVersion())) {
+                throw CustomerJDBCDataAccessService.versionConflict(customer);
+            }
+            if (slot >= 0) {
+                write(slot, customer.getName(), customer.getEmail(), customer.getAge());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOfId(changes.getId());
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            Customer previous = materialize(slot);
+            // same rule as the sql: only write when every given field changes
+            boolean changed = (changes.getName() != null || changes.getEmail() != null || changes.getAge() != null)
+                    && (changes.getName() == null || !changes.getName().equals(previous.getName()))
+                    && (changes.getEmail() == null || !changes.getEmail().equals(previous.getEmail()))
+                    && (changes.getAge() == null || !changes.getAge().equals(previous.getAge()))
+                    && (changes.getVersion() == null || changes.getVersion().equals(previous.getVersion()));
+            if (changed) {
+                write(slot, changes.getName(), changes.getEmail(), changes.getAge());
+            }
+            return Optional.of(new CustomerUpdateResult(previous, changed));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // in place, null leaves a column as it is. a new string goes to the end of the arena, the old bytes are garbage
+    // every write is a new version
+    private void write(int slot, String name, String email, Integer age) {
+        if (email != null) {
+            byte[] emailBytes = utf8(email);
+            int emailHash = Arrays.hashCode(emailBytes);
+            if (!emailEquals(slot, emailBytes)) {
+                if (slotOfEmail(emailBytes, emailHash) >= 0) {
+                    throw new DuplicateKeyException("email already taken: " + email);
+                }
+                emailIndex.remove(emailHashes[slot], slot);
+                arenaGarbage += emailLengths[slot];
+                emailOffsets[slot] = writeString(emailBytes);
+                emailLengths[slot] = emailBytes.length;
+                emailHashes[slot] = emailHash;
+                emailIndex.add(emailHash, slot);
+            }
+        }
+        if (name != null) {
+            byte[] nameBytes = utf8(name);
+            arenaGarbage += nameLengths[slot];
+            nameOffsets[slot] = writeString(nameBytes);
+            nameLengths[slot] = nameBytes.length;
+        }
+        if (age != null) {
+            ages[slot] = age;
+        }
+        versions[slot]++;
+        compactIfWasteful();
+    }
+
+    private void compactIfWasteful() {
+        int deletedSlots = deleted.cardinality();
+        boolean slotsWasted = deletedSlots > INITIAL_SLOTS && deletedSlots > slots / 2;
+        boolean arenaWasted = arenaGarbage > INITIAL_ARENA_BYTES && arenaGarbage > arenaUsed / 2;
+        if (slotsWasted || arenaWasted) {
+            compact();
+        }
+    }
+
+    // rewrites the live customers into fresh columns and arena, in id order
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            List<Customer> live = selectAllCustomers();
+            int capacity = Math.max(INITIAL_SLOTS, live.size() * 2);
+            ids = new int[capacity];
+            ages = new int[capacity];
+            versions = new long[capacity];
+            nameOffsets = new int[capacity];
+            nameLengths = new int[capacity];
+            emailOffsets = new int[capacity];
+            emailLengths = new int[capacity];
+            emailHashes = new int[capacity];
+            deleted = new BitSet();
+            slots = 0;
+            arena = ByteBuffer.allocateDirect(Math.max(INITIAL_ARENA_BYTES, arenaUsed - arenaGarbage));
+            arenaUsed = 0;
+            arenaGarbage = 0;
+            sortedById = true;
+            idIndex = newIdIndex(live.size());
+            emailIndex = newEmailIndex(live.size());
+            int keepLastId = lastId;
+            for (Customer customer : live) {
+                append(customer.getId(), customer.getName(), customer.getEmail(), customer.getAge(), customer.getVersion());
+            }
+            lastId = keepLastId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // the arena is outside the heap, heap measurements don't see it
+    long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return arena.capacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -1,36 +1,246 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.PreconditionFailedException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 @RestController
+@Profile("!reactive") // CustomerReactiveController takes over
 @RequestMapping("api/v1/customers")
 public class CustomerController {
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    // what the converters of CustomerBinaryFormatsConfig write, in the order spring tries them (json first)
+    private static final List<MediaType> FORMATS = List.of(
+            MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR,
+            MediaType.parseMediaType("application/x-jackson-smile")
+    );
+
     private final CustomerService customerService;
+    private final ObjectWriter customerWriter;
+    private final ContentNegotiationManager contentNegotiationManager;
 
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(
+            CustomerService customerService,
+            ObjectMapper objectMapper,
+            ContentNegotiationManager contentNegotiationManager
+    ) {
         this.customerService = customerService;
+        this.contentNegotiationManager = contentNegotiationManager;
+        // flushing after every row would turn into one tiny write on the socket per customer
+        this.customerWriter = objectMapper
+                .writerFor(Customer.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // the GETs below send an ETag built from the customers' versions, a client that sends it back in
+    // If-None-Match gets a 304 and no body, spring compares them before anything is serialized
+    // no-cache: clients and proxies can keep the response but have to revalidate it before using it
+    // the same customers in cbor are other bytes than in json: the etag has the format in it, so an etag from a json
+    // response doesn't get a cbor client a 304, and Vary: Accept keeps caches from giving one format for the other
+    private <T> ResponseEntity<T> withETag(T body, String eTag, NativeWebRequest request) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .eTag(eTag == null ? null : eTag.substring(0, eTag.length() - 1) + eTagSuffix(request) + "\"")
+                .body(body);
+    }
+
+    // the format spring will write for the Accept header, it picks the converter only after the 304 check
+    private String eTagSuffix(NativeWebRequest request) {
+        try {
+            for (MediaType accepted : contentNegotiationManager.resolveMediaTypes(request)) {
+                for (MediaType format : FORMATS) {
+                    if (accepted.isCompatibleWith(format)) {
+                        return eTagSuffix(format);
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            // falls through, writing the body answers the 406
+        }
+        return "";
+    }
+
+    // json is the default and keeps plain etags, "3-cbor" and "3-x-jackson-smile" for the others
+    private static String eTagSuffix(MediaType format) {
+        return format.equals(MediaType.APPLICATION_JSON) ? "" : "-" + format.getSubtype();
+    }
+
+    static String eTag(Customer customer) {
+        return customer.getVersion() == null ? null : "\"" + customer.getVersion() + "\"";
+    }
+
+    // a hash of every id and version, any insert, update or delete in the list changes it
+    static String eTag(List<Customer> customers, Integer nextCursor) {
+        ByteBuffer idsAndVersions = ByteBuffer.allocate(customers.size() * Long.BYTES * 2 + Integer.BYTES);
+        for (Customer customer : customers) {
+            idsAndVersions.putLong(customer.getId());
+            idsAndVersions.putLong(customer.getVersion() == null ? -1 : customer.getVersion());
+        }
+        idsAndVersions.putInt(nextCursor == null ? 0 : nextCursor);
+        return "\"" + DigestUtils.md5DigestAsHex(idsAndVersions.array()) + "\"";
+    }
+
+    // the version in an If-Match, null for none or *, a weak or unknown etag can't match (412)
+    // the etag of any format will do, the version is the same
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.trim();
+        if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            String version = eTag.substring(1, eTag.length() - 1);
+            for (MediaType format : FORMATS) {
+                String suffix = eTagSuffix(format);
+                if (!suffix.isEmpty() && version.endsWith(suffix)) {
+                    version = version.substring(0, version.length() - suffix.length());
+                    break;
+                }
+            }
+            try {
+                return Long.parseLong(version);
+            } catch (NumberFormatException e) {
+                // falls through to the 412
+            }
+        }
+        throw new PreconditionFailedException("If-Match " + ifMatch + " is not a version of this customer");
     }
 
     @GetMapping
-    public List<Customer> getCustomers() {
-        return customerService.getAllCustomer();
+    public ResponseEntity<List<Customer>> getCustomers(NativeWebRequest request) {
+        List<Customer> customers = customerService.getAllCustomer();
+        return withETag(customers, eTag(customers, null), request);
     }
 
-    @GetMapping("{customerId}")
-    public Customer getCustomer(
-            @PathVariable("customerId") Integer customerId
+    // keyset pagination: GET api/v1/customers?limit=N&after=<nextCursor from the previous page>
+    @GetMapping(params = "limit")
+    public ResponseEntity<CustomerPage> getCustomersPage(
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam("limit") Integer limit,
+            NativeWebRequest request
+    ) {
+        CustomerPage page = customerService.getCustomersPage(after, limit);
+        return withETag(page, eTag(page.customers(), page.nextCursor()), request);
+    }
+
+    // GET api/v1/customers/search?name=al&emailDomain=gmail.com&minAge=18&maxAge=30&limit=N&after=<nextCursor>
+    // every filter is optional, the pages work like the ones above
+    @GetMapping("search")
+    public ResponseEntity<CustomerPage> searchCustomers(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "emailDomain", required = false) String emailDomain,
+            @RequestParam(value = "minAge", required = false) Integer minAge,
+            @RequestParam(value = "maxAge", required = false) Integer maxAge,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "limit", defaultValue = "50") Integer limit,
+            NativeWebRequest request
     ) {
+        CustomerPage page = customerService.searchCustomers(
+                new CustomerSearch(name, emailDomain, minAge, maxAge), after, limit
+        );
+        return withETag(page, eTag(page.customers(), page.nextCursor()), request);
+    }
+
+    // GET api/v1/customers/fuzzy?q=jamila%20gmial&limit=N, tolerates typos and partial names or emails
+    // ranked best first with a score, no paging
+    @GetMapping("fuzzy")
+    public List<CustomerFuzzyMatch> fuzzySearchCustomers(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit
+    ) {
+        return customerService.fuzzySearchCustomers(query, limit);
+    }
+
+    // incremental sync: GET api/v1/customers/changes?since=<watermark from the previous response>&limit=N
+    // the customers created or updated since, as they are now, and the ids of the deleted ones, oldest change
+    // first. without since it's every customer there is. more means ask again right away with the new watermark
+    @GetMapping("changes")
+    public CustomerChanges getCustomerChanges(
+            @RequestParam(value = "since", required = false) String since,
+            @RequestParam(value = "limit", defaultValue = "1000") Integer limit
+    ) {
+        return customerService.getCustomerChanges(since, limit);
+    }
 
-        return customerService.getCustomer(customerId);
+    // one json document per line, written while the rows are read from the db, so memory stays flat
+    @GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCustomers() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = customerWriter.createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                customerService.exportCustomers(customer -> {
+                    try {
+                        customerWriter.writeValue(generator, customer);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        // a StreamingResponseBody skips the message converters, so the content type has to be set here
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
+    // csv through postgres COPY, for loads that are too big even for the batch endpoint
+    @GetMapping(value = "csv", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> exportCustomersCsv() {
+        StreamingResponseBody body = customerService::exportCustomersCsv;
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .body(body);
+    }
+
+    @PostMapping(value = "csv", consumes = "text/csv")
+    public CustomerImportResult importCustomersCsv(InputStream csv) {
+        return customerService.importCustomersCsv(csv);
+    }
+
+    @GetMapping("{customerId}")
+    public ResponseEntity<Customer> getCustomer(
+            @PathVariable("customerId") Integer customerId,
+            NativeWebRequest request
+    ) {
+        Customer customer = customerService.getCustomer(customerId);
+        return withETag(customer, eTag(customer), request);
+    }
+
+    // returns the id of the new customer
     @PostMapping
-    public void registerCustomer(
+    public Integer registerCustomer(
         @RequestBody CustomerRegistratioRequest request
     ) {
-        customerService.addCustomer(request);
+        return customerService.addCustomer(request);
+    }
+
+    // bulk registration, every row gets its own result instead of failing the whole request
+    @PostMapping("batch")
+    public List<CustomerBatchRegistrationResult> registerCustomers(
+            @RequestBody List<CustomerRegistratioRequest> requests
+    ) {
+        return customerService.addCustomers(requests);
     }
 
 
@@ -41,12 +251,14 @@ public class CustomerController {
         customerService.deleteCustomer(customerId);
     }
 
+    // with If-Match: <the ETag of a previous GET>, the update only happens if nobody changed the customer since (412)
     @PutMapping("{customerId}")
     public void updateCustomer(
             @PathVariable("customerId") Integer customerId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody CustomerEditRequest request
     ) {
-        customerService.updateCustomer(customerId, request);
+        customerService.updateCustomer(customerId, request, expectedVersion(ifMatch));
     }
 }
 
@@ -0,0 +1,12 @@
+package com.amigoscode.customer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// bulk load and dump of the customer table in csv, for loads too big for batched inserts
+public interface CustomerCopyDAO {
+    // csv with a name,email,age header, rows with a taken (or repeated) email or a missing field are skipped
+    CustomerImportResult copyCustomersIn(InputStream csv);
+    // writes id,name,email,age csv with a header, returns the number of rows written
+    long copyCustomersOut(OutputStream csv);
+}
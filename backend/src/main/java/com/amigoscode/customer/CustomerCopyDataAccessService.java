@@ -0,0 +1,139 @@
+package com.amigoscode.customer;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// COPY ... FROM STDIN / TO STDOUT through the postgres driver, much faster than inserts for big loads
+@Repository("copy")
+public class CustomerCopyDataAccessService implements CustomerCopyDAO {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerEmailFilter emailFilter;
+    private final CustomerInvalidations invalidations;
+
+    public CustomerCopyDataAccessService(
+            JdbcTemplate jdbcTemplate,
+            CustomerEmailFilter emailFilter,
+            CustomerInvalidations invalidations
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.emailFilter = emailFilter;
+        this.invalidations = invalidations;
+    }
+
+    @Override
+    public CustomerImportResult copyCustomersIn(InputStream csv) {
+        // COPY can't skip rows that break the email unique constraint, so the csv goes to a staging
+        // table first and is moved into customer with a single INSERT ... SELECT ... ON CONFLICT DO NOTHING
+        var createStaging = """
+                CREATE TEMP TABLE customer_staging (
+                    row_id BIGSERIAL,
+                    name TEXT,
+                    email TEXT,
+                    age INT
+                )
+                """;
+        var copy = """
+                COPY customer_staging (name, email, age) FROM STDIN WITH (FORMAT csv, HEADER true)
+                """;
+        // the first row wins for an email repeated in the file, and the file order is kept for the ids
+        var insert = """
+                INSERT INTO customer
+                    (name, email, age)
+                SELECT name, email, age
+                FROM (
+                    SELECT DISTINCT ON (email) row_id, name, email, age
+                    FROM customer_staging
+                    WHERE name IS NOT NULL AND email IS NOT NULL AND age IS NOT NULL
+                    ORDER BY email, row_id
+                ) first_rows
+                ORDER BY row_id
+                ON CONFLICT (email) DO NOTHING
+                RETURNING email
+                """;
+
+        // everything has to run on the same connection, the staging table only exists in its session
+        return jdbcTemplate.execute((ConnectionCallback<CustomerImportResult>) connection -> {
+            execute(connection, createStaging);
+            try {
+                long rows = copyManager(connection).copyIn(copy, csv);
+                // the inserted emails go into the email filter here and on the other nodes, nothing else tells
+                // them about this insert. they are only known once the insert is done: a check in between can
+                // miss one, the unique constraint still turns away an insert of it
+                List<String> inserted = new ArrayList<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet emails = statement.executeQuery(insert)) {
+                    while (emails.next()) {
+                        inserted.add(emails.getString(1));
+                    }
+                }
+                emailFilter.add(inserted);
+                invalidations.publish(List.of(), inserted);
+                return new CustomerImportResult(rows, inserted.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                // connections go back to the pool, so the temp table can't be left behind
+                execute(connection, "DROP TABLE IF EXISTS customer_staging");
+            }
+        });
+    }
+
+    @Override
+    public long copyCustomersOut(OutputStream csv) {
+        var copy = """
+                COPY (
+                    SELECT id, name, email, age FROM customer ORDER BY id
+                ) TO STDOUT WITH (FORMAT csv, HEADER true)
+                """;
+
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyOut copyOut = copyManager(connection).copyOut(copy);
+            try {
+                byte[] row;
+                while ((row = copyOut.readFromCopy()) != null) {
+                    csv.write(row);
+                }
+            } catch (IOException e) {
+                // the client went away: stop the copy rather than reading the whole table for nobody
+                // a cancel that races the end of the copy can leave the connection out of sync, so it doesn't go
+                // back to the pool either. abort closes it, the pool finds it closed when it's returned and evicts it
+                try {
+                    copyOut.cancelCopy();
+                } catch (SQLException cancelFailed) {
+                    e.addSuppressed(cancelFailed);
+                }
+                connection.abort(Runnable::run);
+                throw new UncheckedIOException(e);
+            }
+            return copyOut.getHandledRowCount();
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    private static CopyManager copyManager(Connection connection) throws SQLException {
+        // the pool hands out a proxy, the copy api lives on the driver connection underneath
+        return connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -1,15 +1,34 @@
 package com.amigoscode.customer;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface CustomerDAO {
     List<Customer> selectAllCustomers();
+    // keyset pagination, returns at most limit customers with id > afterId ordered by id (afterId null = first page)
+    List<Customer> selectCustomersAfter(Integer afterId, int limit);
+    // the same keyset pages, only with the customers that match every filter that is set in search
+    List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit);
+    // streams every customer ordered by id to the action without building a list first
+    void forEachCustomer(Consumer<Customer> action);
     Optional<Customer> selectCustomerById(Integer customerId);
     void insertCustomer(Customer customer);
+    // single statement insert, returns the generated id or empty when the email is already taken
+    Optional<Integer> insertCustomerReturningId(Customer customer);
+    // inserts all customers in one go, returns 1 for every inserted row and 0 where the email was already taken
+    int[] insertCustomers(List<Customer> customers);
     boolean existsCustomerWithEmail(String email);
-    void deleteCustomer(Integer customerId);
+    // the subset of the given emails that is already registered, checked with a single query
+    Set<String> selectExistingEmails(Collection<String> emails);
+    // returns false when there was no customer with that id
+    boolean deleteCustomer(Integer customerId);
     boolean existsCustomerWithId(Integer customerId);
     void updateCustomer(Customer customer);
+    // writes only the non null fields of changes (the id says which customer) in a single statement,
+    // and only if every one of them differs from the stored value. empty when the customer doesn't exist
+    Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes);
 
 }
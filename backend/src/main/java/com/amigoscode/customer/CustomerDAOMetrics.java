@@ -0,0 +1,189 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// wraps every CustomerDAO bean so each call is measured, tagged with the dao's qualifier (its @Repository name:
+// jdbc, jpa, cached, memory...) and the method
+// - customer.dao         timer (with a percentile histogram), outcome and exception tags
+// - customer.dao.errors  counter of the calls that threw
+// - customer.dao.rows    rows returned, or visited by forEachCustomer
+// a decorator (cached, write-behind) and the dao behind it are both measured, so a cache hit and a db round trip
+// show up as separate series
+@Component
+public class CustomerDAOMetrics extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    public CustomerDAOMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.advisor = new DefaultPointcutAdvisor(new CustomerDAOPointcut(), new MetricsInterceptor(meterRegistry));
+        // outside of any @Transactional, so the commit is part of the time
+        this.beforeExistingAdvisors = true;
+        // keep the concrete classes injectable
+        setProxyTargetClass(true);
+    }
+
+    // the methods of the CustomerDAO interface, on the classes implementing it
+    private static class CustomerDAOPointcut extends StaticMethodMatcherPointcut {
+        CustomerDAOPointcut() {
+            setClassFilter(CustomerDAO.class::isAssignableFrom);
+        }
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return ReflectionUtils.findMethod(CustomerDAO.class, method.getName(), method.getParameterTypes()) != null;
+        }
+    }
+
+    private static class MetricsInterceptor implements MethodInterceptor {
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        // one interceptor advises every dao, so the same method (say one inherited from a common class) can
+        // belong to several daos: the key is both
+        private final Map<MeterKey, Meters> meters = new ConcurrentHashMap<>();
+
+        MetricsInterceptor(ObjectProvider<MeterRegistry> meterRegistry) {
+            // looked up on first use, a post processor that pulls in the registry early would keep other beans
+            // from being post processed
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry == null) {
+                return invocation.proceed();
+            }
+            // builders, tags and the registry lookup only on the first call of each method, after that it's
+            // a map get and the recording
+            Meters meters = this.meters.computeIfAbsent(
+                    new MeterKey(ClassUtils.getUserClass(invocation.getThis()), invocation.getMethod()),
+                    key -> new Meters(registry, key)
+            );
+
+            // forEachCustomer returns nothing, count what goes through the consumer
+            AtomicLong visited = null;
+            Object[] arguments = invocation.getArguments();
+            if (arguments.length == 1 && arguments[0] instanceof Consumer<?> consumer) {
+                AtomicLong counter = new AtomicLong();
+                arguments[0] = (Consumer<Customer>) customer -> {
+                    counter.incrementAndGet();
+                    ((Consumer<Customer>) consumer).accept(customer);
+                };
+                visited = counter;
+            }
+
+            long start = System.nanoTime();
+            try {
+                Object result = invocation.proceed();
+                meters.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                long rows = visited != null ? visited.get() : rows(result);
+                if (meters.rows != null && rows >= 0) {
+                    meters.rows.record(rows);
+                }
+                return result;
+            } catch (Throwable e) {
+                Errors errors = meters.errors(e.getClass());
+                errors.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                errors.counter().increment();
+                throw e;
+            }
+        }
+
+        // -1 when the result isn't rows (a boolean, void, null)
+        private static long rows(Object result) {
+            if (result instanceof Collection<?> collection) {
+                return collection.size();
+            }
+            if (result instanceof Optional<?> optional) {
+                return optional.isPresent() ? 1 : 0;
+            }
+            if (result instanceof int[] counts) {
+                long rows = 0;
+                for (int count : counts) {
+                    rows += count;
+                }
+                return rows;
+            }
+            return -1;
+        }
+    }
+
+    private record MeterKey(Class<?> dao, Method method) {
+    }
+
+    private record Errors(Timer timer, Counter counter) {
+    }
+
+    // the meters of one method of one dao
+    private static final class Meters {
+        private final MeterRegistry registry;
+        private final String dao;
+        private final String method;
+        private final Timer success;
+        // null when the method doesn't return rows (a boolean, void)
+        private final DistributionSummary rows;
+        // by exception type, only the ones that happened
+        private final Map<Class<?>, Errors> errors = new ConcurrentHashMap<>();
+
+        Meters(MeterRegistry registry, MeterKey key) {
+            this.registry = registry;
+            this.dao = qualifier(key.dao());
+            this.method = key.method().getName();
+            this.success = timer("success", "none");
+            Class<?> returnType = key.method().getReturnType();
+            boolean returnsRows = Collection.class.isAssignableFrom(returnType)
+                    || returnType == Optional.class
+                    || returnType == int[].class;
+            boolean visitsRows = key.method().getParameterCount() == 1
+                    && key.method().getParameterTypes()[0] == Consumer.class;
+            this.rows = returnsRows || visitsRows
+                    ? DistributionSummary.builder("customer.dao.rows")
+                            .tags("dao", dao, "method", method)
+                            .register(registry)
+                    : null;
+        }
+
+        Errors errors(Class<?> exception) {
+            return errors.computeIfAbsent(exception, type -> new Errors(
+                    timer("error", type.getSimpleName()),
+                    Counter.builder("customer.dao.errors")
+                            .tags("dao", dao, "method", method, "exception", type.getSimpleName())
+                            .register(registry)
+            ));
+        }
+
+        private Timer timer(String outcome, String exception) {
+            return Timer.builder("customer.dao")
+                    .tags("dao", dao, "method", method, "outcome", outcome, "exception", exception)
+                    // buckets for histogram_quantile() in prometheus
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        private static String qualifier(Class<?> type) {
+            Repository repository = AnnotationUtils.findAnnotation(type, Repository.class);
+            return repository != null && !repository.value().isEmpty() ? repository.value() : type.getSimpleName();
+        }
+    }
+}
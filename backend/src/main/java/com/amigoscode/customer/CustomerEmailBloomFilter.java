@@ -0,0 +1,118 @@
+package com.amigoscode.customer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// bloom filter of emails: mightContain never says no for an email that was added, and says yes for one that wasn't
+// about falsePositiveRate of the time as long as no more than capacity emails were added
+// emails can't be taken out, a deleted one stays a (false) positive until CustomerEmailFilter builds a new filter
+// bits are set with compare and swap, so adds and lookups can run from any number of threads without a lock
+final class CustomerEmailBloomFilter {
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final long capacity;
+    // emails that set at least one bit, adding the same email again doesn't count
+    private final AtomicLong size = new AtomicLong();
+
+    CustomerEmailBloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "capacity must be positive and falsePositiveRate between 0 and 1"
+            );
+        }
+        // the usual sizing: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hashes
+        long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact(Math.max(1, (optimalBits + 63) / 64)));
+        this.bits = words.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.capacity = capacity;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    long sizeInBytes() {
+        return bits / 8;
+    }
+
+    // true if it set a bit, i.e. the email was definitely not in there yet
+    boolean add(String email) {
+        long hash = hash(email);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            changed |= set(Long.remainderUnsigned(h1 + i * h2, bits));
+        }
+        if (changed) {
+            size.incrementAndGet();
+        }
+        return changed;
+    }
+
+    boolean mightContain(String email) {
+        long hash = hash(email);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the chance that an email that was never added is reported as there, from how many bits are set
+    // (the share of set bits to the power of the number of hashes), so it grows as emails are added
+    double expectedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bits, hashes);
+    }
+
+    private boolean set(long bit) {
+        int index = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+        return true;
+    }
+
+    // fnv-1a over the chars, no byte[] for every lookup. two indexes are derived from it (double hashing),
+    // after mixing so similar emails end up far apart
+    private static long hash(String email) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            hash = (hash ^ email.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // murmur3's finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,241 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// every registered email in a CustomerEmailBloomFilter, so the cached dao answers "is this email taken" for a new
+// email (most of them) without a query. only a possible hit goes to postgres
+// - built from the jdbc dao when the context starts, sized for twice the emails there are
+// - the cached dao adds the emails it writes, see adding(), and the csv COPY import the ones it inserted
+// - the emails other nodes registered come in through CustomerInvalidations
+// - deleted and replaced emails can't be taken out, they are counted as stale
+// a new filter is built in the background once more emails were added than it was sized for, or once half of them
+// are stale. until the first one is built every email is a possible hit
+@Component
+public class CustomerEmailFilter implements InitializingBean, DisposableBean, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CustomerEmailFilter.class);
+
+    private final CustomerDAO customerDAO;
+    private final CustomerInvalidations invalidations;
+    private final double falsePositiveRate;
+    private final long minimumCapacity;
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-email-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private volatile CustomerEmailBloomFilter filter;
+    // while a rebuild reads the table, the emails added in the meantime, they go into the new filter too
+    // adds share the lock, swapping in the new filter is exclusive so none of them falls in between
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Queue<String> addedDuringRebuild;
+
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong possibleHits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public CustomerEmailFilter(
+            @Qualifier("jdbc") CustomerDAO customerDAO,
+            CustomerInvalidations invalidations,
+            @Value("${customer.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            // a small table still gets room to grow before the first rebuild
+            @Value("${customer.email-filter.minimum-capacity:100000}") long minimumCapacity
+    ) {
+        this.customerDAO = customerDAO;
+        this.invalidations = invalidations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minimumCapacity = minimumCapacity;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // listening first, an email another node registers while the table is read is added after it
+        invalidations.subscribe(this::invalidated);
+        rebuild();
+    }
+
+    // only known once the other node committed, a check in between can miss it: the unique constraint still
+    // turns away an insert of the email
+    private void invalidated(CustomerInvalidation invalidation) {
+        if (invalidation.all()) {
+            rebuildInBackground();
+        } else {
+            add(invalidation.emails());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        rebuilder.shutdownNow();
+    }
+
+    // reads every email again, adds and lookups carry on with the current filter meanwhile
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            addedDuringRebuild = new ConcurrentLinkedQueue<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        CustomerEmailBloomFilter rebuilt;
+        try {
+            List<String> emails = new ArrayList<>();
+            customerDAO.forEachCustomer(customer -> emails.add(customer.getEmail()));
+            rebuilt = new CustomerEmailBloomFilter(
+                    Math.max(minimumCapacity, 2L * emails.size()),
+                    falsePositiveRate
+            );
+            emails.forEach(rebuilt::add);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                addedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            addedDuringRebuild.forEach(rebuilt::add);
+            addedDuringRebuild = null;
+            filter = rebuilt;
+            stale.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("email filter built with {} emails ({} KiB) in {} ms",
+                rebuilt.size(), rebuilt.sizeInBytes() / 1024, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // false means no customer has this email, true means maybe
+    public boolean mightContain(String email) {
+        CustomerEmailBloomFilter current = filter;
+        if (current != null && !current.mightContain(email)) {
+            definiteMisses.incrementAndGet();
+            return false;
+        }
+        possibleHits.incrementAndGet();
+        return true;
+    }
+
+    // a possible hit that postgres said is not there
+    public void falsePositives(long count) {
+        falsePositives.addAndGet(count);
+    }
+
+    // runs a write that registers emails, with the emails added before it (a check that runs while it commits
+    // must not miss them) and again after it (a rebuild that read the table before the commit must not miss them)
+    // a write that fails leaves a few extra bits set, which only costs a false positive
+    public <T> T adding(Collection<String> emails, Supplier<T> write) {
+        add(emails);
+        try {
+            return write.get();
+        } finally {
+            add(emails);
+        }
+    }
+
+    public <T> T adding(String email, Supplier<T> write) {
+        return adding(email == null ? List.of() : List.of(email), write);
+    }
+
+    public void add(Collection<String> emails) {
+        CustomerEmailBloomFilter current;
+        lock.readLock().lock();
+        try {
+            current = filter;
+            for (String email : emails) {
+                if (email == null) {
+                    continue;
+                }
+                if (current != null) {
+                    current.add(email);
+                }
+                if (addedDuringRebuild != null) {
+                    addedDuringRebuild.add(email);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (current != null && current.size() > current.capacity()) {
+            rebuildInBackground();
+        }
+    }
+
+    // an email that no longer belongs to anyone (deleted customer, changed email) but is still in the filter
+    public void removed() {
+        CustomerEmailBloomFilter current = filter;
+        if (stale.incrementAndGet() > 1024 && current != null && stale.get() > current.size() / 2) {
+            rebuildInBackground();
+        }
+    }
+
+    private void rebuildInBackground() {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        rebuilder.execute(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.warn("email filter rebuild failed, keeping the current one", e);
+            } finally {
+                rebuildScheduled.set(false);
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customer.email-filter.memory", this,
+                        f -> f.filter == null ? 0 : f.filter.sizeInBytes())
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("customer.email-filter.emails", this, f -> f.filter == null ? 0 : f.filter.size())
+                .register(registry);
+        Gauge.builder("customer.email-filter.stale", stale, AtomicLong::get)
+                .register(registry);
+        // what the filter should be getting wrong given how full it is, compare with the observed
+        // false_positives / (false_positives + checks{result="miss"})
+        Gauge.builder("customer.email-filter.expected-false-positive-rate", this,
+                        f -> f.filter == null ? 1 : f.filter.expectedFalsePositiveRate())
+                .register(registry);
+        FunctionCounter.builder("customer.email-filter.checks", definiteMisses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("customer.email-filter.checks", possibleHits, AtomicLong::get)
+                .tag("result", "maybe")
+                .register(registry);
+        FunctionCounter.builder("customer.email-filter.false-positives", falsePositives, AtomicLong::get)
+                .register(registry);
+    }
+}
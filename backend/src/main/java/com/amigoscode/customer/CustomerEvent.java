@@ -0,0 +1,19 @@
+package com.amigoscode.customer;
+
+import java.time.Instant;
+
+// one committed change to a customer, from the outbox
+public record CustomerEvent(
+        long position, // gap free and increasing, pass the last one seen back as ?after= (or Last-Event-ID) to resume
+        Type type,
+        Integer customerId,
+        Customer customer, // as it was after the change, null for DELETED
+        Instant occurredAt
+) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,49 @@
+package com.amigoscode.customer;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
+
+// every committed insert, update and delete of a customer, in order, for services that would otherwise poll the
+// whole list to find out what changed. positions start after 0
+@RestController
+@Profile("!reactive")
+@RequestMapping("api/v1/customers/events")
+public class CustomerEventController {
+
+    private final CustomerEventService customerEventService;
+
+    public CustomerEventController(CustomerEventService customerEventService) {
+        this.customerEventService = customerEventService;
+    }
+
+    // long polling: GET api/v1/customers/events?after=<next from the previous page>&limit=N&wait=30
+    // answers right away when there is something after, otherwise once there is or after wait seconds
+    @GetMapping
+    public CompletableFuture<CustomerEventPage> getEvents(
+            @RequestParam(value = "after", defaultValue = "0") long after,
+            @RequestParam(value = "limit", defaultValue = "100") Integer limit,
+            @RequestParam(value = "wait", defaultValue = "0") Integer waitSeconds
+    ) {
+        return customerEventService.getEvents(after, limit, waitSeconds);
+    }
+
+    // server-sent events, the id of each one is its position. EventSource sends the last one it got back in
+    // Last-Event-ID when it reconnects, and the stream carries on from there
+    @GetMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        SseEmitter emitter = new SseEmitter();
+        customerEventService.streamEvents(lastEventId != null ? lastEventId : after != null ? after : 0, emitter);
+        return emitter;
+    }
+}
@@ -0,0 +1,10 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+public record CustomerEventPage(
+        List<CustomerEvent> events,
+        long next // the position to ask after next time, the same one again when there was nothing new
+) {
+
+}
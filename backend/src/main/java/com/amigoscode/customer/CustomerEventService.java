@@ -0,0 +1,151 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.RequestValidationException;
+import com.amigoscode.exception.ResourceGoneException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// reading the customer event stream from an offset, by long polling or over server-sent events
+// neither holds a thread while it waits: CustomerOutboxRelay completes a future once there is something new, and
+// the read after it runs on a small pool of our own
+@Service
+public class CustomerEventService implements DisposableBean {
+    private static final int MAX_LIMIT = 1000;
+    private static final int MAX_WAIT_SECONDS = 60;
+    private static final int STREAM_BATCH = 500;
+    // an idle stream still writes something now and then, that's how a client that is gone is noticed
+    private static final Duration HEARTBEAT = Duration.ofSeconds(15);
+
+    private final CustomerOutboxDAO outboxDAO;
+    private final CustomerOutboxRelay relay;
+    private final ExecutorService readers;
+
+    public CustomerEventService(CustomerOutboxDAO outboxDAO, CustomerOutboxRelay relay) {
+        this.outboxDAO = outboxDAO;
+        this.relay = relay;
+        AtomicInteger threads = new AtomicInteger();
+        this.readers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "customer-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        readers.shutdownNow();
+    }
+
+    // the events after position, at most limit of them. with nothing there yet, waits up to waitSeconds for some
+    public CompletableFuture<CustomerEventPage> getEvents(long after, Integer limit, Integer waitSeconds) {
+        if (after < 0) {
+            throw new RequestValidationException("after can't be negative");
+        }
+        if (limit == null || limit < 1 || limit > MAX_LIMIT) {
+            throw new RequestValidationException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (waitSeconds == null || waitSeconds < 0 || waitSeconds > MAX_WAIT_SECONDS) {
+            throw new RequestValidationException("wait must be between 0 and " + MAX_WAIT_SECONDS + " seconds");
+        }
+        CustomerEventPage page = page(after, limit);
+        if (!page.events().isEmpty() || waitSeconds == 0) {
+            return CompletableFuture.completedFuture(page);
+        }
+        return relay.whenAfter(after)
+                .completeOnTimeout(null, waitSeconds, TimeUnit.SECONDS)
+                .thenApplyAsync(ignored -> page(after, limit), readers);
+    }
+
+    // sends the events after position as they come, until the client goes away or the emitter times out (the
+    // client reconnects with the Last-Event-ID it got and carries on from there)
+    public void streamEvents(long after, SseEmitter emitter) {
+        if (after < 0) {
+            throw new RequestValidationException("after can't be negative");
+        }
+        // still a plain response, so a client that is too far behind gets a 410 and not an empty stream
+        checkNotPurged(after);
+        Stream stream = new Stream(after, emitter);
+        emitter.onCompletion(stream::stop);
+        emitter.onTimeout(stream::stop);
+        emitter.onError(error -> stream.stop());
+        readers.execute(stream::next);
+    }
+
+    private CustomerEventPage page(long after, int limit) {
+        List<CustomerEvent> events = outboxDAO.selectEventsAfter(after, limit);
+        // positions have no gaps, so a page that starts right after is complete
+        if (events.isEmpty() || events.get(0).position() != after + 1) {
+            checkNotPurged(after);
+        }
+        return new CustomerEventPage(events, events.isEmpty() ? after : events.get(events.size() - 1).position());
+    }
+
+    private void checkNotPurged(long after) {
+        Long earliest = outboxDAO.earliestPosition();
+        if (earliest != null && after < earliest - 1) {
+            throw new ResourceGoneException(
+                    "events after " + after + " are no longer kept, the oldest one is " + earliest
+            );
+        }
+    }
+
+    private class Stream {
+        private final SseEmitter emitter;
+        private volatile long position;
+        private volatile boolean stopped;
+
+        Stream(long position, SseEmitter emitter) {
+            this.position = position;
+            this.emitter = emitter;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        void next() {
+            if (stopped) {
+                return;
+            }
+            try {
+                CustomerEventPage page = page(position, STREAM_BATCH);
+                for (CustomerEvent event : page.events()) {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.position()))
+                            .name(event.type().name().toLowerCase(Locale.ROOT))
+                            .data(event, MediaType.APPLICATION_JSON));
+                }
+                if (page.events().isEmpty()) {
+                    // only woken up by the timeout
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+                position = page.next();
+            } catch (IOException e) {
+                // the client went away, the container completes the emitter
+                stop();
+                return;
+            } catch (RuntimeException e) {
+                stop();
+                emitter.completeWithError(e);
+                return;
+            }
+            if (!stopped) {
+                relay.whenAfter(position)
+                        .completeOnTimeout(null, HEARTBEAT.toMillis(), TimeUnit.MILLISECONDS)
+                        .thenRunAsync(this::next, readers);
+            }
+        }
+    }
+}
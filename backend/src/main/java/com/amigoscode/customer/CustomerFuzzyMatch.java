@@ -0,0 +1,8 @@
+package com.amigoscode.customer;
+
+public record CustomerFuzzyMatch(
+        Customer customer,
+        double score // 0 to 1, 1 is the whole name or email
+) {
+
+}
@@ -0,0 +1,220 @@
+package com.amigoscode.customer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// fuzzy search over names and emails that never goes to postgres: a CustomerTrigramIndex of every customer
+// - built from the jdbc dao when the context starts, before the server takes requests
+// - the writes of the dao the service uses are indexed right away by CustomerFuzzySearchIndexer
+// - every other committed change (the csv COPY import, another instance of the app) comes from the customer event
+//   stream a few milliseconds later: the index follows the outbox from the position it was built at
+@Component
+public class CustomerFuzzySearch implements InitializingBean, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(CustomerFuzzySearch.class);
+    private static final int CATCH_UP_CHUNK = 1000;
+    private static final int EVENT_BATCH = 1000;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final CustomerDAO customerDAO;
+    private final CustomerOutboxDAO outboxDAO;
+    private final CustomerOutboxRelay relay;
+    private final double threshold;
+    // searches share the lock, writes to the index are exclusive
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private CustomerTrigramIndex index = new CustomerTrigramIndex();
+    // the events up to it are in the index, only the follower thread and rebuild() (under the write lock) move it
+    private volatile long position;
+    private final ScheduledExecutorService follower = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-fuzzy-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CustomerFuzzySearch(
+            @Qualifier("jdbc") CustomerDAO customerDAO,
+            CustomerOutboxDAO outboxDAO,
+            CustomerOutboxRelay relay,
+            // the share of the query's trigrams a name or email needs to have, lower finds more typos and more noise
+            @Value("${customer.fuzzy-search.threshold:0.5}") double threshold
+    ) {
+        this.customerDAO = customerDAO;
+        this.outboxDAO = outboxDAO;
+        this.relay = relay;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        rebuild();
+        follower.execute(this::follow);
+    }
+
+    @Override
+    public void destroy() {
+        follower.shutdownNow();
+    }
+
+    // reads every customer again, writes wait until it's done
+    public void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            // before the scan: the events after it are applied again, in order, so a row the scan saw newer than
+            // an event ends up as the last event has it
+            long rebuiltAt = outboxDAO.latestPosition();
+            CustomerTrigramIndex rebuilt = new CustomerTrigramIndex();
+            customerDAO.forEachCustomer(rebuilt::put);
+            index = rebuilt;
+            position = rebuiltAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("fuzzy search index built with {} customers in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // applies the events after position, then waits for the next ones without holding the thread
+    private void follow() {
+        try {
+            List<CustomerEvent> events;
+            do {
+                long after = position;
+                events = outboxDAO.selectEventsAfter(after, EVENT_BATCH);
+                if (!events.isEmpty() && events.get(0).position() != after + 1) {
+                    // purged while this node wasn't following, only a full read is complete
+                    rebuild();
+                    break;
+                }
+                apply(after, events);
+            } while (events.size() == EVENT_BATCH);
+            relay.whenAfter(position).thenRun(() -> follower.execute(this::follow));
+        } catch (RuntimeException e) {
+            log.warn("fuzzy search index couldn't read the customer events, retrying", e);
+            follower.schedule(this::follow, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void apply(long after, List<CustomerEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (position != after) {
+                // a rebuild() in between already has them
+                return;
+            }
+            for (CustomerEvent event : events) {
+                if (event.customer() == null) {
+                    index.remove(event.customerId());
+                } else {
+                    index.put(event.customer());
+                }
+            }
+            position = events.get(events.size() - 1).position();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<CustomerFuzzyMatch> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.search(query, threshold, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int highestId() {
+        lock.readLock().lock();
+        try {
+            return index.highestId();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            index.put(customer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Integer customerId) {
+        lock.writeLock().lock();
+        try {
+            index.remove(customerId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // indexes the rows with an id above afterId, for inserts that don't tell us the ids they generated
+    // ids come from a sequence, so the rows of an insert that started after afterId was indexed are all above it
+    void catchUp(int afterId) {
+        Integer after = afterId;
+        while (true) {
+            List<Customer> customers = customerDAO.selectCustomersAfter(after, CATCH_UP_CHUNK);
+            lock.writeLock().lock();
+            try {
+                customers.forEach(index::put);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (customers.size() < CATCH_UP_CHUNK) {
+                return;
+            }
+            after = customers.get(customers.size() - 1).getId();
+        }
+    }
+
+    // the customer after a full updateCustomer, the version the dao wrote isn't known without reading it back
+    void updated(Customer customer) {
+        if (customer.getVersion() == null) {
+            customerDAO.selectCustomerById(customer.getId()).ifPresent(this::put);
+            return;
+        }
+        Customer updated = customer.clone();
+        updated.setVersion(customer.getVersion() + 1);
+        put(updated);
+    }
+
+    // the customer after an updateCustomerIfChanged that wrote the non null fields of changes
+    void updated(CustomerUpdateResult result, Customer changes) {
+        Customer updated = result.previous().clone();
+        if (changes.getName() != null) {
+            updated.setName(changes.getName());
+        }
+        if (changes.getEmail() != null) {
+            updated.setEmail(changes.getEmail());
+        }
+        if (changes.getAge() != null) {
+            updated.setAge(changes.getAge());
+        }
+        updated.setVersion(updated.getVersion() == null ? null : updated.getVersion() + 1);
+        put(updated);
+    }
+}
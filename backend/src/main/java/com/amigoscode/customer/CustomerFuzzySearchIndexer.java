@@ -0,0 +1,110 @@
+package com.amigoscode.customer;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.Set;
+
+// feeds the writes of one CustomerDAO bean to CustomerFuzzySearch once they returned: customer.fuzzy-search.dao,
+// the cached dao the service writes through by default. only one bean, the daos behind it see the same writes
+// and the in memory ones are separate stores
+@Component
+public class CustomerFuzzySearchIndexer extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+    private static final Set<String> WRITES = Set.of(
+            "insertCustomer",
+            "insertCustomerReturningId",
+            "insertCustomers",
+            "updateCustomer",
+            "updateCustomerIfChanged",
+            "deleteCustomer"
+    );
+
+    private final String dao;
+
+    public CustomerFuzzySearchIndexer(
+            @Value("${customer.fuzzy-search.dao:cached}") String dao,
+            ObjectProvider<CustomerFuzzySearch> fuzzySearch
+    ) {
+        this.dao = dao;
+        this.advisor = new DefaultPointcutAdvisor(new WritesPointcut(), new IndexingInterceptor(fuzzySearch));
+        // keep the concrete classes injectable
+        setProxyTargetClass(true);
+    }
+
+    @Override
+    protected boolean isEligible(Object bean, String beanName) {
+        return dao.equals(beanName) && super.isEligible(bean, beanName);
+    }
+
+    private static class WritesPointcut extends StaticMethodMatcherPointcut {
+        WritesPointcut() {
+            setClassFilter(CustomerDAO.class::isAssignableFrom);
+        }
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return WRITES.contains(method.getName());
+        }
+    }
+
+    private static class IndexingInterceptor implements MethodInterceptor {
+        private final ObjectProvider<CustomerFuzzySearch> fuzzySearch;
+
+        IndexingInterceptor(ObjectProvider<CustomerFuzzySearch> fuzzySearch) {
+            // looked up on first use, same as CustomerDAOMetrics
+            this.fuzzySearch = fuzzySearch;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            CustomerFuzzySearch index = fuzzySearch.getIfAvailable();
+            if (index == null) {
+                return invocation.proceed();
+            }
+            Object argument = invocation.getArguments()[0];
+            // before the write, the rows it inserts will be above it
+            int highestId = index.highestId();
+            Object result = invocation.proceed();
+
+            switch (invocation.getMethod().getName()) {
+                case "insertCustomer" -> {
+                    Customer customer = (Customer) argument;
+                    if (customer.getId() != null) {
+                        index.put(customer);
+                    } else {
+                        index.catchUp(highestId);
+                    }
+                }
+                case "insertCustomerReturningId" -> ((Optional<Integer>) result).ifPresent(id -> {
+                    Customer customer = ((Customer) argument).clone();
+                    customer.setId(id);
+                    customer.setVersion(0L);
+                    index.put(customer);
+                });
+                // the batch doesn't return the generated ids
+                case "insertCustomers" -> index.catchUp(highestId);
+                case "updateCustomer" -> index.updated((Customer) argument);
+                case "updateCustomerIfChanged" -> ((Optional<CustomerUpdateResult>) result)
+                        .filter(CustomerUpdateResult::updated)
+                        .ifPresent(updated -> index.updated(updated, (Customer) argument));
+                case "deleteCustomer" -> {
+                    if ((Boolean) result) {
+                        index.remove((Integer) argument);
+                    }
+                }
+                default -> {
+                }
+            }
+            return result;
+        }
+    }
+}
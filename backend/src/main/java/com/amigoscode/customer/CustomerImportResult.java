@@ -0,0 +1,8 @@
+package com.amigoscode.customer;
+
+public record CustomerImportResult(
+        long rows, // rows read from the csv
+        long inserted // rows that became customers, the rest were skipped
+) {
+
+}
@@ -0,0 +1,242 @@
+package com.amigoscode.customer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// thread safe in memory dao, for tests and as a low latency tier
+// - customersById is the primary index, sorted so keyset pages and exports come out in id order
+// - idsByEmail is the unique index on email
+// reads don't lock, they go straight to the concurrent maps. writes take one lock so both indexes change
+// together and the email check and the insert can't interleave with another writer
+// a reader can see a write half done (the id entry before the email entry), never a lost or duplicated one
+@Repository("memory")
+public class CustomerInMemoryDataAccessService implements CustomerDAO {
+
+    private final ConcurrentNavigableMap<Integer, Customer> customersById = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Integer> idsByEmail = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+    // not synchronized, a virtual thread blocked on a monitor pins its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Customer is mutable, the maps keep their own copies and callers get theirs
+    private static Customer copy(Customer customer) {
+        return customer.clone();
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        List<Customer> customers = new ArrayList<>(customersById.size());
+        customersById.values().forEach(customer -> customers.add(copy(customer)));
+        return customers;
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        // ids are generated from 1
+        return customersById.tailMap(afterId == null ? 0 : afterId, false)
+                .values()
+                .stream()
+                .limit(limit)
+                .map(CustomerInMemoryDataAccessService::copy)
+                .toList();
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        // no secondary indexes here, walks the ids from afterId and stops at limit matches
+        return customersById.tailMap(afterId == null ? 0 : afterId, false)
+                .values()
+                .stream()
+                .filter(search::matches)
+                .limit(limit)
+                .map(CustomerInMemoryDataAccessService::copy)
+                .toList();
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        // weakly consistent, customers added or removed during the export may or may not be seen
+        customersById.values().forEach(customer -> action.accept(copy(customer)));
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        if (customerId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(customersById.get(customerId))
+                .map(CustomerInMemoryDataAccessService::copy);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        writeLock.lock();
+        try {
+            if (idsByEmail.containsKey(customer.getEmail())) {
+                throw new DuplicateKeyException("email already taken: " + customer.getEmail());
+            }
+            if (customer.getId() != null && customersById.containsKey(customer.getId())) {
+                throw new DuplicateKeyException("id already taken: " + customer.getId());
+            }
+            add(customer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // caller holds the write lock and checked the email and id
+    private int add(Customer customer) {
+        int id;
+        if (customer.getId() == null) {
+            id = lastId.incrementAndGet();
+        } else {
+            // an explicit id moves the generator past it, like setval on a sequence
+            id = customer.getId();
+            lastId.accumulateAndGet(id, Math::max);
+        }
+        customersById.put(id, new Customer(id, customer.getName(), customer.getEmail(), customer.getAge(), 0L));
+        idsByEmail.put(customer.getEmail(), id);
+        return id;
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        writeLock.lock();
+        try {
+            if (idsByEmail.containsKey(customer.getEmail())) {
+                return Optional.empty();
+            }
+            return Optional.of(add(new Customer(customer.getName(), customer.getEmail(), customer.getAge())));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int[] insertCustomers(List<Customer> customers) {
+        int[] inserted = new int[customers.size()];
+        // one lock for the whole batch, the same all or nothing view a transaction gives
+        writeLock.lock();
+        try {
+            for (int i = 0; i < customers.size(); i++) {
+                Customer customer = customers.get(i);
+                if (!idsByEmail.containsKey(customer.getEmail())) {
+                    add(new Customer(customer.getName(), customer.getEmail(), customer.getAge()));
+                    inserted[i] = 1;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return email != null && idsByEmail.containsKey(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return emails.stream()
+                .filter(this::existsCustomerWithEmail)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean deleteCustomer(Integer customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            Customer removed = customersById.remove(customerId);
+            if (removed == null) {
+                return false;
+            }
+            idsByEmail.remove(removed.getEmail(), customerId);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        return customerId != null && customersById.containsKey(customerId);
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        writeLock.lock();
+        try {
+            Customer previous = customersById.get(customer.getId());
+            // same as the sql: with a version, only that version of the row is written
+            if (customer.getVersion() != null
+                    && (previous == null || !customer.getVersion().equals(previous.getVersion()))) {
+                throw CustomerJDBCDataAccessService.versionConflict(customer);
+            }
+            if (previous != null) {
+                Customer updated = copy(customer);
+                updated.setVersion(previous.getVersion() + 1);
+                replace(previous, updated);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // caller holds the write lock, throws like the unique constraint when the new email belongs to someone else
+    private void replace(Customer previous, Customer updated) {
+        if (!previous.getEmail().equals(updated.getEmail())) {
+            Integer owner = idsByEmail.putIfAbsent(updated.getEmail(), updated.getId());
+            if (owner != null && !owner.equals(updated.getId())) {
+                throw new DuplicateKeyException("email already taken: " + updated.getEmail());
+            }
+            idsByEmail.remove(previous.getEmail(), previous.getId());
+        }
+        customersById.put(updated.getId(), updated);
+    }
+
+    @Override
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        writeLock.lock();
+        try {
+            Customer customer = customersById.get(changes.getId());
+            if (customer == null) {
+                return Optional.empty();
+            }
+            // same rule as the sql: only write when every given field changes
+            boolean changed = (changes.getName() != null || changes.getEmail() != null || changes.getAge() != null)
+                    && (changes.getName() == null || !changes.getName().equals(customer.getName()))
+                    && (changes.getEmail() == null || !changes.getEmail().equals(customer.getEmail()))
+                    && (changes.getAge() == null || !changes.getAge().equals(customer.getAge()))
+                    && (changes.getVersion() == null || changes.getVersion().equals(customer.getVersion()));
+            if (changed) {
+                replace(customer, new Customer(
+                        customer.getId(),
+                        changes.getName() != null ? changes.getName() : customer.getName(),
+                        changes.getEmail() != null ? changes.getEmail() : customer.getEmail(),
+                        changes.getAge() != null ? changes.getAge() : customer.getAge(),
+                        customer.getVersion() + 1
+                ));
+            }
+            return Optional.of(new CustomerUpdateResult(copy(customer), changed));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
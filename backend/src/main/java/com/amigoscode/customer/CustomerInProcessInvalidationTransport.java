@@ -0,0 +1,26 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// hands invalidations to the subscribers right away on the publishing thread, for a single node and for tests
+// where several CustomerInvalidations share one to play the nodes
+@Component
+@ConditionalOnProperty(name = "customer.invalidation.transport", havingValue = "in-process")
+public class CustomerInProcessInvalidationTransport implements CustomerInvalidationTransport {
+    private final List<Consumer<CustomerInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(CustomerInvalidation invalidation) {
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+    }
+
+    @Override
+    public void subscribe(Consumer<CustomerInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+}
@@ -0,0 +1,22 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+// what a node tells the others after a write, so their local caches of customers don't serve stale data
+public record CustomerInvalidation(
+        String origin, // the node that wrote, it already invalidated its own cache
+        List<Integer> customerIds, // updated or deleted, drop them from the cache
+        List<String> emails, // registered, add them to the email filter
+        boolean all, // a node lost the connection and may have missed some, drop everything
+        long publishedAt // epoch millis on the publishing node
+) {
+
+    public CustomerInvalidation {
+        customerIds = customerIds == null ? List.of() : List.copyOf(customerIds);
+        emails = emails == null ? List.of() : List.copyOf(emails);
+    }
+
+    static CustomerInvalidation everything() {
+        return new CustomerInvalidation(null, List.of(), List.of(), true, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,11 @@
+package com.amigoscode.customer;
+
+import java.util.function.Consumer;
+
+// carries CustomerInvalidation between the nodes that share a database, the node that publishes gets it too
+// customer.invalidation.transport picks one: postgres (LISTEN/NOTIFY, the default) or in-process
+public interface CustomerInvalidationTransport {
+    void publish(CustomerInvalidation invalidation);
+    // called on the transport's own thread, in the order they were published
+    void subscribe(Consumer<CustomerInvalidation> subscriber);
+}
@@ -0,0 +1,86 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// keeps the local copies of customers of every node in step when several of them share the database
+// (see amigoscode-api in docker-compose.yml): the cached dao publishes what each write changed, and the cache and
+// the email filter of the other nodes drop or add it when it arrives, a few milliseconds later with postgres
+// the node's own invalidations are not delivered back, it did the same right when it wrote
+@Component
+public class CustomerInvalidations implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CustomerInvalidations.class);
+
+    private final String origin = UUID.randomUUID().toString();
+    private final CustomerInvalidationTransport transport;
+    private final List<Consumer<CustomerInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private volatile Counter published;
+    private volatile Timer lag;
+
+    public CustomerInvalidations(CustomerInvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    // the transport's first subscribe() returns once it is listening, see CustomerPostgresInvalidationTransport
+    public synchronized void subscribe(Consumer<CustomerInvalidation> subscriber) {
+        if (subscribers.isEmpty()) {
+            transport.subscribe(this::received);
+        }
+        subscribers.add(subscriber);
+    }
+
+    // after a write that committed: a failure to publish doesn't fail the write, the other nodes catch up once
+    // their cache entries expire
+    public void publish(Collection<Integer> customerIds, Collection<String> emails) {
+        if (customerIds.isEmpty() && emails.isEmpty()) {
+            return;
+        }
+        try {
+            transport.publish(new CustomerInvalidation(
+                    origin,
+                    List.copyOf(customerIds),
+                    emails.stream().filter(email -> email != null).toList(),
+                    false,
+                    System.currentTimeMillis()
+            ));
+            if (published != null) {
+                published.increment();
+            }
+        } catch (RuntimeException e) {
+            log.warn("could not publish the invalidation of customers {}", customerIds, e);
+        }
+    }
+
+    private void received(CustomerInvalidation invalidation) {
+        if (origin.equals(invalidation.origin())) {
+            return;
+        }
+        if (lag != null && !invalidation.all()) {
+            // from the other node's clock, only as good as the clocks are in sync
+            lag.record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - invalidation.publishedAt())));
+        }
+        subscribers.forEach(subscriber -> subscriber.accept(invalidation));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        published = Counter.builder("customer.invalidations.published")
+                .register(registry);
+        // how long the other nodes served what they had cached after the write
+        lag = Timer.builder("customer.invalidations.lag")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
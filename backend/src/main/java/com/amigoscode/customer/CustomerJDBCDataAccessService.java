@@ -1,13 +1,28 @@
 package com.amigoscode.customer;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository("jdbc")
-public class CustomerJDBCDataAccessService implements CustomerDAO {
+public class CustomerJDBCDataAccessService implements CustomerDAO, CustomerSyncDAO {
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+    private static final int INSERT_BATCH_SIZE = 1000;
 
     private final JdbcTemplate jdbcTemplate;
     private final CustomerRowMapper customerRowMapper;
@@ -21,18 +36,110 @@ public class CustomerJDBCDataAccessService implements CustomerDAO {
     public List<Customer> selectAllCustomers() {
         var sql = """
                 SELECT 
-                    id, name, email, age
+                    id, name, email, age, version
                 FROM 
                     customer
                 """;
         return jdbcTemplate.query(sql, customerRowMapper);
     }
 
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        // seek on the primary key index instead of OFFSET, so every page costs the same
+        var sql = """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                WHERE
+                    id > ?
+                ORDER BY id
+                LIMIT ?
+                """;
+        // ids come from customer_id_seq and start at 1
+        int after = afterId == null ? 0 : afterId;
+        return jdbcTemplate.query(sql, customerRowMapper, after, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = searchSql(search, afterId, limit, args);
+        return jdbcTemplate.query(sql, customerRowMapper, args.toArray());
+    }
+
+    // only the filters that are set end up in the sql, so postgres plans every combination on its own
+    // and can pick the index for it (V4__Add_Customer_Search_Indexes.sql), an "? IS NULL OR ..." would hide them
+    // the expressions are the indexed ones, lower(name) and lower(split_part(email, '@', 2))
+    static String searchSql(CustomerSearch search, Integer afterId, int limit, List<Object> args) {
+        StringBuilder where = new StringBuilder("id > ?");
+        args.add(afterId == null ? 0 : afterId);
+        if (search.namePrefix() != null) {
+            where.append(" AND lower(name) LIKE ?");
+            args.add(likePrefix(search.namePrefix()));
+        }
+        if (search.emailDomain() != null) {
+            where.append(" AND lower(split_part(email, '@', 2)) = ?");
+            args.add(search.emailDomain());
+        }
+        if (search.minAge() != null) {
+            where.append(" AND age >= ?");
+            args.add(search.minAge());
+        }
+        if (search.maxAge() != null) {
+            where.append(" AND age <= ?");
+            args.add(search.maxAge());
+        }
+        args.add(limit);
+        return """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                WHERE
+                    %s
+                ORDER BY id
+                LIMIT ?
+                """.formatted(where);
+    }
+
+    // a LIKE pattern for everything that starts with prefix, % and _ in it match themselves
+    static String likePrefix(String prefix) {
+        return prefix
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachCustomer(Consumer<Customer> action) {
+        var sql = """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                ORDER BY id
+                """;
+        // the postgres driver only uses a server side cursor when a fetch size is set and autocommit is off
+        // (that's what the transaction is for), otherwise it would load the whole result set in memory
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+                    );
+                    statement.setFetchSize(STREAM_FETCH_SIZE);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> action.accept(customerRowMapper.mapRow(rs, rs.getRow()))
+        );
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer customerId) {
         var sql = """
                 SELECT 
-                    id, name, email, age
+                    id, name, email, age, version
                 FROM 
                     customer
                 WHERE
@@ -54,66 +161,252 @@ public class CustomerJDBCDataAccessService implements CustomerDAO {
                     (?, ?, ?)
                 """;
 
-        int result = jdbcTemplate.update(
+        jdbcTemplate.update(
                 sql,
                 customer.getName(),
                 customer.getEmail(),
                 customer.getAge()
         );
-        System.out.println("jdbcTemplate.update = " + result);
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        // the unique constraint decides, so there is no window between a check and the insert
+        // and no second round trip, a taken email simply returns no row
+        var sql = """
+                INSERT INTO customer 
+                    (name, email, age)
+                VALUES
+                    (?, ?, ?)
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id
+                """;
+
+        return jdbcTemplate
+                .query(
+                        sql,
+                        (rs, rowNum) -> rs.getInt("id"),
+                        customer.getName(),
+                        customer.getEmail(),
+                        customer.getAge()
+                )
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    @Transactional // one commit for the whole import instead of one per row
+    public int[] insertCustomers(List<Customer> customers) {
+        // on conflict do nothing turns an email taken in the meantime into an update count of 0
+        // instead of failing the whole batch
+        var sql = """
+                INSERT INTO customer 
+                    (name, email, age)
+                VALUES
+                    (?, ?, ?)
+                ON CONFLICT (email) DO NOTHING
+                """;
+
+        int[][] batches = jdbcTemplate.batchUpdate(
+                sql,
+                customers,
+                INSERT_BATCH_SIZE,
+                (ps, customer) -> {
+                    ps.setString(1, customer.getName());
+                    ps.setString(2, customer.getEmail());
+                    ps.setInt(3, customer.getAge());
+                }
+        );
+        return Arrays.stream(batches)
+                .flatMapToInt(Arrays::stream)
+                .toArray();
     }
 
     @Override
     public boolean existsCustomerWithEmail(String email) {
+        // stops at the first row instead of counting them all
         var sql = """
-                SELECT count(*) FROM customer WHERE email = ?
+                SELECT EXISTS (SELECT 1 FROM customer WHERE email = ?)
                 """;
 
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, email);
-        return count != null && count > 0;
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, email));
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        // a single text[] parameter, so the statement is the same whatever the number of emails
+        var sql = """
+                SELECT email FROM customer WHERE email = ANY (?)
+                """;
+
+        return new HashSet<>(jdbcTemplate.queryForList(
+                sql,
+                String.class,
+                (Object) emails.toArray(String[]::new)
+        ));
     }
 
     @Override
-    public void deleteCustomer(Integer customerId) {
+    public boolean deleteCustomer(Integer customerId) {
         var sql = "DELETE FROM customer WHERE id = ?";
-        jdbcTemplate.update(sql, customerId);
+        // the affected row count says if the customer existed, no need to check first
+        return jdbcTemplate.update(sql, customerId) > 0;
     }
 
     @Override
     public boolean existsCustomerWithId(Integer customerId) {
         var sql = """
-                SELECT 
-                    id, name, email, age
-                FROM 
-                    customer
-                WHERE
-                    id = ?
+                SELECT EXISTS (SELECT 1 FROM customer WHERE id = ?)
                 """;
 
-         return jdbcTemplate
-                .query(sql, customerRowMapper, customerId)
-                .stream()
-                .findFirst()
-                 .isPresent();
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, customerId));
     }
 
     @Override
     public void updateCustomer(Customer customer) {
+        // optimistic locking: with the version the caller read, the row is only written if it is still that version
+        // no lock is held between the read and this update
         var sql = """
                 UPDATE customer
                 SET 
                     name = ?,
                     email = ?, 
-                    age = ?
+                    age = ?,
+                    version = version + 1
                 WHERE 
-                    id = ?
+                    id = ? AND version = coalesce(?, version)
                 """;
-        jdbcTemplate.update(
+        int updated = jdbcTemplate.update(
                 sql,
                 customer.getName(),
                 customer.getEmail(),
                 customer.getAge(),
-                customer.getId()
+                customer.getId(),
+                customer.getVersion()
+        );
+        if (updated == 0 && customer.getVersion() != null) {
+            throw versionConflict(customer);
+        }
+    }
+
+    // a missing row is a conflict too, it was deleted since it was read
+    static OptimisticLockingFailureException versionConflict(Customer customer) {
+        return new OptimisticLockingFailureException(
+                "customer with id: " + customer.getId() + " is no longer at version " + customer.getVersion()
         );
     }
+
+    @Override
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        // column names only ever come from this list, never from the caller
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (changes.getName() != null) {
+            columns.add("name");
+            values.add(changes.getName());
+        }
+        if (changes.getEmail() != null) {
+            columns.add("email");
+            values.add(changes.getEmail());
+        }
+        if (changes.getAge() != null) {
+            columns.add("age");
+            values.add(changes.getAge());
+        }
+        if (columns.isEmpty()) {
+            return selectCustomerById(changes.getId())
+                    .map(customer -> new CustomerUpdateResult(customer, false));
+        }
+
+        // a version in the changes is the one the caller read (If-Match), the row is only written if it still is,
+        // otherwise the caller sees the current version in previous
+        List<String> conditions = new ArrayList<>();
+        columns.forEach(column -> conditions.add(column + " <> ?"));
+        List<Object> conditionValues = new ArrayList<>(values);
+        if (changes.getVersion() != null) {
+            conditions.add("version = ?");
+            conditionValues.add(changes.getVersion());
+        }
+
+        // previous reads the row as it was (every part of the statement sees the same snapshot),
+        // updated only writes when all the given columns change, so not found / no change / updated
+        // all come back from one round trip
+        var sql = """
+                WITH previous AS (
+                    SELECT id, name, email, age, version FROM customer WHERE id = ?
+                ), updated AS (
+                    UPDATE customer
+                    SET %s, version = version + 1
+                    WHERE id = ? AND %s
+                    RETURNING id
+                )
+                SELECT id, name, email, age, version, EXISTS (SELECT 1 FROM updated) AS updated
+                FROM previous
+                """.formatted(
+                columns.stream().map(column -> column + " = ?").collect(Collectors.joining(", ")),
+                String.join(" AND ", conditions)
+        );
+
+        List<Object> args = new ArrayList<>();
+        args.add(changes.getId());
+        args.addAll(values);
+        args.add(changes.getId());
+        args.addAll(conditionValues);
+
+        return jdbcTemplate
+                .query(
+                        sql,
+                        (rs, rowNum) -> new CustomerUpdateResult(
+                                customerRowMapper.mapRow(rs, rowNum),
+                                rs.getBoolean("updated")
+                        ),
+                        args.toArray()
+                )
+                .stream()
+                .findFirst();
+    }
+
+    @Override
+    public long safeWatermark() {
+        // the xmin of a snapshot is the oldest transaction still running, or the next xid when none is
+        var sql = """
+                SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint
+                """;
+
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    @Override
+    public List<CustomerChange> selectChangesAfter(long xid, int customerId, long until, int limit) {
+        // each side seeks on its (changed_xid, id) index and stops at limit, the outer ORDER BY only merges them
+        // a customer is either in customer or in customer_tombstone, never both
+        var sql = """
+                (
+                    SELECT changed_xid, id, name, email, age, version, false AS deleted
+                    FROM customer
+                    WHERE (changed_xid, id) > (?, ?) AND changed_xid < ?
+                    ORDER BY changed_xid, id
+                    LIMIT ?
+                )
+                UNION ALL
+                (
+                    SELECT changed_xid, customer_id, NULL, NULL, NULL, NULL, true
+                    FROM customer_tombstone
+                    WHERE (changed_xid, customer_id) > (?, ?) AND changed_xid < ?
+                    ORDER BY changed_xid, customer_id
+                    LIMIT ?
+                )
+                ORDER BY changed_xid, id
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new CustomerChange(
+                rs.getLong("changed_xid"),
+                rs.getInt("id"),
+                rs.getBoolean("deleted") ? null : customerRowMapper.mapRow(rs, rowNum)
+        ), xid, customerId, until, limit, xid, customerId, until, limit, limit);
+    }
 }
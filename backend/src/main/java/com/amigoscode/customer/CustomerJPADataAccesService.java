@@ -1,17 +1,30 @@
 package com.amigoscode.customer;
 
+import jakarta.persistence.EntityManager;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository("jpa")
-public class CustomerJPADataAccesService implements CustomerDAO {
+public class CustomerJPADataAccesService implements CustomerDAO, CustomerSyncDAO {
 
     private final  CustomerRepository customerRepository;
+    private final EntityManager entityManager;
 
-    public CustomerJPADataAccesService(CustomerRepository customerRepository) {
+    public CustomerJPADataAccesService(CustomerRepository customerRepository, EntityManager entityManager) {
         this.customerRepository = customerRepository;
+        this.entityManager = entityManager;
     }
 
     @Override
@@ -19,6 +32,36 @@ public class CustomerJPADataAccesService implements CustomerDAO {
         return customerRepository.findAll();
     }
 
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        int after = afterId == null ? 0 : afterId;
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit));
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        return customerRepository.searchCustomers(
+                afterId == null ? 0 : afterId,
+                search.namePrefix() == null ? null : CustomerJDBCDataAccessService.likePrefix(search.namePrefix()),
+                search.emailDomain(),
+                search.minAge(),
+                search.maxAge(),
+                limit
+        );
+    }
+
+    @Override
+    @Transactional(readOnly = true) // the stream keeps the connection (and the cursor) open until it is closed
+    public void forEachCustomer(Consumer<Customer> action) {
+        try (Stream<Customer> customers = customerRepository.streamAllByOrderByIdAsc()) {
+            customers.forEach(customer -> {
+                // detach so the persistence context doesn't grow with every row we read
+                entityManager.detach(customer);
+                action.accept(customer);
+            });
+        }
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer customerId) {
         return customerRepository.findById(customerId);
@@ -26,7 +69,46 @@ public class CustomerJPADataAccesService implements CustomerDAO {
 
     @Override
     public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+        try {
+            customerRepository.saveAndFlush(customer);
+        } catch (DataIntegrityViolationException e) {
+            throw emailTakenOr(e, customer.getEmail());
+        }
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        return customerRepository.insertCustomerIfEmailAvailable(
+                customer.getName(),
+                customer.getEmail(),
+                customer.getAge()
+        );
+    }
+
+    @Override
+    public int[] insertCustomers(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return new int[0];
+        }
+        int size = customers.size();
+        String[] names = new String[size];
+        String[] emails = new String[size];
+        Integer[] ages = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = customers.get(i).getName();
+            emails[i] = customers.get(i).getEmail();
+            ages[i] = customers.get(i).getAge();
+        }
+        Set<String> inserted = new HashSet<>(
+                customerRepository.insertCustomersIfEmailAvailable(names, emails, ages)
+        );
+
+        // 1 for the first row of each inserted email, 0 for a taken or repeated one
+        int[] counts = new int[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = inserted.remove(emails[i]) ? 1 : 0;
+        }
+        return counts;
     }
 
     @Override
@@ -35,8 +117,17 @@ public class CustomerJPADataAccesService implements CustomerDAO {
     }
 
     @Override
-    public void deleteCustomer(Integer customerId) {
-        customerRepository.deleteById(customerId);
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        return customerRepository.findEmailsByEmailIn(emails);
+    }
+
+    @Override
+    public boolean deleteCustomer(Integer customerId) {
+        // deleteById would load the entity first and silently ignore a missing one
+        return customerRepository.deleteCustomerById(customerId) > 0;
     }
 
     @Override
@@ -48,7 +139,72 @@ public class CustomerJPADataAccesService implements CustomerDAO {
     }
 
     @Override
+    @Transactional
     public void updateCustomer(Customer customer) {
+        // merge compares the version with the row's and throws when it moved on
+        // without one hibernate would take the customer for a new entity, so it gets the current version
+        if (customer.getVersion() == null) {
+            customerRepository.findById(customer.getId()).ifPresent(current -> customer.setVersion(current.getVersion()));
+        }
         customerRepository.save(customer);
     }
+
+    @Override
+    @Transactional
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        return customerRepository.findById(changes.getId()).map(customer -> {
+            Customer previous = customer.clone();
+            boolean changed = (changes.getName() == null || !changes.getName().equals(customer.getName()))
+                    && (changes.getEmail() == null || !changes.getEmail().equals(customer.getEmail()))
+                    && (changes.getAge() == null || !changes.getAge().equals(customer.getAge()))
+                    && (changes.getVersion() == null || changes.getVersion().equals(customer.getVersion()));
+            if (changed) {
+                // @DynamicUpdate keeps the untouched columns out of the UPDATE and @Version adds "and version = ?"
+                if (changes.getName() != null) customer.setName(changes.getName());
+                if (changes.getEmail() != null) customer.setEmail(changes.getEmail());
+                if (changes.getAge() != null) customer.setAge(changes.getAge());
+                // flushed here and not by dirty checking on commit, so a taken email or a concurrent update fails
+                // in here, where it can be told apart, like the other daos' update statement
+                try {
+                    customerRepository.flush();
+                } catch (DataIntegrityViolationException e) {
+                    throw emailTakenOr(e, changes.getEmail());
+                }
+            }
+            return new CustomerUpdateResult(previous, changed);
+        });
+    }
+
+    // hibernate has no DuplicateKeyException, only a violated constraint: the email one is what the other daos throw
+    // DuplicateKeyException for, anything else stays as it is
+    private static RuntimeException emailTakenOr(DataIntegrityViolationException e, String email) {
+        if (e.getCause() instanceof ConstraintViolationException violation
+                && "customer_email_unique".equals(violation.getConstraintName())) {
+            return new DuplicateKeyException("email already taken: " + email, e);
+        }
+        return e;
+    }
+
+    @Override
+    public long safeWatermark() {
+        return customerRepository.safeWatermark();
+    }
+
+    @Override
+    public List<CustomerChange> selectChangesAfter(long xid, int customerId, long until, int limit) {
+        // scalar rows, not entities: they would be managed for nothing, and a tombstone isn't one
+        return customerRepository.findChangesAfter(xid, customerId, until, limit).stream()
+                .map(row -> new CustomerChange(
+                        ((Number) row[0]).longValue(),
+                        ((Number) row[1]).intValue(),
+                        (Boolean) row[6] ? null : new Customer(
+                                ((Number) row[1]).intValue(),
+                                (String) row[2],
+                                (String) row[3],
+                                ((Number) row[4]).intValue(),
+                                ((Number) row[5]).longValue()
+                        )
+                ))
+                .toList();
+    }
 }
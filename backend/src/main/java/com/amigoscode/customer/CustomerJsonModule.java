@@ -0,0 +1,106 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+// hand written serializers for what the list endpoints send back the most, spring boot adds every Module bean to its
+// ObjectMapper so the message converters, the ndjson export and the events all use them
+// the default bean serializer goes through a property writer per field, calls each getter by reflection and looks up
+// the serializer of every value. these write the fields straight to the generator, whose buffer comes from jackson's
+// BufferRecycler and is flushed to the response's output stream, there is no intermediate String or byte[]
+// the output is the same as the default one, nulls included, see CustomerJsonModuleTest
+@Component
+public class CustomerJsonModule extends SimpleModule {
+    // encoded once, a SerializedString keeps its quoted utf-8 bytes and the generator copies them
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString AGE = new SerializedString("age");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString CUSTOMERS = new SerializedString("customers");
+    private static final SerializableString NEXT_CURSOR = new SerializedString("nextCursor");
+
+    public CustomerJsonModule() {
+        super("customer-json");
+        addSerializer(Customer.class, new CustomerSerializer());
+        addSerializer(CustomerPage.class, new CustomerPageSerializer());
+    }
+
+    static final class CustomerSerializer extends StdSerializer<Customer> {
+        CustomerSerializer() {
+            super(Customer.class);
+        }
+
+        @Override
+        public void serialize(Customer customer, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            writeCustomer(customer, generator);
+        }
+    }
+
+    static final class CustomerPageSerializer extends StdSerializer<CustomerPage> {
+        CustomerPageSerializer() {
+            super(CustomerPage.class);
+        }
+
+        @Override
+        public void serialize(CustomerPage page, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            generator.writeStartObject(page);
+            generator.writeFieldName(CUSTOMERS);
+            List<Customer> customers = page.customers();
+            if (customers == null) {
+                generator.writeNull();
+            } else {
+                generator.writeStartArray(customers, customers.size());
+                // indexed, the pages are ArrayLists or subLists of them
+                for (int i = 0; i < customers.size(); i++) {
+                    writeCustomer(customers.get(i), generator);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeFieldName(NEXT_CURSOR);
+            writeNumber(page.nextCursor(), generator);
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeCustomer(Customer customer, JsonGenerator generator) throws IOException {
+        if (customer == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject(customer);
+        generator.writeFieldName(ID);
+        writeNumber(customer.getId(), generator);
+        generator.writeFieldName(NAME);
+        generator.writeString(customer.getName());
+        generator.writeFieldName(EMAIL);
+        generator.writeString(customer.getEmail());
+        generator.writeFieldName(AGE);
+        writeNumber(customer.getAge(), generator);
+        generator.writeFieldName(VERSION);
+        if (customer.getVersion() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(customer.getVersion());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNumber(Integer value, JsonGenerator generator) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+}
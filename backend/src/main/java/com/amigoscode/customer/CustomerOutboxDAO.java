@@ -0,0 +1,19 @@
+package com.amigoscode.customer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+// the customer_outbox table the triggers of V5 fill, see CustomerOutboxRelay
+public interface CustomerOutboxDAO {
+    // gives the oldest committed rows without a position the next positions, up to limit of them
+    // returns when the rows it sequenced were written, empty when another node is sequencing right now
+    List<Instant> sequence(int limit);
+    List<CustomerEvent> selectEventsAfter(long position, int limit);
+    // 0 when nothing was ever sequenced
+    long latestPosition();
+    // the oldest position still there, events before it were purged. null when there are none
+    Long earliestPosition();
+    // sequenced rows older than retention, the latest one always stays so positions carry on from it
+    int purge(Duration retention, int limit);
+}
@@ -0,0 +1,118 @@
+package com.amigoscode.customer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+@Repository("outbox")
+public class CustomerOutboxDataAccessService implements CustomerOutboxDAO {
+    // any constant, the same on every node
+    private static final long SEQUENCER_LOCK = 0x637573746f6d6572L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerRowMapper customerRowMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public CustomerOutboxDataAccessService(
+            JdbcTemplate jdbcTemplate,
+            CustomerRowMapper customerRowMapper,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerRowMapper = customerRowMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public List<Instant> sequence(int limit) {
+        // ids come from a sequence when the row is written, not when it commits: a reader going by id could pass
+        // a row that commits later with a lower id and never see it. positions are given after the commit
+        // instead, by one node at a time (the advisory lock) and in one transaction, so they commit in order
+        // and without gaps, and a reader going by position misses nothing
+        var sql = """
+                UPDATE customer_outbox o
+                SET position = n.position
+                FROM (
+                    SELECT id,
+                           coalesce((SELECT max(position) FROM customer_outbox), 0)
+                               + row_number() OVER (ORDER BY id) AS position
+                    FROM customer_outbox
+                    WHERE position IS NULL
+                    ORDER BY id
+                    LIMIT ?
+                ) n
+                WHERE o.id = n.id
+                RETURNING o.created_at
+                """;
+
+        return transactionTemplate.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject(
+                    "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, SEQUENCER_LOCK
+            );
+            if (!Boolean.TRUE.equals(locked)) {
+                return List.of();
+            }
+            return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getTimestamp("created_at").toInstant(), limit);
+        });
+    }
+
+    @Override
+    public List<CustomerEvent> selectEventsAfter(long position, int limit) {
+        var sql = """
+                SELECT position, type, customer_id, created_at, customer IS NULL AS deleted,
+                       (customer ->> 'id')::int AS id,
+                       customer ->> 'name' AS name,
+                       customer ->> 'email' AS email,
+                       (customer ->> 'age')::int AS age,
+                       (customer ->> 'version')::bigint AS version
+                FROM customer_outbox
+                WHERE position > ?
+                ORDER BY position
+                LIMIT ?
+                """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new CustomerEvent(
+                rs.getLong("position"),
+                CustomerEvent.Type.valueOf(rs.getString("type").toUpperCase(Locale.ROOT)),
+                rs.getInt("customer_id"),
+                rs.getBoolean("deleted") ? null : customerRowMapper.mapRow(rs, rowNum),
+                rs.getTimestamp("created_at").toInstant()
+        ), position, limit);
+    }
+
+    @Override
+    public long latestPosition() {
+        Long latest = jdbcTemplate.queryForObject(
+                "SELECT coalesce(max(position), 0) FROM customer_outbox", Long.class
+        );
+        return latest == null ? 0 : latest;
+    }
+
+    @Override
+    public Long earliestPosition() {
+        return jdbcTemplate.queryForObject("SELECT min(position) FROM customer_outbox", Long.class);
+    }
+
+    @Override
+    public int purge(Duration retention, int limit) {
+        var sql = """
+                DELETE FROM customer_outbox
+                WHERE id IN (
+                    SELECT id FROM customer_outbox
+                    WHERE position < (SELECT max(position) FROM customer_outbox)
+                      AND created_at < ?
+                    ORDER BY position
+                    LIMIT ?
+                )
+                """;
+
+        return jdbcTemplate.update(sql, Timestamp.from(Instant.now().minus(retention)), limit);
+    }
+}
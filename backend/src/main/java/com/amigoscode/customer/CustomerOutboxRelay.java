@@ -0,0 +1,143 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// turns the outbox into a stream, on one thread per node and every poll-interval:
+// - sequences the committed rows (only one node at a time gets to, see CustomerOutboxDAO.sequence)
+// - reads the latest position and wakes up the readers of this node waiting for something past theirs, so an
+//   idle reader costs no query and no thread
+// - once in a while deletes what is older than the retention
+@Component
+public class CustomerOutboxRelay implements InitializingBean, DisposableBean, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CustomerOutboxRelay.class);
+    private static final int SEQUENCE_BATCH = 1000;
+    private static final int PURGE_BATCH = 10_000;
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private record Waiter(long position, CompletableFuture<Void> future) {
+    }
+
+    private final CustomerOutboxDAO outboxDAO;
+    private final Duration pollInterval;
+    private final Duration retention;
+    private final ScheduledExecutorService relay = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "customer-outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private volatile long latestPosition;
+    private Instant lastPurge = Instant.EPOCH;
+    private final AtomicLong sequenced = new AtomicLong();
+    private volatile Timer lag;
+
+    public CustomerOutboxRelay(
+            CustomerOutboxDAO outboxDAO,
+            // how long a change can wait for its position, and readers for it
+            @Value("${customer.outbox.poll-interval:50ms}") Duration pollInterval,
+            @Value("${customer.outbox.retention:7d}") Duration retention
+    ) {
+        this.outboxDAO = outboxDAO;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        latestPosition = outboxDAO.latestPosition();
+        relay.scheduleWithFixedDelay(this::tick, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        relay.shutdownNow();
+        waiters.forEach(waiter -> waiter.future().cancel(false));
+    }
+
+    public long latestPosition() {
+        return latestPosition;
+    }
+
+    // completes once there is an event after position, never fails. a caller that stops waiting can just drop it
+    public CompletableFuture<Void> whenAfter(long position) {
+        if (latestPosition > position) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(position, future));
+        // the latest position may have moved while it was added
+        if (latestPosition > position) {
+            future.complete(null);
+        }
+        return future;
+    }
+
+    void tick() {
+        try {
+            List<Instant> written;
+            do {
+                written = outboxDAO.sequence(SEQUENCE_BATCH);
+                sequenced.addAndGet(written.size());
+                Instant now = Instant.now();
+                if (lag != null) {
+                    written.forEach(createdAt -> lag.record(Duration.between(createdAt, now)));
+                }
+            } while (written.size() == SEQUENCE_BATCH);
+
+            latestPosition = outboxDAO.latestPosition();
+            // the ones that timed out go too
+            waiters.removeIf(waiter -> {
+                if (waiter.position() < latestPosition) {
+                    waiter.future().complete(null);
+                }
+                return waiter.future().isDone();
+            });
+
+            if (Instant.now().isAfter(lastPurge.plus(PURGE_INTERVAL))) {
+                lastPurge = Instant.now();
+                int purged = outboxDAO.purge(retention, PURGE_BATCH);
+                if (purged > 0) {
+                    log.info("purged {} customer events older than {}", purged, retention);
+                }
+            }
+        } catch (RuntimeException e) {
+            // the next tick tries again, the rows stay in the outbox
+            log.warn("customer outbox relay failed", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customer.outbox.position", this, CustomerOutboxRelay::latestPosition)
+                .register(registry);
+        Gauge.builder("customer.outbox.waiters", waiters, Queue::size)
+                .register(registry);
+        FunctionCounter.builder("customer.outbox.sequenced", sequenced, AtomicLong::get)
+                .register(registry);
+        // from the commit (give or take, it's the time the row was written) to the event getting its position
+        lag = Timer.builder("customer.outbox.lag")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,10 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+public record CustomerPage(
+        List<Customer> customers,
+        Integer nextCursor // pass it back as ?after= to get the next page, null when there is nothing left
+) {
+
+}
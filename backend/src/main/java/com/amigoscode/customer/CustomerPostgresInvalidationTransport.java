@@ -0,0 +1,204 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// NOTIFY on a channel of the database every node already uses, no broker to run
+// - publish is a pg_notify() through the pool, outside of any transaction so it goes out right away
+// - one thread per node LISTENs on a connection of its own (not from the pool, it is held for good) and polls for
+//   notifications. the first subscribe() only returns once it listens, so a subscriber that loads its data after
+//   subscribing doesn't miss a write in between
+// postgres doesn't keep notifications for a node that isn't listening: after the connection drops the subscribers
+// get CustomerInvalidation.everything() once it is back
+@Component
+@ConditionalOnProperty(name = "customer.invalidation.transport", havingValue = "postgres", matchIfMissing = true)
+public class CustomerPostgresInvalidationTransport implements CustomerInvalidationTransport, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(CustomerPostgresInvalidationTransport.class);
+    // a payload has to stay under 8000 bytes, bigger invalidations are split
+    static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final Duration MAX_RECONNECT_DELAY = Duration.ofSeconds(10);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String channel;
+    private final List<Consumer<CustomerInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private Thread listener;
+    private volatile boolean closed;
+
+    public CustomerPostgresInvalidationTransport(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password,
+            @Value("${customer.invalidation.channel:customer_invalidation}") String channel
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.channel = channel;
+    }
+
+    @Override
+    public void publish(CustomerInvalidation invalidation) {
+        String payload = toJson(invalidation);
+        int emails = invalidation.emails().size();
+        int ids = invalidation.customerIds().size();
+        if (payload.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_BYTES && emails + ids > 1) {
+            // halves until each one fits
+            publish(new CustomerInvalidation(invalidation.origin(),
+                    invalidation.customerIds().subList(0, ids / 2),
+                    invalidation.emails().subList(0, emails / 2),
+                    invalidation.all(), invalidation.publishedAt()));
+            publish(new CustomerInvalidation(invalidation.origin(),
+                    invalidation.customerIds().subList(ids / 2, ids),
+                    invalidation.emails().subList(emails / 2, emails),
+                    invalidation.all(), invalidation.publishedAt()));
+            return;
+        }
+        // pg_notify() takes the channel as a parameter, NOTIFY doesn't
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, channel, payload);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<CustomerInvalidation> subscriber) {
+        subscribers.add(subscriber);
+        if (listener == null && !closed) {
+            Connection connection = null;
+            try {
+                connection = listen();
+            } catch (SQLException e) {
+                log.warn("can't listen for customer invalidations yet, retrying in the background", e);
+            }
+            Connection listening = connection;
+            listener = new Thread(() -> listenUntilClosed(listening), "customer-invalidation");
+            listener.setDaemon(true);
+            listener.start();
+        }
+    }
+
+    @Override
+    public synchronized void destroy() throws InterruptedException {
+        closed = true;
+        if (listener != null) {
+            listener.interrupt();
+            listener.join(Duration.ofSeconds(5).toMillis());
+        }
+    }
+
+    private Connection listen() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + connection.unwrap(PGConnection.class).escapeIdentifier(channel));
+            return connection;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    // connection is null when subscribe() couldn't listen, then the subscribers may have missed something already
+    private void listenUntilClosed(Connection connection) {
+        boolean missed = connection == null;
+        long delay = 100;
+        while (!closed) {
+            try {
+                if (connection == null) {
+                    connection = listen();
+                    delay = 100;
+                }
+                if (missed) {
+                    log.info("listening for customer invalidations again, dropping everything cached");
+                    deliver(CustomerInvalidation.everything());
+                    missed = false;
+                }
+                PGNotification[] notifications = connection.unwrap(PGConnection.class)
+                        .getNotifications(POLL_TIMEOUT_MILLIS);
+                if (notifications != null) {
+                    for (PGNotification notification : notifications) {
+                        deliver(fromJson(notification.getParameter()));
+                    }
+                }
+            } catch (SQLException e) {
+                close(connection);
+                connection = null;
+                missed = true;
+                if (closed) {
+                    return;
+                }
+                log.warn("lost the customer invalidation connection, retrying in {} ms", delay, e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY.toMillis());
+            }
+        }
+        close(connection);
+    }
+
+    private static void close(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // it's gone either way
+        }
+    }
+
+    private void deliver(CustomerInvalidation invalidation) {
+        for (Consumer<CustomerInvalidation> subscriber : subscribers) {
+            try {
+                subscriber.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("customer invalidation subscriber failed", e);
+            }
+        }
+    }
+
+    private String toJson(CustomerInvalidation invalidation) {
+        try {
+            return objectMapper.writeValueAsString(invalidation);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CustomerInvalidation fromJson(String payload) {
+        try {
+            return objectMapper.readValue(payload, CustomerInvalidation.class);
+        } catch (JsonProcessingException e) {
+            // from a node running another version, better drop everything than keep stale data
+            log.warn("unreadable customer invalidation {}", payload, e);
+            return CustomerInvalidation.everything();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.amigoscode.customer;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// same queries as CustomerJDBCDataAccessService, but nothing blocks a thread while postgres works
+@Repository("r2dbc")
+@Profile("reactive")
+public class CustomerR2DBCDataAccessService implements CustomerReactiveDAO {
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private final DatabaseClient databaseClient;
+
+    public CustomerR2DBCDataAccessService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    private static Customer mapCustomer(Readable row) {
+        return new Customer(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("age", Integer.class),
+                row.get("version", Long.class)
+        );
+    }
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        var sql = """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                ORDER BY id
+                """;
+        // with a fetch size the driver pulls the rows in chunks of that size as the subscriber requests them,
+        // so a slow client slows down the reads instead of buffering the whole table
+        return databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        // seek on the primary key index instead of OFFSET, so every page costs the same
+        var sql = """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                WHERE
+                    id > :after
+                ORDER BY id
+                LIMIT :limit
+                """;
+        // ids come from customer_id_seq and start at 1
+        return databaseClient.sql(sql)
+                .bind("after", afterId == null ? 0 : afterId)
+                .bind("limit", limit)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Integer customerId) {
+        var sql = """
+                SELECT 
+                    id, name, email, age, version
+                FROM 
+                    customer
+                WHERE
+                    id = :id
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .one();
+    }
+
+    @Override
+    public Mono<Integer> insertCustomerReturningId(Customer customer) {
+        // a taken email returns no row, see CustomerJDBCDataAccessService
+        var sql = """
+                INSERT INTO customer 
+                    (name, email, age)
+                VALUES
+                    (:name, :email, :age)
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("age", customer.getAge())
+                .map(row -> row.get("id", Integer.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> deleteCustomer(Integer customerId) {
+        var sql = "DELETE FROM customer WHERE id = :id";
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    @Override
+    public Mono<Boolean> existsCustomerWithId(Integer customerId) {
+        var sql = """
+                SELECT EXISTS (SELECT 1 FROM customer WHERE id = :id) AS found
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", customerId)
+                .map(row -> Boolean.TRUE.equals(row.get("found", Boolean.class)))
+                .one();
+    }
+
+    @Override
+    public Mono<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        // column names only ever come from this map, never from the caller
+        Map<String, Object> values = new LinkedHashMap<>();
+        if (changes.getName() != null) {
+            values.put("name", changes.getName());
+        }
+        if (changes.getEmail() != null) {
+            values.put("email", changes.getEmail());
+        }
+        if (changes.getAge() != null) {
+            values.put("age", changes.getAge());
+        }
+        if (values.isEmpty()) {
+            return selectCustomerById(changes.getId())
+                    .map(customer -> new CustomerUpdateResult(customer, false));
+        }
+
+        // one round trip for not found / no change / updated, see CustomerJDBCDataAccessService
+        var sql = """
+                WITH previous AS (
+                    SELECT id, name, email, age, version FROM customer WHERE id = :id
+                ), updated AS (
+                    UPDATE customer
+                    SET %s, version = version + 1
+                    WHERE id = :id AND %s
+                    RETURNING id
+                )
+                SELECT id, name, email, age, version, EXISTS (SELECT 1 FROM updated) AS updated
+                FROM previous
+                """.formatted(
+                values.keySet().stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")),
+                values.keySet().stream().map(column -> column + " <> :" + column).collect(Collectors.joining(" AND "))
+                        // only write the version the caller read, if it gave one
+                        + (changes.getVersion() != null ? " AND version = :version" : "")
+        );
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql).bind("id", changes.getId());
+        if (changes.getVersion() != null) {
+            spec = spec.bind("version", changes.getVersion());
+        }
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            spec = spec.bind(value.getKey(), value.getValue());
+        }
+        return spec
+                .map(row -> new CustomerUpdateResult(
+                        mapCustomer(row),
+                        Boolean.TRUE.equals(row.get("updated", Boolean.class))
+                ))
+                .one();
+    }
+}
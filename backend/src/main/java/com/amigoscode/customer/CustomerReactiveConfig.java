@@ -0,0 +1,61 @@
+package com.amigoscode.customer;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.time.Duration;
+
+// what the "reactive" profile needs on top of the servlet setup: netty and an r2dbc pool
+// spring boot's R2dbcAutoConfiguration is excluded in application.yml: a ConnectionFactory bean would switch off
+// the jdbc DataSource (and with it flyway, jpa and the jdbc dao), so the pool stays private to this class
+@Configuration
+@Profile("reactive")
+public class CustomerReactiveConfig implements DisposableBean {
+
+    private final ConnectionPool connectionPool;
+
+    public CustomerReactiveConfig(
+            @Value("${spring.r2dbc.url}") String url,
+            @Value("${spring.r2dbc.username}") String username,
+            @Value("${spring.r2dbc.password}") String password,
+            @Value("${spring.r2dbc.pool.max-size:20}") int maxSize
+    ) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url)
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        this.connectionPool = new ConnectionPool(
+                ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                        .initialSize(maxSize / 2)
+                        .maxSize(maxSize)
+                        .maxIdleTime(Duration.ofMinutes(30))
+                        .build()
+        );
+    }
+
+    // spring-boot-starter-web is on the classpath too, and boot would pick tomcat for the reactive server
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public DatabaseClient databaseClient() {
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Override
+    public void destroy() {
+        connectionPool.dispose();
+    }
+}
@@ -0,0 +1,71 @@
+package com.amigoscode.customer;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// CustomerController on webflux, active with the "reactive" profile
+// the csv (COPY) and batch endpoints are jdbc only and are not served here
+@RestController
+@Profile("reactive")
+@RequestMapping("api/v1/customers")
+public class CustomerReactiveController {
+
+    private final CustomerReactiveService customerService;
+
+    public CustomerReactiveController(CustomerReactiveService customerService) {
+        this.customerService = customerService;
+    }
+
+    @GetMapping
+    public Flux<Customer> getCustomers() {
+        return customerService.getAllCustomer();
+    }
+
+    // keyset pagination: GET api/v1/customers?limit=N&after=<nextCursor from the previous page>
+    @GetMapping(params = "limit")
+    public Mono<CustomerPage> getCustomersPage(
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam("limit") Integer limit
+    ) {
+        return customerService.getCustomersPage(after, limit);
+    }
+
+    // one json document per line, netty only asks the db for more rows when the client has read the previous ones
+    @GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Customer> exportCustomers() {
+        return customerService.getAllCustomer();
+    }
+
+    @GetMapping("{customerId}")
+    public Mono<Customer> getCustomer(
+            @PathVariable("customerId") Integer customerId
+    ) {
+        return customerService.getCustomer(customerId);
+    }
+
+    // returns the id of the new customer
+    @PostMapping
+    public Mono<Integer> registerCustomer(
+            @RequestBody CustomerRegistratioRequest request
+    ) {
+        return customerService.addCustomer(request);
+    }
+
+    @DeleteMapping("{customerId}")
+    public Mono<Void> deleteCustomer(
+            @PathVariable("customerId") Integer customerId
+    ) {
+        return customerService.deleteCustomer(customerId);
+    }
+
+    @PutMapping("{customerId}")
+    public Mono<Void> updateCustomer(
+            @PathVariable("customerId") Integer customerId,
+            @RequestBody CustomerEditRequest request
+    ) {
+        return customerService.updateCustomer(customerId, request);
+    }
+}
@@ -0,0 +1,18 @@
+package com.amigoscode.customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// non blocking counterpart of CustomerDAO, used by the "reactive" profile
+public interface CustomerReactiveDAO {
+    // rows are fetched as the subscriber asks for them
+    Flux<Customer> selectAllCustomers();
+    Flux<Customer> selectCustomersAfter(Integer afterId, int limit);
+    Mono<Customer> selectCustomerById(Integer customerId);
+    // empty when the email is taken
+    Mono<Integer> insertCustomerReturningId(Customer customer);
+    Mono<Boolean> deleteCustomer(Integer customerId);
+    Mono<Boolean> existsCustomerWithId(Integer customerId);
+    // same contract as CustomerDAO.updateCustomerIfChanged, empty when the customer doesn't exist
+    Mono<CustomerUpdateResult> updateCustomerIfChanged(Customer changes);
+}
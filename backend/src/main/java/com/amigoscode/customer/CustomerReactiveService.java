@@ -0,0 +1,85 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DublicateResourceException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// CustomerService for the "reactive" profile, same rules and messages
+@Service
+@Profile("reactive")
+public class CustomerReactiveService {
+
+    private final CustomerReactiveDAO customerDAO;
+
+    public CustomerReactiveService(CustomerReactiveDAO customerDAO) {
+        this.customerDAO = customerDAO;
+    }
+
+    public Flux<Customer> getAllCustomer() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    public Mono<CustomerPage> getCustomersPage(Integer afterId, Integer limit) {
+        return Mono.defer(() -> {
+            CustomerService.validatePageLimit(limit);
+            return customerDAO.selectCustomersAfter(afterId, limit + 1)
+                    .collectList()
+                    .map(customers -> CustomerService.toPage(customers, limit));
+        });
+    }
+
+    public Mono<Customer> getCustomer(Integer customerId) {
+        return customerDAO
+                .selectCustomerById(customerId)
+                .switchIfEmpty(Mono.error(() -> CustomerService.customerNotFound(customerId)));
+    }
+
+    public Mono<Integer> addCustomer(CustomerRegistratioRequest customerRegistratioRequest) {
+        Customer customer = new Customer(
+                customerRegistratioRequest.name(),
+                customerRegistratioRequest.email(),
+                customerRegistratioRequest.age()
+        );
+        return customerDAO
+                .insertCustomerReturningId(customer)
+                .switchIfEmpty(Mono.error(() -> new DublicateResourceException(
+                        "email already taken"
+                )));
+    }
+
+    public Mono<Void> deleteCustomer(Integer customerId) {
+        return customerDAO
+                .deleteCustomer(customerId)
+                .flatMap(deleted -> deleted
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ResourceNotFoundException(
+                                "customer with id: [%s] doesn't exist".formatted(customerId)
+                        )));
+    }
+
+    public Mono<Void> updateCustomer(Integer customerId, CustomerEditRequest request) {
+        Customer changes = CustomerService.changesOf(customerId, request);
+        if (changes == null) {
+            // nothing to change, but a missing customer is still a 404
+            return customerDAO
+                    .existsCustomerWithId(customerId)
+                    .flatMap(exists -> exists
+                            ? Mono.<Void>empty()
+                            : Mono.error(CustomerService.customerNotFound(customerId)));
+        }
+
+        return customerDAO
+                .updateCustomerIfChanged(changes)
+                .onErrorMap(DuplicateKeyException.class, e -> new DublicateResourceException(
+                        "email already taken"
+                ))
+                .switchIfEmpty(Mono.error(() -> CustomerService.customerNotFound(customerId)))
+                .flatMap(result -> result.updated()
+                        ? Mono.<Void>empty()
+                        : Mono.error(CustomerService.notUpdated(changes, result.previous())));
+    }
+}
@@ -1,8 +1,136 @@
 package com.amigoscode.customer;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface CustomerRepository extends JpaRepository<Customer, Integer> {
     boolean existsCustomerByEmail(String email);
-}
 
+    // not @Modifying, RETURNING makes the insert a query that gives back the generated id
+    @Transactional
+    @Query(
+            value = """
+                    INSERT INTO customer (name, email, age)
+                    VALUES (:name, :email, :age)
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING id
+                    """,
+            nativeQuery = true
+    )
+    Optional<Integer> insertCustomerIfEmailAvailable(
+            @Param("name") String name,
+            @Param("email") String email,
+            @Param("age") Integer age
+    );
+
+    // the whole batch in one statement: a taken email is skipped instead of failing the batch
+    // unnest gives the rows back in array order, so of two with the same email the first one wins
+    // (spring data's query parser doesn't take WITH ORDINALITY, the write-behind dao's jdbc version orders by it)
+    @Transactional
+    @Query(
+            value = """
+                    INSERT INTO customer (name, email, age)
+                    SELECT name, email, age
+                    FROM unnest(cast(:names AS text[]), cast(:emails AS text[]), cast(:ages AS int[]))
+                        AS batch(name, email, age)
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING email
+                    """,
+            nativeQuery = true
+    )
+    List<String> insertCustomersIfEmailAvailable(
+            @Param("names") String[] names,
+            @Param("emails") String[] emails,
+            @Param("ages") Integer[] ages
+    );
+
+    @Modifying
+    @Transactional
+    @Query("delete from Customer c where c.id = :id")
+    int deleteCustomerById(@Param("id") Integer id);
+
+    @Query("select c.email from Customer c where c.email in :emails")
+    Set<String> findEmailsByEmailIn(@Param("emails") Collection<String> emails);
 
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer id, Limit limit);
+
+    // a filter that is null folds away when postgres plans with the values, the others can use the
+    // indexes from V4__Add_Customer_Search_Indexes.sql (the jdbc dao leaves them out of the sql instead)
+    @Query(
+            value = """
+                    SELECT * FROM customer
+                    WHERE id > :afterId
+                      AND (cast(:namePattern AS text) IS NULL OR lower(name) LIKE cast(:namePattern AS text))
+                      AND (cast(:emailDomain AS text) IS NULL OR lower(split_part(email, '@', 2)) = cast(:emailDomain AS text))
+                      AND (cast(:minAge AS int) IS NULL OR age >= cast(:minAge AS int))
+                      AND (cast(:maxAge AS int) IS NULL OR age <= cast(:maxAge AS int))
+                    ORDER BY id
+                    LIMIT :limit
+                    """,
+            nativeQuery = true
+    )
+    List<Customer> searchCustomers(
+            @Param("afterId") Integer afterId,
+            @Param("namePattern") String namePattern,
+            @Param("emailDomain") String emailDomain,
+            @Param("minAge") Integer minAge,
+            @Param("maxAge") Integer maxAge,
+            @Param("limit") int limit
+    );
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Customer> streamAllByOrderByIdAsc();
+
+    // the same as CustomerJDBCDataAccessService.safeWatermark, cast() because hibernate takes :: for a parameter
+    @Query(
+            value = "SELECT cast(cast(pg_snapshot_xmin(pg_current_snapshot()) AS text) AS bigint)",
+            nativeQuery = true
+    )
+    long safeWatermark();
+
+    // the same as CustomerJDBCDataAccessService.selectChangesAfter, a row is
+    // changed_xid, id, name, email, age, version, deleted
+    @Query(
+            value = """
+                    (
+                        SELECT changed_xid, id, name, email, age, version, false AS deleted
+                        FROM customer
+                        WHERE (changed_xid, id) > (:xid, :customerId) AND changed_xid < :until
+                        ORDER BY changed_xid, id
+                        LIMIT :limit
+                    )
+                    UNION ALL
+                    (
+                        SELECT changed_xid, customer_id, NULL, NULL, NULL, NULL, true
+                        FROM customer_tombstone
+                        WHERE (changed_xid, customer_id) > (:xid, :customerId) AND changed_xid < :until
+                        ORDER BY changed_xid, customer_id
+                        LIMIT :limit
+                    )
+                    ORDER BY changed_xid, id
+                    LIMIT :limit
+                    """,
+            nativeQuery = true
+    )
+    List<Object[]> findChangesAfter(
+            @Param("xid") long xid,
+            @Param("customerId") int customerId,
+            @Param("until") long until,
+            @Param("limit") int limit
+    );
+}
@@ -0,0 +1,59 @@
+package com.amigoscode.customer;
+
+import java.util.Locale;
+
+// the filters of GET api/v1/customers/search, each one is optional (null) and the ones that are set all have to match
+// - namePrefix: the name starts with it, ignoring case
+// - emailDomain: what comes after the @ of the email, ignoring case
+// - minAge, maxAge: inclusive
+public record CustomerSearch(
+        String namePrefix,
+        String emailDomain,
+        Integer minAge,
+        Integer maxAge
+) {
+
+    // lower case once here, so the daos compare with lower(name) and the indexes on it
+    public CustomerSearch {
+        namePrefix = normalize(namePrefix);
+        emailDomain = normalize(emailDomain);
+        if (emailDomain != null && emailDomain.startsWith("@")) {
+            emailDomain = normalize(emailDomain.substring(1));
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // same as split_part(email, '@', 2) in postgres
+    static String domainOf(String email) {
+        int at = email.indexOf('@');
+        if (at < 0) {
+            return "";
+        }
+        int end = email.indexOf('@', at + 1);
+        return email.substring(at + 1, end < 0 ? email.length() : end);
+    }
+
+    boolean matchesAge(int age) {
+        return (minAge == null || age >= minAge) && (maxAge == null || age <= maxAge);
+    }
+
+    boolean matchesName(String name) {
+        return namePrefix == null || name.toLowerCase(Locale.ROOT).startsWith(namePrefix);
+    }
+
+    boolean matchesEmail(String email) {
+        return emailDomain == null || domainOf(email).toLowerCase(Locale.ROOT).equals(emailDomain);
+    }
+
+    boolean matches(Customer customer) {
+        return matchesAge(customer.getAge())
+                && matchesName(customer.getName())
+                && matchesEmail(customer.getEmail());
+    }
+}
@@ -1,25 +1,156 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.ConcurrentUpdateException;
 import com.amigoscode.exception.DublicateResourceException;
+import com.amigoscode.exception.PreconditionFailedException;
 import com.amigoscode.exception.RequestValidationException;
 import com.amigoscode.exception.ResourceNotFoundException;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class CustomerService {
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_BATCH_SIZE = 10_000;
+
     private final CustomerDAO customerDAO;
+    private final CustomerCopyDAO customerCopyDAO;
+    private final CustomerFuzzySearch customerFuzzySearch;
+    private final CustomerSyncDAO customerSyncDAO;
 
-    public CustomerService(@Qualifier("jdbc") CustomerDAO customerDAO) {
+    public CustomerService(@Qualifier("cached") CustomerDAO customerDAO,
+                           CustomerCopyDAO customerCopyDAO,
+                           CustomerFuzzySearch customerFuzzySearch,
+                           @Qualifier("jdbc") CustomerSyncDAO customerSyncDAO) {
         this.customerDAO = customerDAO;
+        this.customerCopyDAO = customerCopyDAO;
+        this.customerFuzzySearch = customerFuzzySearch;
+        this.customerSyncDAO = customerSyncDAO;
     }
 
     public List<Customer> getAllCustomer() {
         return customerDAO.selectAllCustomers();
     }
 
+    public CustomerPage getCustomersPage(Integer afterId, Integer limit) {
+        validatePageLimit(limit);
+
+        // ask for one extra row, so we know if there is a next page without a count(*)
+        List<Customer> customers = customerDAO.selectCustomersAfter(afterId, limit + 1);
+        return toPage(customers, limit);
+    }
+
+    public CustomerPage searchCustomers(CustomerSearch search, Integer afterId, Integer limit) {
+        validatePageLimit(limit);
+        if (search.minAge() != null && search.maxAge() != null && search.minAge() > search.maxAge()) {
+            throw new RequestValidationException(
+                    "minAge can't be greater than maxAge"
+            );
+        }
+
+        // one extra row for the next cursor, same as getCustomersPage
+        List<Customer> customers = customerDAO.searchCustomers(search, afterId, limit + 1);
+        return toPage(customers, limit);
+    }
+
+    // best match first, from the in memory index, postgres isn't queried
+    public List<CustomerFuzzyMatch> fuzzySearchCustomers(String query, Integer limit) {
+        if (isBlank(query)) {
+            throw new RequestValidationException(
+                    "q can't be empty"
+            );
+        }
+        validatePageLimit(limit);
+        return customerFuzzySearch.search(query, limit);
+    }
+
+    // what changed after the watermark of the previous sync, all the customers without one
+    // straight from postgres, the cache knows nothing about when a customer changed
+    public CustomerChanges getCustomerChanges(String since, Integer limit) {
+        validatePageLimit(limit);
+        CustomerWatermark after = since == null ? CustomerWatermark.BEGINNING : CustomerWatermark.parse(since);
+
+        // before the changes, see CustomerSyncDAO.safeWatermark
+        long until = customerSyncDAO.safeWatermark();
+        // one extra row says there is more, like the pages
+        List<CustomerChange> changes = customerSyncDAO.selectChangesAfter(
+                after.xid(), after.customerId(), until, limit + 1
+        );
+        boolean more = changes.size() > limit;
+        if (more) {
+            changes = changes.subList(0, limit);
+        }
+
+        List<Customer> customers = new ArrayList<>();
+        List<Integer> deletedCustomerIds = new ArrayList<>();
+        for (CustomerChange change : changes) {
+            if (change.customer() == null) {
+                deletedCustomerIds.add(change.customerId());
+            } else {
+                customers.add(change.customer());
+            }
+        }
+
+        // everything before until was read, the next sync starts there. until only moves forward, it is behind the
+        // client's watermark only for one that didn't come from here, then the client keeps its own
+        CustomerWatermark next = more
+                ? new CustomerWatermark(changes.get(limit - 1).xid(), changes.get(limit - 1).customerId())
+                : new CustomerWatermark(until, 0);
+        if (after.isAfter(next)) {
+            next = after;
+        }
+        return new CustomerChanges(customers, deletedCustomerIds, next.format(), more);
+    }
+
+    static void validatePageLimit(Integer limit) {
+        if (limit == null || limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new RequestValidationException(
+                    "limit must be between 1 and " + MAX_PAGE_SIZE
+            );
+        }
+    }
+
+    // customers holds up to limit + 1 rows, the extra one only says there is a next page
+    static CustomerPage toPage(List<Customer> customers, int limit) {
+        if (customers.size() <= limit) {
+            return new CustomerPage(customers, null);
+        }
+
+        List<Customer> page = customers.subList(0, limit);
+        return new CustomerPage(page, page.get(limit - 1).getId());
+    }
+
+    public void exportCustomers(Consumer<Customer> action) {
+        customerDAO.forEachCustomer(action);
+    }
+
+    public long exportCustomersCsv(OutputStream csv) {
+        return customerCopyDAO.copyCustomersOut(csv);
+    }
+
+    public CustomerImportResult importCustomersCsv(InputStream csv) {
+        try {
+            return customerCopyDAO.copyCustomersIn(csv);
+        } catch (DataIntegrityViolationException e) {
+            // malformed rows (wrong number of columns, age that is not a number...) fail the COPY
+            throw new RequestValidationException(
+                    "invalid csv: " + e.getMostSpecificCause().getMessage()
+            );
+        }
+    }
+
     public Customer getCustomer(Integer customerId) {
         return customerDAO
                 .selectCustomerById(customerId)
@@ -28,81 +159,189 @@ public class CustomerService {
                 ) );
     }
 
-    public void addCustomer(CustomerRegistratioRequest customerRegistratioRequest) {
-        // check if email exists
-        String email = customerRegistratioRequest.email();
-        if (customerDAO.existsCustomerWithEmail(email)) {
-            throw new DublicateResourceException(
-                    "email already taken"
-            );
-        }
-        // add
+    public Integer addCustomer(CustomerRegistratioRequest customerRegistratioRequest) {
         Customer customer = new Customer(
                 customerRegistratioRequest.name(),
                 customerRegistratioRequest.email(),
                 customerRegistratioRequest.age()
         );
-        customerDAO.insertCustomer(
-                customer
-        );
+        // one round trip, the insert itself tells us if the email is taken (no check-then-insert race)
+        return customerDAO
+                .insertCustomerReturningId(customer)
+                .orElseThrow(() -> new DublicateResourceException(
+                        "email already taken"
+                ));
+    }
+
+    public List<CustomerBatchRegistrationResult> addCustomers(List<CustomerRegistratioRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > MAX_BATCH_SIZE) {
+            throw new RequestValidationException(
+                    "a batch must have between 1 and " + MAX_BATCH_SIZE + " customers"
+            );
+        }
+
+        CustomerBatchRegistrationResult.Status[] statuses =
+                new CustomerBatchRegistrationResult.Status[requests.size()];
+
+        // reject incomplete rows and emails repeated inside the batch before going to the db
+        Map<String, Integer> indexByEmail = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            CustomerRegistratioRequest request = requests.get(i);
+            if (request == null || isBlank(request.name()) || isBlank(request.email()) || request.age() == null) {
+                statuses[i] = CustomerBatchRegistrationResult.Status.INVALID;
+            } else if (indexByEmail.putIfAbsent(request.email(), i) != null) {
+                statuses[i] = CustomerBatchRegistrationResult.Status.DUPLICATE;
+            }
+        }
+
+        // one query for all the emails instead of one existsCustomerWithEmail per row
+        Set<String> existingEmails = customerDAO.selectExistingEmails(indexByEmail.keySet());
+
+        List<Integer> indexes = new ArrayList<>();
+        List<Customer> customers = new ArrayList<>();
+        indexByEmail.forEach((email, i) -> {
+            if (existingEmails.contains(email)) {
+                statuses[i] = CustomerBatchRegistrationResult.Status.DUPLICATE;
+                return;
+            }
+            CustomerRegistratioRequest request = requests.get(i);
+            indexes.add(i);
+            customers.add(new Customer(request.name(), request.email(), request.age()));
+        });
+
+        if (!customers.isEmpty()) {
+            // 0 means the email was registered by someone else between the check and the insert
+            int[] inserted = customerDAO.insertCustomers(customers);
+            for (int j = 0; j < inserted.length; j++) {
+                statuses[indexes.get(j)] = inserted[j] == 0
+                        ? CustomerBatchRegistrationResult.Status.DUPLICATE
+                        : CustomerBatchRegistrationResult.Status.CREATED;
+            }
+        }
+
+        List<CustomerBatchRegistrationResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            CustomerRegistratioRequest request = requests.get(i);
+            results.add(new CustomerBatchRegistrationResult(
+                    i,
+                    request == null ? null : request.email(),
+                    statuses[i]
+            ));
+        }
+        return results;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
     }
 
     public void deleteCustomer(Integer customerId) {
-        if (!customerDAO.existsCustomerWithId(customerId)) {
+        // the affected row count tells us if it existed, no separate exists query
+        if (!customerDAO.deleteCustomer(customerId)) {
             throw new ResourceNotFoundException(
                     "customer with id: [%s] doesn't exist".formatted(customerId)
             );
         }
-
-        customerDAO.deleteCustomer(customerId);
     }
 
     // update based on a body request
     public void updateCustomer(Integer customerId, CustomerEditRequest request) {
-        // check if the customer exists to have something which we can compare
-        var customerCopy = getCustomer(customerId).clone();
-        var customer = getCustomer(customerId);
-
-        // check if name and age is different than null
-        if (request.name() != null && request.age() != null) {
-            customerCopy.setName(request.name());
-            if (customerCopy.equals(customer)) {
-                throw new RequestValidationException("The name field can't be the same");
-            }
+        updateCustomer(customerId, request, null);
+    }
 
-            customer.setName(request.name());
-            customerCopy.setAge(request.age());
-            if (customerCopy.equals(customer)) {
-                throw new RequestValidationException("The age field can't be the same");
+    // expectedVersion is the version the client read (its If-Match), null to update whatever the version
+    public void updateCustomer(Integer customerId, CustomerEditRequest request, Long expectedVersion) {
+        Customer changes = changesOf(customerId, request);
+        if (changes == null) {
+            // nothing to change, but a missing customer is still a 404
+            if (expectedVersion != null) {
+                Customer customer = customerDAO.selectCustomerById(customerId)
+                        .orElseThrow(() -> customerNotFound(customerId));
+                if (!expectedVersion.equals(customer.getVersion())) {
+                    throw versionChanged(customerId, customer.getVersion());
+                }
+            } else if (!customerDAO.existsCustomerWithId(customerId)) {
+                throw customerNotFound(customerId);
             }
-            customerDAO.updateCustomer(customerCopy);
             return;
         }
+        // checked by the same statement that writes, so an update in between can't slip through
+        changes.setVersion(expectedVersion);
 
-        if (request.age() != null) {
-            customerCopy.setAge(request.age());
-            if (customerCopy.equals(customer)) {
-                throw new RequestValidationException("The age field can't be the same");
-            }
-            customerDAO.updateCustomer(customerCopy);
-            return;
+        // a single statement writes only the changed columns and tells us if the customer exists
+        // and if anything changed, instead of loading the customer (twice) before a full update
+        CustomerUpdateResult result;
+        try {
+            result = customerDAO
+                    .updateCustomerIfChanged(changes)
+                    .orElseThrow(() -> customerNotFound(customerId));
+        } catch (DuplicateKeyException e) {
+            throw new DublicateResourceException(
+                    "email already taken"
+            );
+        } catch (OptimisticLockingFailureException e) {
+            // jpa: another update committed between our read and our flush
+            throw concurrentUpdate(customerId);
         }
 
-        if (request.name() != null) {
-            customerCopy.setName(request.name());
-            if (customerCopy.equals(customer)) {
-                throw new RequestValidationException("The name field can't be the same");
-            }
-            customerDAO.updateCustomer(customerCopy);
-            return;
+        if (!result.updated()) {
+            throw notUpdated(changes, result.previous());
+        }
+    }
+
+    // pick the fields to write: name and age together, otherwise age, name or email on its own
+    // null when the request has nothing to change
+    static Customer changesOf(Integer customerId, CustomerEditRequest request) {
+        Customer changes = new Customer(customerId, null, null, null);
+        if (request.name() != null && request.age() != null) {
+            changes.setName(request.name());
+            changes.setAge(request.age());
+        } else if (request.age() != null) {
+            changes.setAge(request.age());
+        } else if (request.name() != null) {
+            changes.setName(request.name());
+        } else if (request.email() != null) {
+            changes.setEmail(request.email());
+        } else {
+            return null;
         }
+        return changes;
+    }
 
-        if (request.email() != null) {
-            customerCopy.setEmail(request.email());
-            if (customerCopy.equals(customer)) {
-                throw new RequestValidationException("The email field can't be the same");
-            }
-            customerDAO.updateCustomer(customerCopy);
+    // nothing was written, so the version moved on or one of the fields already had that value
+    static RuntimeException notUpdated(Customer changes, Customer previous) {
+        if (changes.getVersion() != null && !changes.getVersion().equals(previous.getVersion())) {
+            return versionChanged(changes.getId(), previous.getVersion());
+        }
+        if (changes.getName() != null && changes.getName().equals(previous.getName())) {
+            return new RequestValidationException("The name field can't be the same");
         }
+        if (changes.getAge() != null && changes.getAge().equals(previous.getAge())) {
+            return new RequestValidationException("The age field can't be the same");
+        }
+        if (changes.getEmail() != null && changes.getEmail().equals(previous.getEmail())) {
+            return new RequestValidationException("The email field can't be the same");
+        }
+        // every field was different and the version, if any, was the expected one when the statement started,
+        // so another update got the row first. a missing row is the dao's Optional.empty(), not this
+        return concurrentUpdate(changes.getId());
+    }
+
+    static ConcurrentUpdateException concurrentUpdate(Integer customerId) {
+        return new ConcurrentUpdateException(
+                "customer with id: " + customerId + " was updated by someone else, read it again"
+        );
+    }
+
+    static PreconditionFailedException versionChanged(Integer customerId, Long version) {
+        return new PreconditionFailedException(
+                "customer with id: " + customerId + " has changed, its version is now " + version
+        );
+    }
+
+    static ResourceNotFoundException customerNotFound(Integer customerId) {
+        return new ResourceNotFoundException(
+                "customer with id: " + customerId + " doesn't exist"
+        );
     }
 }
@@ -0,0 +1,110 @@
+package com.amigoscode.customer;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+// open addressing (linear probing) hash index from a key to a slot of CustomerColumnarDataAccessService
+// the table only holds slot numbers, the key of a slot lives in the columns, so an entry is a single int
+// and a lookup never boxes. not thread safe, the dao's lock guards it
+final class CustomerSlotIndex {
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+    private static final int MIN_CAPACITY = 16;
+
+    // how to get the hash back from a slot when the table grows
+    private final IntUnaryOperator hashOfSlot;
+    private int[] table;
+    private int size; // live entries
+    private int used; // live + deleted, what the probe sequences see
+
+    CustomerSlotIndex(int expectedSize, IntUnaryOperator hashOfSlot) {
+        this.hashOfSlot = hashOfSlot;
+        this.table = newTable(expectedSize);
+    }
+
+    private static int[] newTable(int expectedSize) {
+        // keep the load under 3/4, probes stay short
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 4 / 3 + 1) - 1) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    // spread the bits, ids are sequential and would all land next to each other
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeInBytes() {
+        return (long) table.length * Integer.BYTES;
+    }
+
+    // the slot with this hash that matches, or -1
+    int find(int hash, IntPredicate matches) {
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            int slot = table[i];
+            if (slot == EMPTY) {
+                return -1;
+            }
+            if (slot != DELETED && matches.test(slot)) {
+                return slot;
+            }
+        }
+    }
+
+    // the caller made sure the key is not in the index yet
+    void add(int hash, int slot) {
+        if ((used + 1) * 4L > table.length * 3L) {
+            rehash(size + 1);
+        }
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == EMPTY) {
+                used++;
+                table[i] = slot;
+                size++;
+                return;
+            }
+            if (table[i] == DELETED) {
+                table[i] = slot;
+                size++;
+                return;
+            }
+        }
+    }
+
+    boolean remove(int hash, int slot) {
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            if (table[i] == slot) {
+                // a tombstone, so the probe sequences going through here stay intact
+                table[i] = DELETED;
+                size--;
+                return true;
+            }
+        }
+    }
+
+    // grows, or just drops the tombstones when most of the used entries are deleted ones
+    private void rehash(int expectedSize) {
+        int[] old = table;
+        table = newTable(Math.max(expectedSize * 2, MIN_CAPACITY));
+        size = 0;
+        used = 0;
+        for (int slot : old) {
+            if (slot >= 0) {
+                add(hashOfSlot.applyAsInt(slot), slot);
+            }
+        }
+    }
+}
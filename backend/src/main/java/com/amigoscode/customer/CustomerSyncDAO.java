@@ -0,0 +1,16 @@
+package com.amigoscode.customer;
+
+import java.util.List;
+
+// the changed_xid columns of customer and customer_tombstone (V6, V7), for api/v1/customers/changes
+// changes are in (xid, customerId) order, the same order as their indexes, so reading the ones after a point
+// costs as much as there are changes after it whatever the size of the table
+public interface CustomerSyncDAO {
+    // the xid before which every transaction has ended, read it before the changes it bounds so they see all of
+    // them committed (or rolled back). the oldest transaction still running holds it back, whether it wrote anything
+    // yet or not: its rows get its xid when they are stamped, one that starts later gets a bigger one
+    // comes from the snapshot of this session, it needs no pg_stat_activity or any other privilege
+    long safeWatermark();
+    // the ones after (xid, customerId) and before until, in that order, deleted customers as tombstones
+    List<CustomerChange> selectChangesAfter(long xid, int customerId, long until, int limit);
+}
@@ -0,0 +1,313 @@
+package com.amigoscode.customer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// inverted index from trigrams to customer ids, for fuzzy search over names and emails
+// the text is cut in words on anything that is not a letter or a digit, each word is lower cased and padded like
+// pg_trgm does ("  alex " -> "  a", " al", "ale", "lex", "ex "), so a typo only breaks the few trigrams around it
+//
+// a search keeps the customers that have at least threshold of the query's trigrams in their name or their email.
+// such a customer has to be in the postings of one of the (n - ceil(threshold * n) + 1) rarest query trigrams, so
+// only those postings are read (prefix filtering), rarest first and at most MAX_POSTINGS of them. the ids that are
+// in the most of these lists are scored against their own text, at most MAX_CANDIDATES of them: scoring is the
+// expensive part (a few cache misses to get to the strings). the rarest trigrams say the most about a match, so when
+// a query matches more than that (a common name) the best matches are still among the candidates, just not every tie
+// postings are append only: an update or delete leaves stale ids behind that scoring skips, and they are dropped
+// once there are as many stale ones as live ones. not thread safe, CustomerFuzzySearch guards it
+final class CustomerTrigramIndex {
+    // what keeps a search under a millisecond with a million customers, see CustomerFuzzySearchBenchmark
+    static final int MAX_POSTINGS = 8_000;
+    static final int MAX_CANDIDATES = 500;
+
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private final Map<Long, Postings> postingsByTrigram = new HashMap<>();
+    private final Map<Integer, Customer> customersById = new HashMap<>();
+    private long livePostings;
+    private long stalePostings;
+    private int highestId;
+
+    int size() {
+        return customersById.size();
+    }
+
+    // the highest id ever indexed, rows inserted later have a higher one
+    int highestId() {
+        return highestId;
+    }
+
+    // adds the customer or replaces the one with the same id, the index keeps its own copy
+    void put(Customer customer) {
+        Customer previous = customersById.put(customer.getId(), customer.clone());
+        highestId = Math.max(highestId, customer.getId());
+        long[] trigrams = trigramsOf(customer);
+        if (previous == null) {
+            addPostings(customer.getId(), trigrams);
+            return;
+        }
+        // only the trigrams the customer didn't have yet get a posting, the ones it lost become stale
+        long[] before = trigramsOf(previous);
+        long[] added = difference(trigrams, before);
+        addPostings(customer.getId(), added);
+        stale(before.length - (trigrams.length - added.length));
+    }
+
+    void remove(Integer customerId) {
+        Customer previous = customersById.remove(customerId);
+        if (previous != null) {
+            stale(trigramsOf(previous).length);
+        }
+    }
+
+    private void addPostings(int id, long[] trigrams) {
+        for (long trigram : trigrams) {
+            postingsByTrigram.computeIfAbsent(trigram, t -> new Postings()).add(id);
+        }
+        livePostings += trigrams.length;
+    }
+
+    private void stale(long postings) {
+        livePostings -= postings;
+        stalePostings += postings;
+        if (stalePostings > livePostings && stalePostings > 1024) {
+            rebuildPostings();
+        }
+    }
+
+    private void rebuildPostings() {
+        postingsByTrigram.clear();
+        livePostings = 0;
+        stalePostings = 0;
+        customersById.forEach((id, customer) -> addPostings(id, trigramsOf(customer)));
+    }
+
+    // best first, at most limit of them
+    List<CustomerFuzzyMatch> search(String query, double threshold, int limit) {
+        long[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0) {
+            return List.of();
+        }
+        int minShared = Math.max(1, (int) Math.ceil(threshold * queryTrigrams.length));
+
+        // rarest first, a trigram nobody has counts as the rarest
+        Postings[] postings = new Postings[queryTrigrams.length];
+        for (int i = 0; i < queryTrigrams.length; i++) {
+            postings[i] = postingsByTrigram.get(queryTrigrams[i]);
+        }
+        Arrays.sort(postings, Comparator.comparingInt(p -> p == null ? 0 : p.size));
+
+        int lists = queryTrigrams.length - minShared + 1;
+        int[] ids = new int[MAX_POSTINGS];
+        int read = 0;
+        for (int i = 0; i < lists && read < MAX_POSTINGS; i++) {
+            if (postings[i] == null) {
+                continue;
+            }
+            int take = Math.min(postings[i].size, MAX_POSTINGS - read);
+            System.arraycopy(postings[i].ids, 0, ids, read, take);
+            read += take;
+        }
+        int[] candidates = mostFrequent(ids, read, lists, MAX_CANDIDATES);
+
+        PriorityQueue<CustomerFuzzyMatch> best = new PriorityQueue<>(BY_SCORE);
+        long[] text = new long[64];
+        boolean[] found = new boolean[queryTrigrams.length];
+        long queryMask = 0;
+        for (long trigram : queryTrigrams) {
+            queryMask |= bit(trigram);
+        }
+        for (int candidate : candidates) {
+            Customer customer = customersById.get(candidate);
+            if (customer == null) {
+                continue; // deleted, its postings are stale
+            }
+            text = fit(text, Math.max(customer.getName().length(), customer.getEmail().length()));
+            double score = Math.max(
+                    score(queryTrigrams, queryMask, text, trigrams(customer.getName(), text), minShared, found),
+                    score(queryTrigrams, queryMask, text, trigrams(customer.getEmail(), text), minShared, found)
+            );
+            if (score > 0) {
+                best.add(new CustomerFuzzyMatch(customer.clone(), score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<CustomerFuzzyMatch> matches = new ArrayList<>(best);
+        matches.sort(BY_SCORE.reversed());
+        return matches;
+    }
+
+    // the distinct ids out of the first count, the ones that are there the most times first (at most maxTimes),
+    // at most limit of them. sorts ids
+    static int[] mostFrequent(int[] ids, int count, int maxTimes, int limit) {
+        Arrays.sort(ids, 0, count);
+        // how many ids are there n times
+        int[] withTimes = new int[maxTimes + 2];
+        for (int i = 0; i < count; ) {
+            int j = i;
+            while (j < count && ids[j] == ids[i]) {
+                j++;
+            }
+            withTimes[Math.min(j - i, maxTimes)]++;
+            i = j;
+        }
+        // the fewest times an id can be there and still make it
+        int minTimes = maxTimes;
+        int taken = withTimes[maxTimes];
+        while (minTimes > 1 && taken + withTimes[minTimes - 1] <= limit) {
+            minTimes--;
+            taken += withTimes[minTimes];
+        }
+        int[] result = new int[Math.min(limit, taken + (minTimes > 1 ? withTimes[minTimes - 1] : 0))];
+        int size = 0;
+        // everything with more than minTimes, then fill up with the ones just below
+        for (int pass = 0; pass < 2 && size < result.length; pass++) {
+            for (int i = 0; i < count && size < result.length; ) {
+                int j = i;
+                while (j < count && ids[j] == ids[i]) {
+                    j++;
+                }
+                int times = Math.min(j - i, maxTimes);
+                if (pass == 0 ? times >= minTimes : times == minTimes - 1) {
+                    result[size++] = ids[i];
+                }
+                i = j;
+            }
+        }
+        return result;
+    }
+
+    // worst first, so the queue drops the worst one. ties go to the lower id
+    private static final Comparator<CustomerFuzzyMatch> BY_SCORE = Comparator
+            .comparingDouble(CustomerFuzzyMatch::score)
+            .thenComparing(match -> match.customer().getId(), Comparator.reverseOrder());
+
+    // 0 under the threshold, otherwise the share of the query that is found (a part of a name scores as high as the
+    // whole name) averaged with the similarity of the two (so the whole name still ranks first)
+    // query is sorted and distinct, the first length trigrams of text are neither: no sorting for every candidate,
+    // and most of them aren't in the query, the mask (see bit) rules those out without a binary search
+    static double score(long[] query, long queryMask, long[] text, int length, int minShared, boolean[] found) {
+        Arrays.fill(found, false);
+        int shared = 0;
+        for (int t = 0; t < length; t++) {
+            if ((queryMask & bit(text[t])) == 0) {
+                continue;
+            }
+            int q = Arrays.binarySearch(query, text[t]);
+            if (q >= 0 && !found[q]) {
+                found[q] = true;
+                shared++;
+            }
+        }
+        if (shared < minShared) {
+            return 0;
+        }
+        double matched = shared / (double) query.length;
+        double similarity = shared / (double) (query.length + length - shared);
+        return (matched + similarity) / 2;
+    }
+
+    // one of 64 bits for a trigram, a set of trigrams ORs theirs together
+    private static long bit(long trigram) {
+        return 1L << ((trigram * 0x9E3779B97F4A7C15L) >>> 58);
+    }
+
+    // a text of length chars has at most 2 * length + 1 trigrams (every other char a one letter word)
+    private static long[] fit(long[] buffer, int length) {
+        return buffer.length > 2 * length + 1 ? buffer : new long[2 * length + 2];
+    }
+
+    private static long[] trigramsOf(Customer customer) {
+        return union(trigrams(customer.getName()), trigrams(customer.getEmail()));
+    }
+
+    // the distinct trigrams of text, sorted
+    static long[] trigrams(String text) {
+        if (text == null) {
+            return new long[0];
+        }
+        long[] trigrams = fit(new long[0], text.length());
+        int count = trigrams(text, trigrams);
+        long[] sorted = Arrays.copyOf(trigrams, count);
+        Arrays.sort(sorted);
+        return distinct(sorted);
+    }
+
+    // writes the trigrams of text, in order and with repeats, to the start of into (see fit) and returns how many
+    private static int trigrams(String text, long[] into) {
+        int count = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                // "  word ": two spaces in front and one after
+                char a = ' ';
+                char b = ' ';
+                for (int j = start; j <= i; j++) {
+                    char c = j < i ? Character.toLowerCase(text.charAt(j)) : ' ';
+                    into[count++] = pack(a, b, c);
+                    a = b;
+                    b = c;
+                }
+                start = -1;
+            }
+        }
+        return count;
+    }
+
+    private static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static long[] distinct(long[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    private static long[] union(long[] a, long[] b) {
+        long[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        Arrays.sort(both);
+        return distinct(both);
+    }
+
+    // what is in a and not in b, both sorted
+    private static long[] difference(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        int count = 0;
+        int j = 0;
+        for (long value : a) {
+            while (j < b.length && b[j] < value) {
+                j++;
+            }
+            if (j == b.length || b[j] != value) {
+                result[count++] = value;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,8 @@
+package com.amigoscode.customer;
+
+public record CustomerUpdateResult(
+        Customer previous, // the customer as it was before the update
+        boolean updated // false when one of the changed fields already had that value, or the version didn't match
+) {
+
+}
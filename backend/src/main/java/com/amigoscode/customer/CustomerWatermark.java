@@ -0,0 +1,30 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.RequestValidationException;
+
+// where a client's last sync stopped in the (xid, customerId) order of CustomerSyncDAO
+// the clients get it as <xid>-<customer id>
+record CustomerWatermark(long xid, int customerId) {
+    static final CustomerWatermark BEGINNING = new CustomerWatermark(0, 0);
+
+    static CustomerWatermark parse(String watermark) {
+        int separator = watermark.lastIndexOf('-');
+        try {
+            long xid = Long.parseLong(watermark.substring(0, separator));
+            int customerId = Integer.parseInt(watermark.substring(separator + 1));
+            return new CustomerWatermark(xid, customerId);
+        } catch (RuntimeException e) {
+            throw new RequestValidationException(
+                    "since " + watermark + " is not a watermark from api/v1/customers/changes"
+            );
+        }
+    }
+
+    boolean isAfter(CustomerWatermark other) {
+        return xid > other.xid || xid == other.xid && customerId > other.customerId;
+    }
+
+    String format() {
+        return xid + "-" + customerId;
+    }
+}
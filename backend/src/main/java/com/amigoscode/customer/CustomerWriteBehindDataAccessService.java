@@ -0,0 +1,401 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// write-behind in front of the jdbc dao, on with customer.write-behind.enabled=true
+// inserts and partial updates (updateCustomerIfChanged, what PUT uses) go into a bounded queue; one thread takes up
+// to max-batch-size of them, waiting at most max-delay after the first one, and writes them in a single transaction:
+// one INSERT for all the inserts, then the jdbc dao's update statement for each update, in queue order. so a burst of
+// registrations or edits pays for one commit per batch instead of one per row.
+//
+// durability:
+// - the CustomerDAO methods block until the batch holding their write is committed, a caller that got a return
+//   value has the same guarantee as with the jdbc dao, only later
+// - submitInsert/submitUpdate return right away, the future completes after the commit. a write whose future
+//   hasn't completed is only in memory and is lost if the process dies
+// - a full queue blocks the caller for up to offer-timeout, then fails with TransientDataAccessResourceException
+// - on shutdown new writes are refused and everything already queued is flushed before the datasource closes
+// reads and every other write go straight to the jdbc dao, updateCustomer included
+@Repository("write-behind")
+@ConditionalOnProperty(name = "customer.write-behind.enabled", havingValue = "true")
+public class CustomerWriteBehindDataAccessService implements CustomerDAO, DisposableBean, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CustomerWriteBehindDataAccessService.class);
+
+    private record PendingInsert(Customer customer, CompletableFuture<Optional<Integer>> result) {
+    }
+
+    private record PendingUpdate(Customer changes, CompletableFuture<Optional<CustomerUpdateResult>> result) {
+    }
+
+    private final CustomerDAO customerDAO;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Object> queue;
+    private final int maxBatchSize;
+    private final Duration maxDelay;
+    private final Duration offerTimeout;
+    private final Duration shutdownTimeout;
+    private final Thread flusher;
+    // submitters hold the read lock while they enqueue, so nothing gets in after destroy() closed the queue
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private final AtomicLong batches = new AtomicLong();
+
+    public CustomerWriteBehindDataAccessService(
+            @Qualifier("jdbc") CustomerDAO customerDAO,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${customer.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${customer.write-behind.max-batch-size:500}") int maxBatchSize,
+            @Value("${customer.write-behind.max-delay:5ms}") Duration maxDelay,
+            @Value("${customer.write-behind.offer-timeout:1s}") Duration offerTimeout,
+            @Value("${customer.write-behind.shutdown-timeout:30s}") Duration shutdownTimeout
+    ) {
+        this.customerDAO = customerDAO;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.offerTimeout = offerTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.flusher = new Thread(this::flushUntilClosed, "customer-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // batches written so far
+    long batches() {
+        return batches.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // a queue that stays full means the db can't keep up and writers are about to be rejected
+        Gauge.builder("customer.write-behind.queue", queue, BlockingQueue::size)
+                .register(registry);
+        FunctionCounter.builder("customer.write-behind.batches", batches, AtomicLong::get)
+                .register(registry);
+    }
+
+    // --- async api
+
+    // completes with the new id, or empty when the email is taken, once the batch is committed
+    public CompletableFuture<Optional<Integer>> submitInsert(Customer customer) {
+        PendingInsert insert = new PendingInsert(
+                new Customer(customer.getName(), customer.getEmail(), customer.getAge()),
+                new CompletableFuture<>()
+        );
+        enqueue(insert);
+        return insert.result();
+    }
+
+    // completes with what updateCustomerIfChanged returns once the batch is committed: empty when the customer
+    // doesn't exist, not updated when nothing changed or the version moved on (an earlier update in the same batch
+    // counts, they run in queue order)
+    public CompletableFuture<Optional<CustomerUpdateResult>> submitUpdate(Customer changes) {
+        PendingUpdate update = new PendingUpdate(changes.clone(), new CompletableFuture<>());
+        enqueue(update);
+        return update.result();
+    }
+
+    private void enqueue(Object write) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new TransientDataAccessResourceException("customer write-behind queue is shut down");
+            }
+            // blocking here is the backpressure, producers can't run further ahead than the queue
+            if (!queue.offer(write, offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new TransientDataAccessResourceException(
+                        "customer write-behind queue is full (" + queue.size() + " pending writes)"
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("interrupted while queueing a customer write", e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // --- flushing
+
+    private void flushUntilClosed() {
+        List<Object> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            Object first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only destroy() interrupts, once the shutdown timeout is over
+                return;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+
+            // wait for more writes until the batch is full or the first one has waited max-delay
+            batch.add(first);
+            long deadline = System.nanoTime() + maxDelay.toNanos();
+            try {
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Object next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                flush(batch);
+                return;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Object> batch) {
+        List<PendingInsert> inserts = new ArrayList<>();
+        List<PendingUpdate> updates = new ArrayList<>();
+        for (Object write : batch) {
+            if (write instanceof PendingInsert insert) {
+                inserts.add(insert);
+            } else {
+                updates.add((PendingUpdate) write);
+            }
+        }
+
+        List<Optional<Integer>> ids = new ArrayList<>();
+        List<Optional<CustomerUpdateResult>> updated = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ids.addAll(insert(inserts));
+                // the jdbc dao's statements join this transaction, same datasource
+                for (PendingUpdate update : updates) {
+                    updated.add(customerDAO.updateCustomerIfChanged(update.changes()));
+                }
+            });
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                inserts.forEach(insert -> insert.result().completeExceptionally(e));
+                updates.forEach(update -> update.result().completeExceptionally(e));
+                return;
+            }
+            // one bad write (an update to a taken email) must not fail the others, retry them one by one
+            log.warn("customer write-behind batch of {} failed, retrying one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(write -> flush(List.of(write)));
+            return;
+        }
+
+        batches.incrementAndGet();
+        // only now, after the commit
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).result().complete(ids.get(i));
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            updates.get(i).result().complete(updated.get(i));
+        }
+    }
+
+    private List<Optional<Integer>> insert(List<PendingInsert> inserts) {
+        if (inserts.isEmpty()) {
+            return List.of();
+        }
+        // every row of the batch in one statement, three array parameters whatever the batch size
+        // rows go in in queue order, so of two inserts with the same email the first one wins
+        var sql = """
+                INSERT INTO customer
+                    (name, email, age)
+                SELECT name, email, age
+                FROM unnest(?::text[], ?::text[], ?::int[]) WITH ORDINALITY AS pending(name, email, age, position)
+                ORDER BY position
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id, email
+                """;
+        int size = inserts.size();
+        String[] names = new String[size];
+        String[] emails = new String[size];
+        Integer[] ages = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Customer customer = inserts.get(i).customer();
+            names[i] = customer.getName();
+            emails[i] = customer.getEmail();
+            ages[i] = customer.getAge();
+        }
+
+        Map<String, Integer> idByEmail = new HashMap<>();
+        jdbcTemplate.query(
+                sql,
+                rs -> {
+                    idByEmail.put(rs.getString("email"), rs.getInt("id"));
+                },
+                names, emails, ages
+        );
+
+        List<Optional<Integer>> ids = new ArrayList<>(size);
+        for (String email : emails) {
+            // remove, so a second insert with the same email in this batch gets empty
+            ids.add(Optional.ofNullable(idByEmail.remove(email)));
+        }
+        return ids;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        // the flusher empties the queue and stops once it finds it empty
+        flusher.join(shutdownTimeout.toMillis());
+        if (flusher.isAlive()) {
+            flusher.interrupt();
+            flusher.join();
+        }
+        List<Object> lost = new ArrayList<>();
+        queue.drainTo(lost);
+        if (!lost.isEmpty()) {
+            log.error("customer write-behind shut down with {} writes not flushed", lost.size());
+            TransientDataAccessResourceException e =
+                    new TransientDataAccessResourceException("customer write-behind shut down before the write was flushed");
+            for (Object write : lost) {
+                if (write instanceof PendingInsert insert) {
+                    insert.result().completeExceptionally(e);
+                } else {
+                    ((PendingUpdate) write).result().completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    // --- CustomerDAO
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        // same contract as the jdbc dao, a taken email is an error here
+        if (await(submitInsert(customer)).isEmpty()) {
+            throw new DuplicateKeyException("email already taken: " + customer.getEmail());
+        }
+    }
+
+    @Override
+    public Optional<Integer> insertCustomerReturningId(Customer customer) {
+        return await(submitInsert(customer));
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        // the full update, nothing in the app writes whole rows any more so it isn't queued
+        customerDAO.updateCustomer(customer);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return customerDAO.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(CustomerSearch search, Integer afterId, int limit) {
+        return customerDAO.searchCustomers(search, afterId, limit);
+    }
+
+    @Override
+    public void forEachCustomer(Consumer<Customer> action) {
+        customerDAO.forEachCustomer(action);
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer customerId) {
+        return customerDAO.selectCustomerById(customerId);
+    }
+
+    @Override
+    public int[] insertCustomers(List<Customer> customers) {
+        // already one transaction and jdbc batches
+        return customerDAO.insertCustomers(customers);
+    }
+
+    @Override
+    public boolean existsCustomerWithEmail(String email) {
+        return customerDAO.existsCustomerWithEmail(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return customerDAO.selectExistingEmails(emails);
+    }
+
+    @Override
+    public boolean deleteCustomer(Integer customerId) {
+        return customerDAO.deleteCustomer(customerId);
+    }
+
+    @Override
+    public boolean existsCustomerWithId(Integer customerId) {
+        return customerDAO.existsCustomerWithId(customerId);
+    }
+
+    @Override
+    public Optional<CustomerUpdateResult> updateCustomerIfChanged(Customer changes) {
+        return await(submitUpdate(changes));
+    }
+}
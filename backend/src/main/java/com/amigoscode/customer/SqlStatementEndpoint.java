@@ -0,0 +1,26 @@
+package com.amigoscode.customer;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// GET /actuator/sql, statements per route, recent slow statements and flagged requests
+// only exposed over http by the "dev" profile (application-dev.yml), there is no security in front of actuator
+// read only: a restart starts over
+@Component
+@Endpoint(id = "sql")
+@ConditionalOnProperty(name = "customer.sql-monitor.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatementEndpoint {
+
+    private final SqlStatementMonitor sqlStatementMonitor;
+
+    public SqlStatementEndpoint(SqlStatementMonitor sqlStatementMonitor) {
+        this.sqlStatementMonitor = sqlStatementMonitor;
+    }
+
+    @ReadOperation
+    public SqlStatementMonitor.Summary summary() {
+        return sqlStatementMonitor.summary();
+    }
+}
@@ -0,0 +1,242 @@
+package com.amigoscode.customer;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// wraps the DataSource in a datasource-proxy so every statement that goes through jdbc, jpa or the write-behind
+// flusher is seen here, with its time and the types of its bind parameters. never the values, they are customer
+// names and emails, and they would end up in the logs and at /actuator/sql
+// - statements slower than slow-statement-threshold are logged
+// - SqlStatementRequestFilter counts the statements of each http request, a request running more than
+//   statements-per-request-threshold, or the same statement repeated-statement-threshold times (n+1, a select
+//   done twice), is logged with the statements it ran
+// the summary is at /actuator/sql, see SqlStatementEndpoint
+@Component
+@ConditionalOnProperty(name = "customer.sql-monitor.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatementMonitor implements BeanPostProcessor, QueryExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlStatementMonitor.class);
+
+    // statements of the request running on this thread, null outside of a request (flusher, startup)
+    private static final ThreadLocal<RequestStatements> currentRequest = new ThreadLocal<>();
+
+    private final Duration slowStatementThreshold;
+    private final int statementsPerRequestThreshold;
+    private final int repeatedStatementThreshold;
+    private final int recent;
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder slowStatements = new LongAdder();
+    private final LongAdder flaggedRequests = new LongAdder();
+    private final Map<String, RouteStatements> routes = new ConcurrentHashMap<>();
+    private final Deque<SlowStatement> recentSlowStatements = new ArrayDeque<>();
+    private final Deque<FlaggedRequest> recentFlaggedRequests = new ArrayDeque<>();
+
+    public SqlStatementMonitor(
+            @Value("${customer.sql-monitor.slow-statement-threshold:100ms}") Duration slowStatementThreshold,
+            @Value("${customer.sql-monitor.statements-per-request-threshold:10}") int statementsPerRequestThreshold,
+            @Value("${customer.sql-monitor.repeated-statement-threshold:2}") int repeatedStatementThreshold,
+            @Value("${customer.sql-monitor.recent:50}") int recent
+    ) {
+        this.slowStatementThreshold = slowStatementThreshold;
+        this.statementsPerRequestThreshold = statementsPerRequestThreshold;
+        this.repeatedStatementThreshold = repeatedStatementThreshold;
+        this.recent = recent;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+            return ProxyDataSourceBuilder.create(dataSource)
+                    .name(beanName)
+                    .listener(this)
+                    .build();
+        }
+        return bean;
+    }
+
+    // --- per request
+
+    void beginRequest() {
+        currentRequest.set(new RequestStatements());
+    }
+
+    // route is the method and the path pattern, e.g. "GET /api/v1/customers/{customerId}"
+    void endRequest(String route, long millis) {
+        RequestStatements request = currentRequest.get();
+        currentRequest.remove();
+        if (request == null) {
+            return;
+        }
+        RouteStatements stats = routes.computeIfAbsent(route, r -> new RouteStatements());
+        stats.requests.increment();
+        stats.statements.add(request.statements);
+        stats.maxStatements.accumulate(request.statements);
+
+        int mostRepeated = request.bySql.values().stream().max(Integer::compare).orElse(0);
+        if (request.statements > statementsPerRequestThreshold || mostRepeated >= repeatedStatementThreshold) {
+            stats.flagged.increment();
+            flaggedRequests.increment();
+            FlaggedRequest flagged = new FlaggedRequest(Instant.now(), route, request.statements, millis, request.bySql);
+            log.warn("{} ran {} statements in {} ms: {}", route, request.statements, millis, request.bySql);
+            add(recentFlaggedRequests, flagged);
+        }
+    }
+
+    // --- datasource-proxy
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        // one execution is one round trip, a jdbc batch included
+        statements.increment();
+        String sql = queryInfoList.stream().map(QueryInfo::getQuery).collect(Collectors.joining("; "));
+
+        RequestStatements request = currentRequest.get();
+        if (request != null) {
+            request.statements++;
+            request.bySql.merge(sql, 1, Integer::sum);
+        }
+
+        if (execInfo.getElapsedTime() >= slowStatementThreshold.toMillis()) {
+            slowStatements.increment();
+            List<String> parameters = parameters(queryInfoList);
+            log.warn("slow statement, {} ms: {} {}", execInfo.getElapsedTime(), sql, parameters);
+            add(recentSlowStatements, new SlowStatement(Instant.now(), execInfo.getElapsedTime(), sql, parameters));
+        }
+    }
+
+    // "[1=String, 2=Integer]" per execution, one per batch entry
+    private static List<String> parameters(List<QueryInfo> queryInfoList) {
+        List<String> parameters = new ArrayList<>();
+        for (QueryInfo queryInfo : queryInfoList) {
+            for (List<ParameterSetOperation> operations : queryInfo.getParametersList()) {
+                if (operations.isEmpty()) {
+                    continue;
+                }
+                parameters.add(operations.stream()
+                        .map(operation -> operation.getArgs()[0] + "=" + value(operation))
+                        .collect(Collectors.joining(", ", "[", "]")));
+            }
+        }
+        return parameters;
+    }
+
+    // the type only, enough to see what a statement was called with without logging personal data
+    static String value(ParameterSetOperation operation) {
+        if (ParameterSetOperation.isSetNullParameterOperation(operation) || operation.getArgs().length < 2
+                || operation.getArgs()[1] == null) {
+            return "null";
+        }
+        return operation.getArgs()[1].getClass().getSimpleName();
+    }
+
+    private <T> void add(Deque<T> recentEntries, T entry) {
+        synchronized (recentEntries) {
+            if (recentEntries.size() == recent) {
+                recentEntries.removeFirst();
+            }
+            recentEntries.addLast(entry);
+        }
+    }
+
+    private static <T> List<T> copy(Deque<T> recentEntries) {
+        synchronized (recentEntries) {
+            return new ArrayList<>(recentEntries);
+        }
+    }
+
+    // --- summary
+
+    Summary summary() {
+        Map<String, RouteSummary> byRoute = new LinkedHashMap<>();
+        routes.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.naturalOrder()))
+                .forEach(route -> byRoute.put(route.getKey(), route.getValue().summary()));
+        return new Summary(
+                statements.sum(),
+                slowStatements.sum(),
+                flaggedRequests.sum(),
+                slowStatementThreshold.toMillis(),
+                statementsPerRequestThreshold,
+                repeatedStatementThreshold,
+                byRoute,
+                copy(recentSlowStatements),
+                copy(recentFlaggedRequests)
+        );
+    }
+
+    private static class RequestStatements {
+        // only touched by the request's thread
+        private int statements;
+        private final Map<String, Integer> bySql = new LinkedHashMap<>();
+    }
+
+    private static class RouteStatements {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAccumulator maxStatements = new LongAccumulator(Math::max, 0);
+        private final LongAdder flagged = new LongAdder();
+
+        RouteSummary summary() {
+            long requestCount = requests.sum();
+            long statementCount = statements.sum();
+            return new RouteSummary(
+                    requestCount,
+                    statementCount,
+                    requestCount == 0 ? 0 : (double) statementCount / requestCount,
+                    maxStatements.get(),
+                    flagged.sum()
+            );
+        }
+    }
+
+    record Summary(long statements,
+                   long slowStatements,
+                   long flaggedRequests,
+                   long slowStatementThresholdMillis,
+                   int statementsPerRequestThreshold,
+                   int repeatedStatementThreshold,
+                   Map<String, RouteSummary> routes,
+                   List<SlowStatement> recentSlowStatements,
+                   List<FlaggedRequest> recentFlaggedRequests) {
+    }
+
+    record RouteSummary(long requests, long statements, double statementsPerRequest, long maxStatements, long flagged) {
+    }
+
+    record SlowStatement(Instant at, long millis, String sql, List<String> parameters) {
+    }
+
+    // statements is the number of times each statement ran
+    record FlaggedRequest(Instant at, String route, int statementCount, long millis, Map<String, Integer> statements) {
+    }
+}
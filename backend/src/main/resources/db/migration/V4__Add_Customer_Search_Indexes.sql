@@ -0,0 +1,5 @@
+-- indexes for GET api/v1/customers/search, the expressions have to match the ones in the queries
+-- text_pattern_ops compares byte by byte, so lower(name) LIKE 'prefix%' can use it whatever the collation is
+CREATE INDEX customer_name_prefix_idx ON customer (lower(name) text_pattern_ops);
+CREATE INDEX customer_email_domain_idx ON customer (lower(split_part(email, '@', 2)));
+CREATE INDEX customer_age_idx ON customer (age);
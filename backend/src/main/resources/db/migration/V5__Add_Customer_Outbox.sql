@@ -0,0 +1,45 @@
+-- every change to customer, written by triggers in the transaction that made it whatever the code path (jdbc, jpa,
+-- batches, the csv COPY import), so a change is in the outbox if and only if it committed
+-- position is null until CustomerOutboxRelay gives the row its place in the stream, in the order the rows committed
+CREATE TABLE customer_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    position BIGINT UNIQUE,
+    type TEXT NOT NULL, -- created, updated, deleted
+    customer_id INT NOT NULL,
+    customer JSONB, -- the row after the change, null when it was deleted
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- what the relay looks for on every tick
+CREATE INDEX customer_outbox_unsequenced_idx ON customer_outbox (id) WHERE position IS NULL;
+
+-- statement level with transition tables: a batch insert or a COPY writes the outbox with one INSERT ... SELECT
+-- instead of a trigger call per row
+CREATE FUNCTION customer_outbox_write() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO customer_outbox (type, customer_id, customer)
+        SELECT 'created', id, jsonb_build_object('id', id, 'name', name, 'email', email, 'age', age, 'version', version)
+        FROM new_rows ORDER BY id;
+    ELSIF TG_OP = 'UPDATE' THEN
+        INSERT INTO customer_outbox (type, customer_id, customer)
+        SELECT 'updated', id, jsonb_build_object('id', id, 'name', name, 'email', email, 'age', age, 'version', version)
+        FROM new_rows ORDER BY id;
+    ELSE
+        INSERT INTO customer_outbox (type, customer_id, customer)
+        SELECT 'deleted', id, NULL
+        FROM old_rows ORDER BY id;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER customer_outbox_insert AFTER INSERT ON customer
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_outbox_write();
+CREATE TRIGGER customer_outbox_update AFTER UPDATE ON customer
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_outbox_write();
+CREATE TRIGGER customer_outbox_delete AFTER DELETE ON customer
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_outbox_write();
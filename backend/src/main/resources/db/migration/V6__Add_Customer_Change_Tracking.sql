@@ -0,0 +1,52 @@
+-- when each customer last changed, and a tombstone for each deleted one, so a client can ask for what changed
+-- since its last sync (api/v1/customers/changes) instead of downloading the whole list again
+-- clock_timestamp() and not now(): now() is when the transaction started, possibly long before it wrote anything,
+-- see CustomerSyncDAO.safeWatermark for why that matters
+ALTER TABLE customer ADD COLUMN updated_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp();
+
+-- a row trigger, only BEFORE can change the row that gets written
+CREATE FUNCTION customer_touch() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.updated_at = clock_timestamp();
+    RETURN NEW;
+END
+$$;
+
+CREATE TRIGGER customer_touch BEFORE UPDATE ON customer
+    FOR EACH ROW EXECUTE FUNCTION customer_touch();
+
+-- a sync reads a range of it, (updated_at, id) is its order
+CREATE INDEX customer_updated_at_idx ON customer (updated_at, id);
+
+-- deleted customers, the row itself is gone. kept apart so nothing that reads customer has to skip deleted rows
+-- and a deleted customer's email can be registered again
+CREATE TABLE customer_tombstone (
+    customer_id INT PRIMARY KEY,
+    deleted_at TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp()
+);
+
+CREATE INDEX customer_tombstone_deleted_at_idx ON customer_tombstone (deleted_at, customer_id);
+
+-- statement level with transition tables, like the outbox triggers of V5
+-- an insert with the id of a deleted customer brings it back, its tombstone goes
+CREATE FUNCTION customer_tombstone_write() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        DELETE FROM customer_tombstone t
+        USING new_rows n
+        WHERE t.customer_id = n.id;
+    ELSE
+        INSERT INTO customer_tombstone (customer_id, deleted_at)
+        SELECT id, clock_timestamp() FROM old_rows
+        ON CONFLICT (customer_id) DO UPDATE SET deleted_at = excluded.deleted_at;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER customer_tombstone_insert AFTER INSERT ON customer
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_tombstone_write();
+CREATE TRIGGER customer_tombstone_delete AFTER DELETE ON customer
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION customer_tombstone_write();
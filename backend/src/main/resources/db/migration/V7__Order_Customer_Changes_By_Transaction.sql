@@ -0,0 +1,39 @@
+-- a sync reads the changes in the order of the transactions that made them, not of updated_at (V6):
+-- updated_at is stamped before the transaction has an xid and before it commits, so no watermark based on it
+-- can tell a change that is still on its way from one that never comes. every transaction with an xid below the
+-- xmin of a snapshot has ended, see CustomerSyncDAO.safeWatermark
+-- pg_current_xact_id() gives the transaction its xid when the row is stamped, the DEFAULT and the trigger run before
+-- the row is written. xid8 (as bigint, what jdbc can bind) has the epoch in it, it doesn't wrap around
+-- the existing rows all get the xid of this migration
+ALTER TABLE customer ADD COLUMN changed_xid BIGINT NOT NULL DEFAULT pg_current_xact_id()::text::bigint;
+
+CREATE OR REPLACE FUNCTION customer_touch() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    NEW.updated_at = clock_timestamp();
+    NEW.changed_xid = pg_current_xact_id()::text::bigint;
+    RETURN NEW;
+END
+$$;
+
+ALTER TABLE customer_tombstone ADD COLUMN changed_xid BIGINT NOT NULL DEFAULT pg_current_xact_id()::text::bigint;
+
+CREATE OR REPLACE FUNCTION customer_tombstone_write() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        DELETE FROM customer_tombstone t
+        USING new_rows n
+        WHERE t.customer_id = n.id;
+    ELSE
+        INSERT INTO customer_tombstone (customer_id, deleted_at)
+        SELECT id, clock_timestamp() FROM old_rows
+        ON CONFLICT (customer_id) DO UPDATE SET deleted_at = excluded.deleted_at, changed_xid = excluded.changed_xid;
+    END IF;
+    RETURN NULL;
+END
+$$;
+
+-- the order a sync reads in now, the updated_at ones have nothing left to serve
+DROP INDEX customer_updated_at_idx;
+DROP INDEX customer_tombstone_deleted_at_idx;
+CREATE INDEX customer_changed_xid_idx ON customer (changed_xid, id);
+CREATE INDEX customer_tombstone_changed_xid_idx ON customer_tombstone (changed_xid, customer_id);
@@ -0,0 +1,309 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerCachingDataAccessServiceTest {
+
+    private CustomerCachingDataAccessService underTest;
+
+    @Mock
+    private CustomerDAO customerDAO;
+    private CustomerEmailFilter emailFilter;
+    // another node in front of the same db, the two hear about each other's writes through the transport
+    private final CustomerInvalidationTransport transport = new CustomerInProcessInvalidationTransport();
+    private CustomerCachingDataAccessService otherNode;
+    private CustomerEmailFilter otherNodeEmailFilter;
+
+    @BeforeEach
+    void setUp() {
+        // not built yet, every email is a possible hit until a test calls loadEmails
+        emailFilter = new CustomerEmailFilter(customerDAO, new CustomerInvalidations(transport), 0.01, 1000);
+        underTest = new CustomerCachingDataAccessService(
+                customerDAO, Optional.empty(), 100, Duration.ofMinutes(5),
+                emailFilter, new CustomerInvalidations(transport)
+        );
+        CustomerInvalidations otherNodeInvalidations = new CustomerInvalidations(transport);
+        otherNodeEmailFilter = new CustomerEmailFilter(customerDAO, otherNodeInvalidations, 0.01, 1000);
+        otherNode = new CustomerCachingDataAccessService(
+                customerDAO, Optional.empty(), 100, Duration.ofMinutes(5),
+                otherNodeEmailFilter, otherNodeInvalidations
+        );
+    }
+
+    private void loadEmails(String... emails) {
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            for (String email : emails) {
+                action.accept(new Customer(email, email, 20));
+            }
+            return null;
+        }).when(customerDAO).forEachCustomer(any());
+        emailFilter.rebuild();
+    }
+
+    @Test
+    void willHitTheDaoOnlyOnceForTheSameId() {
+        // given
+        int id = 10;
+        Customer customer = new Customer(id, "Alex", "alex@gmail.com", 20);
+        when(customerDAO.selectCustomerById(id)).thenReturn(Optional.of(customer));
+
+        // when
+        underTest.selectCustomerById(id);
+        Optional<Customer> actual = underTest.selectCustomerById(id);
+
+        // then
+        assertThat(actual).contains(customer);
+        verify(customerDAO, times(1)).selectCustomerById(id);
+        assertThat(underTest.stats().hitCount()).isEqualTo(1);
+        assertThat(underTest.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void willNotCacheMissingCustomers() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id)).thenReturn(Optional.empty());
+
+        // when
+        underTest.selectCustomerById(id);
+        underTest.selectCustomerById(id);
+
+        // then
+        verify(customerDAO, times(2)).selectCustomerById(id);
+    }
+
+    @Test
+    void willNotCacheFailedLoads() {
+        // given
+        int id = 10;
+        Customer customer = new Customer(id, "Alex", "alex@gmail.com", 20);
+        when(customerDAO.selectCustomerById(id))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(Optional.of(customer));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.selectCustomerById(id))
+                .isInstanceOf(QueryTimeoutException.class);
+        assertThat(underTest.selectCustomerById(id)).contains(customer);
+    }
+
+    @Test
+    void willReturnACopySoTheCachedCustomerCantBeChanged() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20)));
+
+        // when
+        underTest.selectCustomerById(id).orElseThrow().setName("changed");
+
+        // then
+        assertThat(underTest.selectCustomerById(id).orElseThrow().getName()).isEqualTo("Alex");
+    }
+
+    @Test
+    void willInvalidateWhenUpdateCustomer() {
+        // given
+        int id = 10;
+        Customer customer = new Customer(id, "Alex", "alex@gmail.com", 20);
+        Customer updated = new Customer(id, "Alexandru", "alex@gmail.com", 20);
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(customer))
+                .thenReturn(Optional.of(updated));
+        underTest.selectCustomerById(id);
+
+        // when
+        underTest.updateCustomer(updated);
+
+        // then
+        verify(customerDAO).updateCustomer(updated);
+        assertThat(underTest.selectCustomerById(id)).contains(updated);
+    }
+
+    @Test
+    void willInvalidateWhenDeleteCustomer() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20)))
+                .thenReturn(Optional.empty());
+        underTest.selectCustomerById(id);
+
+        // when
+        underTest.deleteCustomer(id);
+
+        // then
+        verify(customerDAO).deleteCustomer(id);
+        assertThat(underTest.selectCustomerById(id)).isEmpty();
+    }
+
+    @Test
+    void existsCustomerWithIdWillUseTheCache() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20)));
+        underTest.selectCustomerById(id);
+
+        // when
+        boolean actual = underTest.existsCustomerWithId(id);
+
+        // then
+        assertThat(actual).isTrue();
+        verify(customerDAO, times(0)).existsCustomerWithId(id);
+    }
+
+    @Test
+    void existsCustomerWithEmailWillSkipTheDaoForANewEmail() {
+        // given
+        loadEmails("alex@gmail.com");
+        when(customerDAO.existsCustomerWithEmail("alex@gmail.com")).thenReturn(true);
+
+        // when
+        boolean taken = underTest.existsCustomerWithEmail("alex@gmail.com");
+        boolean available = underTest.existsCustomerWithEmail("jamila@gmail.com");
+
+        // then
+        assertThat(taken).isTrue();
+        assertThat(available).isFalse();
+        verify(customerDAO, never()).existsCustomerWithEmail("jamila@gmail.com");
+    }
+
+    @Test
+    void selectExistingEmailsWillOnlyLookUpThePossibleHits() {
+        // given
+        loadEmails("alex@gmail.com");
+        when(customerDAO.selectExistingEmails(List.of("alex@gmail.com"))).thenReturn(Set.of("alex@gmail.com"));
+
+        // when
+        Set<String> actual = underTest.selectExistingEmails(List.of("alex@gmail.com", "jamila@gmail.com"));
+
+        // then
+        assertThat(actual).containsExactly("alex@gmail.com");
+    }
+
+    @Test
+    void selectExistingEmailsWillNotQueryWhenEveryEmailIsNew() {
+        // given
+        loadEmails("alex@gmail.com");
+
+        // when
+        Set<String> actual = underTest.selectExistingEmails(List.of("jamila@gmail.com", "bob@gmail.com"));
+
+        // then
+        assertThat(actual).isEmpty();
+        verify(customerDAO, never()).selectExistingEmails(any());
+    }
+
+    @Test
+    void willAddTheEmailsItInserts() {
+        // given
+        loadEmails();
+        Customer customer = new Customer("Jamila", "jamila@gmail.com", 19);
+        when(customerDAO.insertCustomerReturningId(customer)).thenReturn(Optional.of(1));
+        when(customerDAO.existsCustomerWithEmail("jamila@gmail.com")).thenReturn(true);
+
+        // when
+        underTest.insertCustomerReturningId(customer);
+        underTest.insertCustomers(List.of(new Customer("Bob", "bob@gmail.com", 40)));
+
+        // then
+        assertThat(underTest.existsCustomerWithEmail("jamila@gmail.com")).isTrue();
+        assertThat(emailFilter.mightContain("bob@gmail.com")).isTrue();
+    }
+
+    @Test
+    void willCountTheFalsePositives() {
+        // given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        emailFilter.bindTo(meterRegistry);
+        // a deleted customer's email stays in the filter
+        loadEmails("alex@gmail.com");
+        when(customerDAO.deleteCustomer(1)).thenReturn(true);
+        underTest.deleteCustomer(1);
+
+        // when
+        boolean actual = underTest.existsCustomerWithEmail("alex@gmail.com");
+
+        // then
+        assertThat(actual).isFalse();
+        assertThat(meterRegistry.get("customer.email-filter.false-positives").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email-filter.stale").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void willDropACustomerAnotherNodeUpdated() {
+        // given
+        int id = 10;
+        Customer customer = new Customer(id, "Alex", "alex@gmail.com", 20);
+        Customer updated = new Customer(id, "Alexandru", "alex@gmail.com", 21);
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(customer))
+                .thenReturn(Optional.of(updated));
+        otherNode.selectCustomerById(id);
+
+        // when
+        underTest.updateCustomer(updated);
+
+        // then
+        assertThat(otherNode.selectCustomerById(id)).contains(updated);
+        verify(customerDAO, times(2)).selectCustomerById(id);
+    }
+
+    @Test
+    void willDropEverythingWhenInvalidationsWereMissed() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id))
+                .thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20)));
+        otherNode.selectCustomerById(id);
+
+        // when
+        transport.publish(CustomerInvalidation.everything());
+        otherNode.selectCustomerById(id);
+
+        // then
+        verify(customerDAO, times(2)).selectCustomerById(id);
+    }
+
+    @Test
+    void willAddTheEmailsAnotherNodeRegistered() {
+        // given
+        loadEmails();
+        otherNodeEmailFilter.afterPropertiesSet();
+        Customer customer = new Customer("Jamila", "jamila@gmail.com", 19);
+        when(customerDAO.insertCustomerReturningId(customer)).thenReturn(Optional.of(1));
+
+        // when
+        underTest.insertCustomerReturningId(customer);
+
+        // then
+        assertThat(otherNodeEmailFilter.mightContain("jamila@gmail.com")).isTrue();
+    }
+}
@@ -0,0 +1,92 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerColumnarDataAccessServiceTest extends CustomerDAOContractTest<CustomerColumnarDataAccessService> {
+
+    @Override
+    protected CustomerColumnarDataAccessService createDAO() {
+        return new CustomerColumnarDataAccessService();
+    }
+
+    @Test
+    void willKeepNonAsciiNamesAndEmails() {
+        // given
+        Customer customer = new Customer("Ștefan Măgureanu 😀", "ștefan@exemplu.ro", 30);
+
+        // when
+        Integer id = underTest.insertCustomerReturningId(customer).orElseThrow();
+
+        // then
+        assertThat(underTest.selectCustomerById(id)).contains(new Customer(id, customer.getName(), customer.getEmail(), 30));
+        assertThat(underTest.existsCustomerWithEmail("ștefan@exemplu.ro")).isTrue();
+    }
+
+    @Test
+    void selectCustomersAfterWillKeepIdOrderWithExplicitIds() {
+        // given
+        underTest.insertCustomer(new Customer(10, "ten", "ten@gmail.com", 20));
+        underTest.insertCustomer(new Customer(5, "five", "five@gmail.com", 20));
+        underTest.insertCustomerReturningId(new Customer("eleven", "eleven@gmail.com", 20));
+
+        // when
+        List<Customer> page = underTest.selectCustomersAfter(5, 10);
+
+        // then
+        assertThat(page).extracting(Customer::getId).containsExactly(10, 11);
+        assertThat(underTest.selectAllCustomers()).extracting(Customer::getId).containsExactly(5, 10, 11);
+    }
+
+    @Test
+    void willCompactAfterManyDeletesAndUpdates() {
+        // given
+        int count = 10_000;
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            customers.add(new Customer("customer " + i, "customer" + i + "@gmail.com", 20));
+        }
+        underTest.insertCustomers(customers);
+        long arenaBefore = underTest.offHeapBytes();
+
+        // when
+        // every customer but the last 100 goes away, and those get renamed a few times
+        for (int id = 1; id <= count - 100; id++) {
+            underTest.deleteCustomer(id);
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int id = count - 99; id <= count; id++) {
+                underTest.updateCustomer(new Customer(id, "renamed " + round, "customer" + (id - 1) + "@gmail.com", 30));
+            }
+        }
+
+        // then
+        List<Customer> left = underTest.selectAllCustomers();
+        assertThat(left).hasSize(100);
+        assertThat(left.get(0)).isEqualTo(new Customer(count - 99, "renamed 9", "customer" + (count - 100) + "@gmail.com", 30));
+        assertThat(underTest.offHeapBytes()).isLessThan(arenaBefore);
+        // the id generator doesn't go back
+        assertThat(underTest.insertCustomerReturningId(new Customer("new", "new@gmail.com", 20))).contains(count + 1);
+    }
+
+    @Test
+    void forEachCustomerWillVisitEveryCustomerInIdOrder() {
+        // given
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            customers.add(new Customer("customer " + i, "customer" + i + "@gmail.com", 20));
+        }
+        underTest.insertCustomers(customers);
+
+        // when
+        List<Integer> ids = new ArrayList<>();
+        underTest.forEachCustomer(customer -> ids.add(customer.getId()));
+
+        // then
+        assertThat(ids).hasSize(2500).isSorted().doesNotHaveDuplicates();
+    }
+}
@@ -0,0 +1,123 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerCopyDataAccessServiceTest extends AbstractTestContainers {
+
+    private CustomerCopyDataAccessService underTest;
+    private CustomerJDBCDataAccessService customerJDBCDataAccessService;
+    private CustomerEmailFilter emailFilter;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = getJdbcTemplate();
+        customerJDBCDataAccessService = new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper());
+        CustomerInvalidations invalidations = new CustomerInvalidations(new CustomerInProcessInvalidationTransport());
+        emailFilter = new CustomerEmailFilter(customerJDBCDataAccessService, invalidations, 0.01, 1000);
+        emailFilter.rebuild();
+        underTest = new CustomerCopyDataAccessService(jdbcTemplate, emailFilter, invalidations);
+    }
+
+    @Test
+    void copyCustomersIn() {
+        // Given
+        String takenEmail = "taken-" + UUID.randomUUID() + "@gmail.com";
+        customerJDBCDataAccessService.insertCustomer(new Customer("taken", takenEmail, 20));
+
+        String email = "copy-" + UUID.randomUUID() + "@gmail.com";
+        String csv = """
+                name,email,age
+                copy,%s,20
+                again,%s,21
+                taken,%s,22
+                ,nameless@gmail.com,23
+                """.formatted(email, email, takenEmail);
+
+        // when
+        CustomerImportResult result = underTest.copyCustomersIn(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))
+        );
+
+        // then
+        // repeated email, taken email and the row without a name are skipped
+        assertThat(result).isEqualTo(new CustomerImportResult(4, 1));
+        assertThat(customerJDBCDataAccessService.selectAllCustomers())
+                .filteredOn(c -> c.getEmail().equals(email))
+                .singleElement()
+                .satisfies(c -> assertThat(c.getName()).isEqualTo("copy")); // first row wins
+        assertThat(emailFilter.mightContain(email)).isTrue();
+    }
+
+    @Test
+    void copyCustomersOut() {
+        // Given
+        String email = "copy-out-" + UUID.randomUUID() + "@gmail.com";
+        customerJDBCDataAccessService.insertCustomer(new Customer("copy-out", email, 30));
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = underTest.copyCustomersOut(out);
+
+        // then
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).startsWith("id,name,email,age\n");
+        assertThat(csv).contains(",copy-out," + email + ",30\n");
+        assertThat(rows).isEqualTo(customerJDBCDataAccessService.selectAllCustomers().size());
+    }
+
+    @Test
+    void willStopCopyCustomersOutAndDropTheConnectionWhenTheClientGoesAway() throws InterruptedException {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            customerJDBCDataAccessService.insertCustomer(new Customer("gone", "gone-" + UUID.randomUUID() + "@gmail.com", 30));
+        }
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("connection reset by peer");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("connection reset by peer");
+            }
+        };
+        // the pool hands a thread the connection it returned last, the copy runs on this one
+        Integer pid = jdbcTemplate.queryForObject("SELECT pg_backend_pid()", Integer.class);
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.copyCustomersOut(disconnected))
+                .isInstanceOf(UncheckedIOException.class);
+        // the connection was closed, not drained and put back in the pool
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (backendIsAlive(pid) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(backendIsAlive(pid)).isFalse();
+        // and the next copy gets a working one
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(underTest.copyCustomersOut(out)).isPositive();
+        assertThat(out.toString(StandardCharsets.UTF_8)).startsWith("id,name,email,age\n");
+    }
+
+    private boolean backendIsAlive(int pid) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE pid = ?", Integer.class, pid) > 0;
+    }
+}
@@ -0,0 +1,343 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// what every CustomerDAO has to do, whatever keeps the customers
+// a store runs these by extending this class, its own tests stay next to the store's
+// the database keeps its rows between tests, so every test makes its own emails and doesn't count on the ids
+abstract class CustomerDAOContractTest<T extends CustomerDAO> {
+
+    protected T underTest;
+
+    protected abstract T createDAO();
+
+    // how many increments each thread does in concurrentUpdatesWithTheVersionLoseNothing
+    protected int concurrentUpdatesPerThread() {
+        return 250;
+    }
+
+    @BeforeEach
+    void setUpDAO() {
+        underTest = createDAO();
+    }
+
+    @Test
+    void insertCustomerReturningId() {
+        // Given
+        String email = email("returning");
+
+        // when
+        Optional<Integer> id = underTest.insertCustomerReturningId(new Customer("returning", email, 20));
+        Optional<Integer> taken = underTest.insertCustomerReturningId(new Customer("again", email, 21));
+
+        // then
+        assertThat(id).isPresent();
+        assertThat(taken).isEmpty(); // a taken email is not an error, just no id
+        assertThat(underTest.selectCustomerById(id.get())).contains(new Customer(id.get(), "returning", email, 20));
+        assertThat(underTest.existsCustomerWithEmail(email)).isTrue();
+        assertThat(underTest.existsCustomerWithEmail(email("unknown"))).isFalse();
+        assertThat(underTest.existsCustomerWithId(id.get())).isTrue();
+        assertThat(underTest.existsCustomerWithId(-1)).isFalse();
+    }
+
+    @Test
+    void willThrowWhenInsertCustomerEmailIsTaken() {
+        // Given
+        String email = email("taken");
+        underTest.insertCustomer(new Customer("Alex", email, 20));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("Other", email, 30)))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void insertCustomersWillSkipTakenAndRepeatedEmails() {
+        // Given
+        String taken = email("taken");
+        underTest.insertCustomer(new Customer("taken", taken, 20));
+        String first = email("first");
+        String second = email("second");
+
+        // when
+        int[] inserted = underTest.insertCustomers(List.of(
+                new Customer("first", first, 20),
+                new Customer("taken", taken, 21),
+                new Customer("second", second, 22),
+                new Customer("first again", first, 23)
+        ));
+
+        // then
+        assertThat(inserted).containsExactly(1, 0, 1, 0);
+        assertThat(underTest.selectExistingEmails(List.of(first, second, taken)))
+                .containsExactlyInAnyOrder(first, second, taken);
+        assertThat(underTest.selectAllCustomers())
+                .filteredOn(c -> c.getEmail().equals(first))
+                .extracting(Customer::getName)
+                .containsExactly("first"); // the first one in the batch wins
+    }
+
+    @Test
+    void selectExistingEmails() {
+        // Given
+        String email = email("existing");
+        underTest.insertCustomer(new Customer("existing", email, 20));
+
+        // when
+        var existing = underTest.selectExistingEmails(List.of(email, email("unknown")));
+
+        // then
+        assertThat(existing).containsExactly(email);
+        assertThat(underTest.selectExistingEmails(List.of())).isEmpty();
+    }
+
+    @Test
+    void selectCustomersAfter() {
+        // Given
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(underTest.insertCustomerReturningId(new Customer("page" + i, email("page"), 20)).orElseThrow());
+        }
+
+        // when
+        List<Customer> page = underTest.selectCustomersAfter(ids.get(0), 2);
+        List<Customer> firstPage = underTest.selectCustomersAfter(null, 2);
+
+        // then
+        assertThat(page).extracting(Customer::getId).containsExactly(ids.get(1), ids.get(2));
+        assertThat(firstPage).hasSize(2).isSortedAccordingTo(Comparator.comparing(Customer::getId));
+    }
+
+    @Test
+    void forEachCustomer() {
+        // Given
+        String email = email("each");
+        underTest.insertCustomer(new Customer("each", email, 20));
+
+        // when
+        List<Customer> visited = new ArrayList<>();
+        underTest.forEachCustomer(visited::add);
+
+        // then
+        assertThat(visited).anyMatch(c -> c.getEmail().equals(email));
+        assertThat(visited).isSortedAccordingTo(Comparator.comparing(Customer::getId));
+    }
+
+    @Test
+    void deleteCustomer() {
+        // Given
+        String email = email("deleted");
+        Integer id = underTest.insertCustomerReturningId(new Customer("Alex", email, 20)).orElseThrow();
+
+        // when
+        boolean deleted = underTest.deleteCustomer(id);
+
+        // then
+        assertThat(deleted).isTrue();
+        assertThat(underTest.deleteCustomer(id)).isFalse(); // nothing left to delete
+        assertThat(underTest.selectCustomerById(id)).isEmpty();
+        assertThat(underTest.existsCustomerWithId(id)).isFalse();
+        // the email is free again
+        assertThat(underTest.insertCustomerReturningId(new Customer("Alex", email, 20))).isPresent();
+    }
+
+    @Test
+    void updateCustomerIfChanged() {
+        // Given
+        String email = email("before");
+        String changedEmail = email("after");
+        Integer id = underTest.insertCustomerReturningId(new Customer("before", email, 20)).orElseThrow();
+
+        // when
+        Optional<CustomerUpdateResult> result =
+                underTest.updateCustomerIfChanged(new Customer(id, "after", changedEmail, 21));
+
+        // then
+        assertThat(result).hasValueSatisfying(r -> {
+            assertThat(r.updated()).isTrue();
+            assertThat(r.previous()).isEqualTo(new Customer(id, "before", email, 20));
+        });
+        assertThat(underTest.selectCustomerById(id)).contains(new Customer(id, "after", changedEmail, 21));
+        assertThat(underTest.existsCustomerWithEmail(email)).isFalse();
+        assertThat(underTest.existsCustomerWithEmail(changedEmail)).isTrue();
+    }
+
+    @Test
+    void willNotUpdateWhenUpdateCustomerIfChangedHasTheSameValue() {
+        // Given
+        String email = email("same");
+        Integer id = underTest.insertCustomerReturningId(new Customer("before", email, 20)).orElseThrow();
+
+        // when
+        Optional<CustomerUpdateResult> result =
+                underTest.updateCustomerIfChanged(new Customer(id, "after", null, 20)); // same age
+
+        // then
+        assertThat(result).hasValueSatisfying(r -> assertThat(r.updated()).isFalse());
+        assertThat(underTest.selectCustomerById(id)).contains(new Customer(id, "before", email, 20));
+    }
+
+    @Test
+    void willReturnEmptyWhenUpdateCustomerIfChangedDoesntExist() {
+        // when
+        Optional<CustomerUpdateResult> result = underTest.updateCustomerIfChanged(new Customer(-1, "after", null, null));
+
+        // then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void updateCustomerIfChangedWillCheckTheVersion() {
+        // Given
+        String email = email("version");
+        Integer id = underTest.insertCustomerReturningId(new Customer("before", email, 20)).orElseThrow();
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> assertThat(c.getVersion()).isZero());
+
+        // when
+        Optional<CustomerUpdateResult> first = underTest.updateCustomerIfChanged(new Customer(id, null, null, 21, 0L));
+        // a second writer that also read version 0
+        Optional<CustomerUpdateResult> second = underTest.updateCustomerIfChanged(new Customer(id, null, null, 22, 0L));
+
+        // then
+        assertThat(first).hasValueSatisfying(r -> assertThat(r.updated()).isTrue());
+        assertThat(second).hasValueSatisfying(r -> {
+            assertThat(r.updated()).isFalse();
+            assertThat(r.previous().getVersion()).isEqualTo(1L);
+        });
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getAge()).isEqualTo(21);
+            assertThat(c.getVersion()).isEqualTo(1L);
+        });
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerEmailIsTaken() {
+        // Given
+        String taken = email("taken");
+        String email = email("alex");
+        underTest.insertCustomer(new Customer("Jamila", taken, 19));
+        Integer id = underTest.insertCustomerReturningId(new Customer("Alex", email, 20)).orElseThrow();
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomerIfChanged(new Customer(id, null, taken, null)))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(underTest.selectCustomerById(id)).contains(new Customer(id, "Alex", email, 20));
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerHasAStaleVersion() {
+        // Given
+        String email = email("stale");
+        Integer id = underTest.insertCustomerReturningId(new Customer("alex", email, 20)).orElseThrow();
+        underTest.updateCustomer(new Customer(id, "alex", email, 21, 0L));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(id, "alex", email, 22, 0L)))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        // without a version it's last writer wins
+        underTest.updateCustomer(new Customer(id, "alex", email, 23));
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getAge()).isEqualTo(23);
+            assertThat(c.getVersion()).isEqualTo(2L);
+        });
+    }
+
+    @Test
+    void concurrentUpdatesWithTheVersionLoseNothing() throws Exception {
+        // Given
+        int threads = 8;
+        int perThread = concurrentUpdatesPerThread();
+        Integer id = underTest.insertCustomerReturningId(new Customer("counter", email("counter"), 0)).orElseThrow();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                int conflicts = 0;
+                for (int i = 0; i < perThread; i++) {
+                    // read, increment, write back the version we read; on a conflict read again
+                    while (true) {
+                        Customer customer = underTest.selectCustomerById(id).orElseThrow();
+                        customer.setAge(customer.getAge() + 1);
+                        try {
+                            underTest.updateCustomer(customer);
+                            break;
+                        } catch (OptimisticLockingFailureException e) {
+                            conflicts++;
+                        }
+                    }
+                }
+                return conflicts;
+            });
+        }
+
+        // when
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then every increment is there, none overwritten by a writer that read an older age
+        assertThat(underTest.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getAge()).isEqualTo(threads * perThread);
+            assertThat(c.getVersion()).isEqualTo((long) threads * perThread);
+        });
+    }
+
+    @Test
+    void searchCustomers() {
+        // Given
+        String domain = UUID.randomUUID() + ".com"; // only the customers of this test have it
+        String prefix = "search" + UUID.randomUUID().toString().substring(0, 8);
+        underTest.insertCustomer(new Customer(prefix + "-Alex", "alex@" + domain, 20));
+        underTest.insertCustomer(new Customer(prefix.toUpperCase() + "-Ana", "ana@" + domain.toUpperCase(), 30));
+        underTest.insertCustomer(new Customer(prefix + "-Albert", "albert@" + domain, 40));
+        underTest.insertCustomer(new Customer(prefix + "-other", email("other"), 20));
+
+        // when
+        List<Customer> byName = underTest.searchCustomers(new CustomerSearch(prefix, null, null, null), null, 10);
+        List<Customer> byDomain = underTest.searchCustomers(new CustomerSearch(null, domain, null, null), null, 10);
+        List<Customer> byAtDomain = underTest.searchCustomers(new CustomerSearch(null, "@" + domain, null, null), null, 10);
+        List<Customer> byAll = underTest.searchCustomers(new CustomerSearch(prefix, domain, 25, 40), null, 10);
+        List<Customer> firstPage = underTest.searchCustomers(new CustomerSearch(null, domain, null, null), null, 2);
+        List<Customer> secondPage = underTest.searchCustomers(
+                new CustomerSearch(null, domain, null, null), firstPage.get(1).getId(), 2
+        );
+        // a _ in the prefix is not a wildcard
+        List<Customer> wildcard = underTest.searchCustomers(new CustomerSearch(prefix + "_", null, null, null), null, 10);
+
+        // then
+        assertThat(byName).hasSize(4).isSortedAccordingTo(Comparator.comparing(Customer::getId));
+        assertThat(byDomain).extracting(Customer::getAge).containsExactly(20, 30, 40);
+        assertThat(byAtDomain).isEqualTo(byDomain);
+        assertThat(byAll).extracting(Customer::getAge).containsExactly(30, 40);
+        assertThat(firstPage).extracting(Customer::getAge).containsExactly(20, 30);
+        assertThat(secondPage).extracting(Customer::getAge).containsExactly(40);
+        assertThat(wildcard).isEmpty();
+    }
+
+    protected static String email(String name) {
+        return name + "-" + UUID.randomUUID() + "@gmail.com"; // unique constraint on email
+    }
+}
@@ -0,0 +1,104 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerDAOMetricsTest {
+
+    private MeterRegistry meterRegistry;
+    private CustomerInMemoryDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        CustomerDAOMetrics metrics = new CustomerDAOMetrics(beanFactory.getBeanProvider(MeterRegistry.class));
+        metrics.setBeanFactory(beanFactory);
+        underTest = (CustomerInMemoryDataAccessService) metrics.postProcessAfterInitialization(
+                new CustomerInMemoryDataAccessService(), "memory"
+        );
+    }
+
+    @Test
+    void willTimeEveryCallByDaoAndMethod() {
+        // given
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 20));
+
+        // when
+        underTest.selectCustomerById(1);
+        underTest.selectCustomerById(2);
+
+        // then
+        assertThat(meterRegistry.get("customer.dao")
+                .tags("dao", "memory", "method", "selectCustomerById", "outcome", "success")
+                .timer()
+                .count()).isEqualTo(2);
+        assertThat(meterRegistry.get("customer.dao")
+                .tags("dao", "memory", "method", "insertCustomer")
+                .timer()
+                .count()).isEqualTo(1);
+        // one found, one not
+        assertThat(meterRegistry.get("customer.dao.rows")
+                .tags("dao", "memory", "method", "selectCustomerById")
+                .summary()
+                .totalAmount()).isEqualTo(1);
+    }
+
+    @Test
+    void willCountRows() {
+        // given
+        underTest.insertCustomers(List.of(
+                new Customer("Alex", "alex@gmail.com", 20),
+                new Customer("Jamila", "jamila@gmail.com", 19)
+        ));
+
+        // when
+        List<Customer> visited = new ArrayList<>();
+        underTest.forEachCustomer(visited::add);
+        underTest.selectAllCustomers();
+
+        // then
+        assertThat(visited).hasSize(2);
+        assertThat(meterRegistry.get("customer.dao.rows")
+                .tags("method", "insertCustomers").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("customer.dao.rows")
+                .tags("method", "forEachCustomer").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("customer.dao.rows")
+                .tags("method", "selectAllCustomers").summary().totalAmount()).isEqualTo(2);
+        // a boolean isn't rows
+        underTest.existsCustomerWithEmail("alex@gmail.com");
+        assertThat(meterRegistry.find("customer.dao.rows").tags("method", "existsCustomerWithEmail").summary())
+                .isNull();
+    }
+
+    @Test
+    void willCountErrors() {
+        // given
+        underTest.insertCustomer(new Customer("Alex", "alex@gmail.com", 20));
+
+        // when
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("Other", "alex@gmail.com", 30)))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        // then
+        assertThat(meterRegistry.get("customer.dao.errors")
+                .tags("dao", "memory", "method", "insertCustomer", "exception", "DuplicateKeyException")
+                .counter()
+                .count()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.dao")
+                .tags("method", "insertCustomer", "outcome", "error")
+                .timer()
+                .count()).isEqualTo(1);
+    }
+}
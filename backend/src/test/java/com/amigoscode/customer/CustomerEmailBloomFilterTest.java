@@ -0,0 +1,62 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerEmailBloomFilterTest {
+
+    @Test
+    void sizing() {
+        CustomerEmailBloomFilter underTest = new CustomerEmailBloomFilter(1_000_000, 0.01);
+
+        // about 9.6 bits and 7 hashes per email for 1%
+        assertThat(underTest.sizeInBytes()).isBetween(1_190_000L, 1_210_000L);
+        assertThat(underTest.hashes()).isEqualTo(7);
+        assertThatThrownBy(() -> new CustomerEmailBloomFilter(0, 0.01))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CustomerEmailBloomFilter(10, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void willNeverMissAnAddedEmail() {
+        CustomerEmailBloomFilter underTest = new CustomerEmailBloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            underTest.add("customer" + i + "@gmail.com");
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(underTest.mightContain("customer" + i + "@gmail.com")).isTrue();
+        }
+    }
+
+    @Test
+    void willKeepToTheFalsePositiveRateUpToItsCapacity() {
+        CustomerEmailBloomFilter underTest = new CustomerEmailBloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            underTest.add("customer" + i + "@gmail.com");
+        }
+
+        int falsePositives = 0;
+        for (int i = 100_000; i < 200_000; i++) {
+            if (underTest.mightContain("customer" + i + "@gmail.com")) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.015);
+        assertThat(underTest.expectedFalsePositiveRate()).isBetween(0.005, 0.015);
+    }
+
+    @Test
+    void willCountAnEmailOnce() {
+        CustomerEmailBloomFilter underTest = new CustomerEmailBloomFilter(100, 0.01);
+
+        assertThat(underTest.add("alex@gmail.com")).isTrue();
+        assertThat(underTest.add("alex@gmail.com")).isFalse();
+        assertThat(underTest.size()).isEqualTo(1);
+        assertThat(underTest.mightContain("jamila@gmail.com")).isFalse();
+    }
+}
@@ -0,0 +1,112 @@
+package com.amigoscode.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerEmailFilterTest {
+
+    private CustomerEmailFilter underTest;
+
+    @Mock
+    private CustomerDAO customerDAO;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerEmailFilter(
+                customerDAO, new CustomerInvalidations(new CustomerInProcessInvalidationTransport()), 0.01, 1000
+        );
+    }
+
+    @Test
+    void everyEmailIsAPossibleHitUntilItIsBuilt() {
+        assertThat(underTest.mightContain("alex@gmail.com")).isTrue();
+    }
+
+    @Test
+    void willLoadTheEmailsOfEveryCustomer() {
+        // given
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            action.accept(new Customer(1, "Alex", "alex@gmail.com", 20));
+            return null;
+        }).when(customerDAO).forEachCustomer(any());
+
+        // when
+        underTest.rebuild();
+
+        // then
+        assertThat(underTest.mightContain("alex@gmail.com")).isTrue();
+        assertThat(underTest.mightContain("jamila@gmail.com")).isFalse();
+    }
+
+    @Test
+    void willKeepTheEmailsAddedWhileItRebuilds() {
+        // given
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            action.accept(new Customer(1, "Alex", "alex@gmail.com", 20));
+            // registered after the scan read the table
+            underTest.add(List.of("jamila@gmail.com"));
+            return null;
+        }).when(customerDAO).forEachCustomer(any());
+
+        // when
+        underTest.rebuild();
+
+        // then
+        assertThat(underTest.mightContain("jamila@gmail.com")).isTrue();
+    }
+
+    @Test
+    void addingWillAddTheEmailsBeforeTheWrite() {
+        // given
+        doAnswer(invocation -> null).when(customerDAO).forEachCustomer(any());
+        underTest.rebuild();
+
+        // when
+        boolean seenByTheWrite = underTest.adding("alex@gmail.com", () -> underTest.mightContain("alex@gmail.com"));
+
+        // then
+        assertThat(seenByTheWrite).isTrue();
+    }
+
+    @Test
+    void metrics() {
+        // given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        underTest.bindTo(meterRegistry);
+        doAnswer(invocation -> {
+            Consumer<Customer> action = invocation.getArgument(0);
+            action.accept(new Customer(1, "Alex", "alex@gmail.com", 20));
+            return null;
+        }).when(customerDAO).forEachCustomer(any());
+        underTest.rebuild();
+
+        // when
+        underTest.mightContain("alex@gmail.com");
+        underTest.mightContain("jamila@gmail.com");
+
+        // then
+        assertThat(meterRegistry.get("customer.email-filter.memory").gauge().value()).isGreaterThan(0);
+        assertThat(meterRegistry.get("customer.email-filter.emails").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email-filter.expected-false-positive-rate").gauge().value())
+                .isLessThan(0.01);
+        assertThat(meterRegistry.get("customer.email-filter.checks").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("customer.email-filter.checks").tag("result", "maybe").functionCounter().count())
+                .isEqualTo(1);
+    }
+}
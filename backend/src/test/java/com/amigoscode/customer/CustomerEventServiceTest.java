@@ -0,0 +1,122 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.RequestValidationException;
+import com.amigoscode.exception.ResourceGoneException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerEventServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private CustomerEventService underTest;
+
+    @Mock
+    private CustomerOutboxDAO outboxDAO;
+    @Mock
+    private CustomerOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerEventService(outboxDAO, relay);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.destroy();
+    }
+
+    private static CustomerEvent created(long position, int customerId) {
+        return new CustomerEvent(
+                position,
+                CustomerEvent.Type.CREATED,
+                customerId,
+                new Customer(customerId, "Alex", "alex@gmail.com", 20, 0L),
+                NOW
+        );
+    }
+
+    @Test
+    void willAnswerRightAwayWhenThereAreEvents() {
+        // given
+        when(outboxDAO.selectEventsAfter(4, 100)).thenReturn(List.of(created(5, 1), created(6, 2)));
+
+        // when
+        CompletableFuture<CustomerEventPage> actual = underTest.getEvents(4, 100, 30);
+
+        // then
+        assertThat(actual).isCompletedWithValue(new CustomerEventPage(List.of(created(5, 1), created(6, 2)), 6));
+        verify(relay, never()).whenAfter(4);
+        verify(outboxDAO, never()).earliestPosition(); // starts right after 4, nothing was purged
+    }
+
+    @Test
+    void willWaitForTheNextEvent() throws Exception {
+        // given
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        when(relay.whenAfter(6)).thenReturn(next);
+        when(outboxDAO.selectEventsAfter(6, 100))
+                .thenReturn(List.of())
+                .thenReturn(List.of(created(7, 3)));
+
+        // when
+        CompletableFuture<CustomerEventPage> actual = underTest.getEvents(6, 100, 30);
+        assertThat(actual).isNotDone();
+        next.complete(null);
+
+        // then
+        assertThat(actual.get(5, TimeUnit.SECONDS)).isEqualTo(new CustomerEventPage(List.of(created(7, 3)), 7));
+    }
+
+    @Test
+    void willAnswerWithAnEmptyPageOnceTheWaitIsOver() throws Exception {
+        // given
+        when(relay.whenAfter(6)).thenReturn(new CompletableFuture<>());
+        when(outboxDAO.selectEventsAfter(6, 100)).thenReturn(List.of());
+
+        // when
+        CompletableFuture<CustomerEventPage> actual = underTest.getEvents(6, 100, 1);
+
+        // then
+        assertThat(actual.get(5, TimeUnit.SECONDS)).isEqualTo(new CustomerEventPage(List.of(), 6));
+    }
+
+    @Test
+    void willThrowGoneWhenTheEventsWerePurged() {
+        // given
+        when(outboxDAO.selectEventsAfter(2, 100)).thenReturn(List.of(created(10, 1)));
+        when(outboxDAO.earliestPosition()).thenReturn(10L);
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.getEvents(2, 100, 0))
+                .isInstanceOf(ResourceGoneException.class)
+                .hasMessage("events after 2 are no longer kept, the oldest one is 10");
+    }
+
+    @Test
+    void willValidateTheRequest() {
+        assertThatThrownBy(() -> underTest.getEvents(-1, 100, 0))
+                .isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> underTest.getEvents(0, 1001, 0))
+                .isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> underTest.getEvents(0, 100, 61))
+                .isInstanceOf(RequestValidationException.class);
+    }
+}
@@ -0,0 +1,115 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CustomerFuzzySearchIndexerTest {
+
+    private CustomerInMemoryDataAccessService customerDAO;
+    private CustomerFuzzySearch fuzzySearch;
+
+    @BeforeEach
+    void setUp() {
+        CustomerInMemoryDataAccessService store = new CustomerInMemoryDataAccessService();
+        store.insertCustomer(new Customer("Jamila Ahmed", "jamila@gmail.com", 19));
+        // the index reads the store directly, writes go through the proxy
+        // no outbox, the index only follows the writes through the proxy
+        CustomerOutboxDAO outboxDAO = mock(CustomerOutboxDAO.class);
+        CustomerOutboxRelay relay = mock(CustomerOutboxRelay.class);
+        when(relay.whenAfter(anyLong())).thenReturn(new CompletableFuture<>());
+        fuzzySearch = new CustomerFuzzySearch(store, outboxDAO, relay, 0.5);
+        fuzzySearch.afterPropertiesSet();
+
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("fuzzySearch", fuzzySearch);
+        CustomerFuzzySearchIndexer indexer = new CustomerFuzzySearchIndexer(
+                "memory", beanFactory.getBeanProvider(CustomerFuzzySearch.class)
+        );
+        indexer.setBeanFactory(beanFactory);
+        customerDAO = (CustomerInMemoryDataAccessService) indexer.postProcessAfterInitialization(store, "memory");
+    }
+
+    @AfterEach
+    void tearDown() {
+        fuzzySearch.destroy();
+    }
+
+    private List<String> names(String query) {
+        return fuzzySearch.search(query, 10)
+                .stream()
+                .map(match -> match.customer().getName())
+                .toList();
+    }
+
+    @Test
+    void willBuildTheIndexOnStart() {
+        assertThat(fuzzySearch.size()).isEqualTo(1);
+        assertThat(names("jamla")).containsExactly("Jamila Ahmed");
+    }
+
+    @Test
+    void willIndexInserts() {
+        // when
+        customerDAO.insertCustomerReturningId(new Customer("Alex Smith", "alex@gmail.com", 20));
+        customerDAO.insertCustomer(new Customer("Alexandra Jones", "ajones@gmail.com", 30));
+        customerDAO.insertCustomers(List.of(
+                new Customer("Bob Marley", "bob@gmail.com", 40),
+                new Customer("Robert Nesta", "robert@gmail.com", 41)
+        ));
+
+        // then
+        assertThat(fuzzySearch.size()).isEqualTo(5);
+        assertThat(names("alex smth")).first().isEqualTo("Alex Smith");
+        assertThat(names("jones")).containsExactly("Alexandra Jones");
+        assertThat(names("marly")).containsExactly("Bob Marley");
+        assertThat(names("nesta")).containsExactly("Robert Nesta");
+    }
+
+    @Test
+    void willIndexUpdatesAndDeletes() {
+        // given
+        Integer id = customerDAO.insertCustomerReturningId(new Customer("Alex Smith", "alex@gmail.com", 20))
+                .orElseThrow();
+
+        // when
+        customerDAO.updateCustomerIfChanged(new Customer(1, "Jamila Khan", null, null));
+        customerDAO.updateCustomer(new Customer(id, "Alexander Smith", "alex@gmail.com", 21, 0L));
+
+        // then
+        assertThat(names("ahmed")).isEmpty();
+        assertThat(names("khan")).containsExactly("Jamila Khan");
+        assertThat(fuzzySearch.search("alexander", 10))
+                .singleElement()
+                .satisfies(match -> {
+                    assertThat(match.customer().getAge()).isEqualTo(21);
+                    // the index has the version the dao wrote
+                    assertThat(match.customer().getVersion())
+                            .isEqualTo(customerDAO.selectCustomerById(id).orElseThrow().getVersion());
+                });
+
+        // when
+        customerDAO.deleteCustomer(id);
+
+        // then
+        assertThat(names("alexander")).isEmpty();
+    }
+
+    @Test
+    void willNotIndexAFailedWrite() {
+        // when
+        customerDAO.insertCustomerReturningId(new Customer("Other", "jamila@gmail.com", 20));
+
+        // then the email is taken, nothing was inserted
+        assertThat(names("other")).isEmpty();
+    }
+}
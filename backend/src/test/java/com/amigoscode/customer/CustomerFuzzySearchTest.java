@@ -0,0 +1,90 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerFuzzySearchTest extends AbstractTestContainers {
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final CustomerJDBCDataAccessService jdbc =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper());
+    private CustomerOutboxRelay relay;
+    private CustomerFuzzySearch underTest;
+
+    @BeforeEach
+    void setUp() {
+        CustomerOutboxDataAccessService outboxDAO = new CustomerOutboxDataAccessService(
+                jdbcTemplate,
+                new CustomerRowMapper(),
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource())
+        );
+        relay = new CustomerOutboxRelay(outboxDAO, Duration.ofMillis(10), Duration.ofDays(7));
+        relay.afterPropertiesSet();
+        underTest = new CustomerFuzzySearch(jdbc, outboxDAO, relay, 0.5);
+        underTest.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.destroy();
+        relay.destroy();
+    }
+
+    // the index follows the event stream, a few polls of the relay
+    private List<CustomerFuzzyMatch> searchUntil(String query, boolean found) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        List<CustomerFuzzyMatch> matches = underTest.search(query, 10);
+        while (matches.isEmpty() == found && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            matches = underTest.search(query, 10);
+        }
+        return matches;
+    }
+
+    @Test
+    void willFindCustomersImportedWithCopy() throws Exception {
+        // Given
+        String name = "imported" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        String email = name + "@gmail.com";
+        CustomerInvalidations invalidations = new CustomerInvalidations(new CustomerInProcessInvalidationTransport());
+        CustomerEmailFilter emailFilter = new CustomerEmailFilter(jdbc, invalidations, 0.01, 1000);
+        CustomerCopyDataAccessService copy = new CustomerCopyDataAccessService(jdbcTemplate, emailFilter, invalidations);
+
+        // when
+        // not through the dao the indexer watches
+        copy.copyCustomersIn(new ByteArrayInputStream(
+                ("name,email,age\n" + name + "," + email + ",20\n").getBytes(StandardCharsets.UTF_8)
+        ));
+
+        // then
+        assertThat(searchUntil(name, true))
+                .extracting(match -> match.customer().getEmail())
+                .contains(email);
+    }
+
+    @Test
+    void willForgetCustomersDeletedElsewhere() throws Exception {
+        // Given
+        String name = "deleted" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        Integer id = jdbc.insertCustomerReturningId(new Customer(name, name + "@gmail.com", 20)).orElseThrow();
+        assertThat(searchUntil(name, true)).isNotEmpty();
+
+        // when
+        jdbcTemplate.update("DELETE FROM customer WHERE id = ?", id);
+
+        // then
+        assertThat(searchUntil(name, false)).isEmpty();
+    }
+}
@@ -0,0 +1,72 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerInMemoryDataAccessServiceTest extends CustomerDAOContractTest<CustomerInMemoryDataAccessService> {
+
+    @Override
+    protected CustomerInMemoryDataAccessService createDAO() {
+        return new CustomerInMemoryDataAccessService();
+    }
+
+    @Test
+    void willReturnCopiesSoStoredCustomersCantBeChanged() {
+        // given
+        Integer id = underTest.insertCustomerReturningId(new Customer("Alex", "alex@gmail.com", 20)).orElseThrow();
+
+        // when
+        underTest.selectCustomerById(id).orElseThrow().setName("changed");
+        underTest.selectAllCustomers().get(0).setName("changed");
+
+        // then
+        assertThat(underTest.selectCustomerById(id).orElseThrow().getName()).isEqualTo("Alex");
+    }
+
+    @Test
+    void concurrentInsertsWithTheSameEmailWillCreateOneCustomer() throws Exception {
+        // given
+        int threads = 8;
+        int perThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                int created = 0;
+                for (int i = 0; i < perThread; i++) {
+                    // every thread registers the same emails
+                    if (underTest.insertCustomerReturningId(new Customer("c", "c" + i + "@gmail.com", 20)).isPresent()) {
+                        created++;
+                    }
+                }
+                return created;
+            });
+        }
+
+        // when
+        int created = 0;
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                created += future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // then
+        assertThat(created).isEqualTo(perThread);
+        assertThat(underTest.selectAllCustomers())
+                .hasSize(perThread)
+                .extracting(Customer::getId)
+                .doesNotHaveDuplicates()
+                .isSorted();
+    }
+}
@@ -2,12 +2,24 @@ package com.amigoscode.customer;
 
 import com.amigoscode.AbstractTestContainers;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -15,17 +27,34 @@ import static org.assertj.core.api.Assertions.assertThat;
 class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
 
     private CustomerJDBCDataAccessService underTest;
+    private JdbcTemplate jdbcTemplate;
     private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
 
     @BeforeEach
     void setUp() {
         // before each test, set up this class with all the dependencies that are needed
+        jdbcTemplate = getJdbcTemplate();
         underTest = new CustomerJDBCDataAccessService(
-                getJdbcTemplate(),
+                jdbcTemplate,
                 customerRowMapper
         ); // fresh new object
     }
 
+    // the same tests as the in memory and columnar daos, against postgres
+    @Nested
+    class Contract extends CustomerDAOContractTest<CustomerJDBCDataAccessService> {
+
+        @Override
+        protected CustomerJDBCDataAccessService createDAO() {
+            return new CustomerJDBCDataAccessService(getJdbcTemplate(), new CustomerRowMapper());
+        }
+
+        @Override
+        protected int concurrentUpdatesPerThread() {
+            return 25; // every try is a round trip
+        }
+    }
+
     @Test
     void selectAllCustomers() {
         // Given
@@ -165,9 +194,11 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
                 .orElseThrow();
 
         // when
-        underTest.deleteCustomer(insertedCustomerId);
+        boolean deleted = underTest.deleteCustomer(insertedCustomerId);
 
         // then
+        assertThat(deleted).isTrue();
+        assertThat(underTest.deleteCustomer(insertedCustomerId)).isFalse(); // nothing left to delete
         // check if the inserted customer still exists
         var insertedCustomerIdOptional = underTest.selectAllCustomers()
                 .stream()
@@ -326,4 +357,168 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainers {
                     assertThat(c.getEmail()).isNotEqualTo(oldEmail);
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void searchCustomersUsesTheIndexes() {
+        // Given
+        // enough rows for the statistics to tell a selective filter from a scan of the whole table
+        String prefix = "plan" + UUID.randomUUID().toString().substring(0, 8);
+        String domain = UUID.randomUUID() + ".com";
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            customers.add(new Customer("filler" + i, "filler-" + UUID.randomUUID() + "@gmail.com", 16 + i % 80));
+        }
+        customers.add(new Customer(prefix, "planned@" + domain, 5));
+        underTest.insertCustomers(customers);
+        jdbcTemplate.execute("ANALYZE customer");
+
+        // when
+        String byName = explain(new CustomerSearch(prefix, null, null, null));
+        String byDomain = explain(new CustomerSearch(null, domain, null, null));
+        String byAge = explain(new CustomerSearch(null, null, 5, 5));
+
+        // then
+        assertThat(byName).contains("customer_name_prefix_idx").doesNotContain("Seq Scan");
+        assertThat(byDomain).contains("customer_email_domain_idx").doesNotContain("Seq Scan");
+        assertThat(byAge).contains("customer_age_idx").doesNotContain("Seq Scan");
+    }
+
+    private String explain(CustomerSearch search) {
+        List<Object> args = new ArrayList<>();
+        String sql = CustomerJDBCDataAccessService.searchSql(search, null, 51, args);
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, args.toArray()));
+    }
+
+    @Test
+    void selectChangesAfterReturnsUpdatesAndTombstonesInOrder() {
+        // Given
+        long start = underTest.safeWatermark();
+        String email = "updated-" + UUID.randomUUID() + "@gmail.com";
+        Integer updatedId = underTest.insertCustomerReturningId(new Customer("updated", email, 20)).orElseThrow();
+        Integer deletedId = underTest.insertCustomerReturningId(
+                new Customer("deleted", "deleted-" + UUID.randomUUID() + "@gmail.com", 20)
+        ).orElseThrow();
+        underTest.deleteCustomer(deletedId);
+        underTest.updateCustomer(new Customer(updatedId, "renamed", email, 20));
+        long until = underTest.safeWatermark();
+
+        // when
+        List<CustomerChange> changes = underTest.selectChangesAfter(start, 0, until, 1000).stream()
+                .filter(change -> change.customerId().equals(updatedId) || change.customerId().equals(deletedId))
+                .toList();
+
+        // then
+        // only the latest change of each, the delete came first
+        assertThat(changes).extracting(CustomerChange::customerId).containsExactly(deletedId, updatedId);
+        assertThat(changes.get(0).customer()).isNull();
+        assertThat(changes.get(1).customer().getName()).isEqualTo("renamed");
+        assertThat(changes).allSatisfy(change -> assertThat(change.xid()).isGreaterThanOrEqualTo(start).isLessThan(until));
+    }
+
+    @Test
+    void safeWatermarkStaysBeforeTheChangesOfARunningTransaction() throws Exception {
+        // Given
+        String email = "running-" + UUID.randomUUID() + "@gmail.com";
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> transaction = executor.submit(() -> {
+            new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()))
+                    .executeWithoutResult(status -> {
+                        underTest.insertCustomer(new Customer("running", email, 20));
+                        written.countDown();
+                        try {
+                            commit.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+            return null;
+        });
+        assertThat(written.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // when
+        long watermark = underTest.safeWatermark();
+        commit.countDown();
+        transaction.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // then
+        // it committed after the watermark was read, the next sync from it still gets it
+        assertThat(watermark).isLessThanOrEqualTo(changedXid(email));
+        assertThat(underTest.selectChangesAfter(watermark, 0, underTest.safeWatermark(), 1000))
+                .extracting(change -> change.customer() == null ? null : change.customer().getEmail())
+                .contains(email);
+    }
+
+    @Test
+    void safeWatermarkStaysBeforeARowStampedBeforeItsTransactionWroteAnything() throws Exception {
+        // Given
+        // a BEFORE trigger that waits holds the insert between the DEFAULTs that stamp the row and the write itself,
+        // a transaction gets an xid of its own only when it writes
+        jdbcTemplate.execute("""
+                CREATE FUNCTION customer_wait_for_test() RETURNS trigger LANGUAGE plpgsql AS $$
+                BEGIN
+                    IF NEW.name = 'stamped' THEN
+                        PERFORM pg_advisory_xact_lock(4223);
+                    END IF;
+                    RETURN NEW;
+                END
+                $$;
+                CREATE TRIGGER customer_wait_for_test BEFORE INSERT ON customer
+                    FOR EACH ROW EXECUTE FUNCTION customer_wait_for_test();
+                """);
+        String email = "stamped-" + UUID.randomUUID() + "@gmail.com";
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection lock = jdbcTemplate.getDataSource().getConnection();
+             Statement locking = lock.createStatement()) {
+            locking.execute("SELECT pg_advisory_lock(4223)");
+            try {
+                Future<?> insert = executor.submit(() -> underTest.insertCustomer(new Customer("stamped", email, 20)));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!insertIsWaiting() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat(insertIsWaiting()).isTrue();
+
+                // when
+                long watermark = underTest.safeWatermark();
+                List<CustomerChange> firstSync = underTest.selectChangesAfter(0, 0, watermark, Integer.MAX_VALUE);
+                locking.execute("SELECT pg_advisory_unlock(4223)");
+                insert.get(10, TimeUnit.SECONDS);
+
+                // then
+                // the first sync couldn't see it and stopped before it, the next one gets it
+                assertThat(firstSync).extracting(CustomerChange::customerId).doesNotContain(idOf(email));
+                assertThat(watermark).isLessThanOrEqualTo(changedXid(email));
+                assertThat(underTest.selectChangesAfter(watermark, 0, underTest.safeWatermark(), Integer.MAX_VALUE))
+                        .extracting(CustomerChange::customerId)
+                        .contains(idOf(email));
+            } finally {
+                // the connection goes back to the pool, the lock can't stay with it
+                locking.execute("SELECT pg_advisory_unlock_all()");
+            }
+        } finally {
+            executor.shutdown();
+            jdbcTemplate.execute("""
+                    DROP TRIGGER customer_wait_for_test ON customer;
+                    DROP FUNCTION customer_wait_for_test();
+                    """);
+        }
+    }
+
+    private int idOf(String email) {
+        return jdbcTemplate.queryForObject("SELECT id FROM customer WHERE email = ?", Integer.class, email);
+    }
+
+    private long changedXid(String email) {
+        return jdbcTemplate.queryForObject("SELECT changed_xid FROM customer WHERE email = ?", Long.class, email);
+    }
+
+    private boolean insertIsWaiting() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_locks WHERE locktype = 'advisory' AND objid = 4223 AND NOT granted",
+                Integer.class
+        ) > 0;
+    }
+}
@@ -1,14 +1,27 @@
 package com.amigoscode.customer;
 
+import jakarta.persistence.EntityManager;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class CustomerJPADataAccesServiceTest {
 
@@ -18,10 +31,13 @@ class CustomerJPADataAccesServiceTest {
     @Mock
     private CustomerRepository customerRepository; // spring allready comes with all the dependencies that we need
 
+    @Mock
+    private EntityManager entityManager;
+
     @BeforeEach
     void setUp() {
         autoCloseable = MockitoAnnotations.openMocks(this); // returns autoclosable which is used to close the resource
-        undertest = new CustomerJPADataAccesService(customerRepository);
+        undertest = new CustomerJPADataAccesService(customerRepository, entityManager);
     }
 
     @AfterEach
@@ -41,6 +57,45 @@ class CustomerJPADataAccesServiceTest {
                 .findAll();
     }
 
+    @Test
+    void selectCustomersAfter() {
+        int afterId = 5;
+        int limit = 10;
+
+        // when
+        undertest.selectCustomersAfter(afterId, limit);
+
+        // then
+        Mockito.verify(customerRepository)
+                .findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+    }
+
+    @Test
+    void searchCustomers() {
+        // when
+        undertest.searchCustomers(new CustomerSearch("Al_", "@Gmail.com", 18, null), null, 10);
+
+        // then
+        // lower case, the _ escaped and a % to make it a prefix
+        Mockito.verify(customerRepository)
+                .searchCustomers(0, "al\\_%", "gmail.com", 18, null, 10);
+    }
+
+    @Test
+    void forEachCustomer() {
+        // given
+        var customer = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Mockito.when(customerRepository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(customer));
+        List<Customer> streamed = new ArrayList<>();
+
+        // when
+        undertest.forEachCustomer(streamed::add);
+
+        // then
+        assertThat(streamed).containsExactly(customer);
+        Mockito.verify(entityManager).detach(customer); // keeps the persistence context from growing
+    }
+
     @Test
     void selectCustomerById() {
         int id = 1;
@@ -67,7 +122,79 @@ class CustomerJPADataAccesServiceTest {
         // when
         undertest.insertCustomer(customer);
 
-        Mockito.verify(customerRepository).save(customer);
+        Mockito.verify(customerRepository).saveAndFlush(customer);
+    }
+
+    @Test
+    void willThrowWhenInsertCustomerEmailIsTaken() {
+        // Given
+        var customer = new Customer("Alex", "taken@gmail.com", 20);
+        Mockito.when(customerRepository.saveAndFlush(customer)).thenThrow(violated("customer_email_unique"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> undertest.insertCustomer(customer))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasMessageContaining("taken@gmail.com");
+    }
+
+    @Test
+    void insertCustomerReturningId() {
+        var customer = new Customer("Alex", "alex@gmail.com", 20);
+
+        // when
+        undertest.insertCustomerReturningId(customer);
+
+        // then
+        Mockito.verify(customerRepository)
+                .insertCustomerIfEmailAvailable("Alex", "alex@gmail.com", 20);
+    }
+
+    @Test
+    void insertCustomers() {
+        // Given
+        var customers = List.of(
+                new Customer("Alex", "alex@gmail.com", 20),
+                new Customer("Jamila", "jamila@gmail.com", 19)
+        );
+        Mockito.when(customerRepository.insertCustomersIfEmailAvailable(
+                new String[]{"Alex", "Jamila"},
+                new String[]{"alex@gmail.com", "jamila@gmail.com"},
+                new Integer[]{20, 19}
+        )).thenReturn(List.of("alex@gmail.com", "jamila@gmail.com"));
+
+        // when
+        int[] inserted = undertest.insertCustomers(customers);
+
+        // then
+        assertThat(inserted).containsExactly(1, 1);
+    }
+
+    @Test
+    void insertCustomersCountsTakenAndRepeatedEmailsAsNotInserted() {
+        // Given
+        var customers = List.of(
+                new Customer("Alex", "alex@gmail.com", 20),
+                new Customer("Taken", "taken@gmail.com", 30),
+                new Customer("Alex again", "alex@gmail.com", 21)
+        );
+        // postgres only inserted the first alex, taken@gmail.com was registered already
+        Mockito.when(customerRepository.insertCustomersIfEmailAvailable(
+                Mockito.any(String[].class), Mockito.any(String[].class), Mockito.any(Integer[].class)
+        )).thenReturn(List.of("alex@gmail.com"));
+
+        // when
+        int[] inserted = undertest.insertCustomers(customers);
+
+        // then
+        assertThat(inserted).containsExactly(1, 0, 0);
+    }
+
+    @Test
+    void selectExistingEmails() {
+        var emails = List.of("alex@gmail.com", "jamila@gmail.com");
+        undertest.selectExistingEmails(emails);
+        Mockito.verify(customerRepository).findEmailsByEmailIn(emails);
     }
 
     @Test
@@ -80,8 +207,12 @@ class CustomerJPADataAccesServiceTest {
     @Test
     void deleteCustomer() {
         int id = 1;
-        undertest.deleteCustomer(id);
-        Mockito.verify(customerRepository).deleteById(id);
+        Mockito.when(customerRepository.deleteCustomerById(id)).thenReturn(1);
+
+        boolean deleted = undertest.deleteCustomer(id);
+
+        Mockito.verify(customerRepository).deleteCustomerById(id);
+        assertThat(deleted).isTrue();
     }
 
     @Test
@@ -108,4 +239,97 @@ class CustomerJPADataAccesServiceTest {
 
         Mockito.verify(customerRepository).save(customer);
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateCustomerIfChanged() {
+        // Given
+        var customer = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Mockito.when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+
+        // when
+        Optional<CustomerUpdateResult> result = undertest.updateCustomerIfChanged(
+                new Customer(1, "Alexandru", null, null)
+        );
+
+        // then
+        assertThat(result).hasValueSatisfying(r -> {
+            assertThat(r.updated()).isTrue();
+            assertThat(r.previous().getName()).isEqualTo("Alex");
+        });
+        assertThat(customer.getName()).isEqualTo("Alexandru");
+        Mockito.verify(customerRepository).flush(); // before the commit, the errors come out of the dao
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerIfChangedEmailIsTaken() {
+        // Given
+        var customer = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Mockito.when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        Mockito.doThrow(violated("customer_email_unique")).when(customerRepository).flush();
+
+        // when
+        // then
+        // the same exception as the other daos, not a DataIntegrityViolationException from the commit
+        assertThatThrownBy(() -> undertest.updateCustomerIfChanged(new Customer(1, null, "taken@gmail.com", null)))
+                .isInstanceOf(DuplicateKeyException.class)
+                .hasMessageContaining("taken@gmail.com");
+    }
+
+    @Test
+    void willKeepOtherConstraintViolationsWhenUpdateCustomerIfChanged() {
+        // Given
+        var customer = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Mockito.when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+        Mockito.doThrow(violated("customer_age_check")).when(customerRepository).flush();
+
+        // when
+        // then
+        assertThatThrownBy(() -> undertest.updateCustomerIfChanged(new Customer(1, null, null, -1)))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .isNotInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void willNotUpdateWhenUpdateCustomerIfChangedHasTheSameValue() {
+        // Given
+        var customer = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Mockito.when(customerRepository.findById(1)).thenReturn(Optional.of(customer));
+
+        // when
+        Optional<CustomerUpdateResult> result = undertest.updateCustomerIfChanged(
+                new Customer(1, "Alexandru", null, 20)
+        );
+
+        // then
+        assertThat(result).hasValueSatisfying(r -> assertThat(r.updated()).isFalse());
+        assertThat(customer.getName()).isEqualTo("Alex");
+    }
+
+    @Test
+    void selectChangesAfter() {
+        // Given
+        long since = 1000;
+        long until = 1050;
+        Mockito.when(customerRepository.findChangesAfter(since, 0, until, 10)).thenReturn(List.of(
+                new Object[]{1001L, 1, "Alex", "alex@gmail.com", 20, 3L, false},
+                new Object[]{1002L, 2, null, null, null, null, true}
+        ));
+
+        // when
+        List<CustomerChange> changes = undertest.selectChangesAfter(since, 0, until, 10);
+
+        // then
+        assertThat(changes).containsExactly(
+                new CustomerChange(1001, 1, new Customer(1, "Alex", "alex@gmail.com", 20, 3L)),
+                new CustomerChange(1002, 2, null)
+        );
+    }
+
+    // what the repository throws when postgres turns down the flush
+    static DataIntegrityViolationException violated(String constraint) {
+        return new DataIntegrityViolationException(
+                "could not execute statement",
+                new ConstraintViolationException("violates constraint " + constraint, new SQLException(), constraint)
+        );
+    }
+}
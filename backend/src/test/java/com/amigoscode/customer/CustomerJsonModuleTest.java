@@ -0,0 +1,69 @@
+package com.amigoscode.customer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerJsonModuleTest {
+
+    private final ObjectMapper databind = new ObjectMapper();
+    private final ObjectMapper underTest = new ObjectMapper().registerModule(new CustomerJsonModule());
+
+    @Test
+    void willWriteCustomersLikeTheDefaultSerializer() throws Exception {
+        // Given
+        List<Customer> customers = Arrays.asList(
+                new Customer(1, "Alex", "alex@gmail.com", 20, 3L),
+                // escaping and characters outside of ascii
+                new Customer(2, "Jamila \"J\" Ahmed\n", "jamila@gmäil.com", 19, 0L),
+                new Customer(null, null, null, null),
+                null
+        );
+        TypeReference<List<Customer>> type = new TypeReference<>() {
+        };
+
+        // when
+        String json = underTest.writerFor(type).writeValueAsString(customers);
+
+        // then
+        assertThat(json).isEqualTo(databind.writerFor(type).writeValueAsString(customers));
+        assertThat(underTest.readValue(json, type)).isEqualTo(customers);
+    }
+
+    @Test
+    void willWritePagesLikeTheDefaultSerializer() throws Exception {
+        // Given
+        CustomerPage page = new CustomerPage(
+                List.of(new Customer(1, "Alex", "alex@gmail.com", 20, 3L), new Customer(2, "Ana", "ana@gmail.com", 30, 1L)),
+                2
+        );
+        CustomerPage lastPage = new CustomerPage(List.of(), null);
+
+        // when
+        String json = underTest.writeValueAsString(page);
+        String lastJson = underTest.writeValueAsString(lastPage);
+
+        // then
+        assertThat(json).isEqualTo(databind.writeValueAsString(page));
+        assertThat(lastJson).isEqualTo(databind.writeValueAsString(lastPage));
+    }
+
+    @Test
+    void willWriteCustomersInsideOtherResponses() throws Exception {
+        // Given
+        CustomerEventPage events = new CustomerEventPage(List.of(new CustomerEvent(
+                1, CustomerEvent.Type.UPDATED, 1, new Customer(1, "Alex", "alex@gmail.com", 20, 3L), null
+        )), 1);
+
+        // when
+        String json = underTest.writeValueAsString(events);
+
+        // then
+        assertThat(json).isEqualTo(databind.writeValueAsString(events));
+    }
+}
@@ -0,0 +1,138 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerOutboxDataAccessServiceTest extends AbstractTestContainers {
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final CustomerJDBCDataAccessService jdbc =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper());
+    private CustomerOutboxDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerOutboxDataAccessService(
+                jdbcTemplate,
+                new CustomerRowMapper(),
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource())
+        );
+        // whatever the other tests left
+        while (!underTest.sequence(1000).isEmpty()) {
+        }
+    }
+
+    private static String email() {
+        return UUID.randomUUID() + "@gmail.com";
+    }
+
+    private List<CustomerEvent> eventsOf(long after, Integer customerId) {
+        return underTest.selectEventsAfter(after, 1000).stream()
+                .filter(event -> event.customerId().equals(customerId))
+                .toList();
+    }
+
+    @Test
+    void willRecordEveryChangeInOrder() {
+        // given
+        long after = underTest.latestPosition();
+        String email = email();
+        Integer id = jdbc.insertCustomerReturningId(new Customer("Alex", email, 20)).orElseThrow();
+        jdbc.updateCustomer(new Customer(id, "Alexandru", email, 21, 0L));
+        // taken email, nothing inserted so nothing recorded
+        jdbc.insertCustomerReturningId(new Customer("Again", email, 22));
+        jdbc.deleteCustomer(id);
+
+        // when
+        List<Instant> sequenced = underTest.sequence(1000);
+
+        // then
+        assertThat(sequenced).hasSize(3);
+        List<CustomerEvent> events = eventsOf(after, id);
+        assertThat(events).extracting(CustomerEvent::type).containsExactly(
+                CustomerEvent.Type.CREATED, CustomerEvent.Type.UPDATED, CustomerEvent.Type.DELETED
+        );
+        assertThat(events).extracting(CustomerEvent::position).containsExactly(after + 1, after + 2, after + 3);
+        assertThat(events.get(0).customer()).isEqualTo(new Customer(id, "Alex", email, 20, 0L));
+        assertThat(events.get(1).customer()).isEqualTo(new Customer(id, "Alexandru", email, 21, 1L));
+        assertThat(events.get(2).customer()).isNull();
+        assertThat(underTest.latestPosition()).isEqualTo(after + 3);
+    }
+
+    @Test
+    void willRecordEveryRowOfABatch() {
+        // given
+        long after = underTest.latestPosition();
+        List<Customer> customers = List.of(
+                new Customer("Alex", email(), 20),
+                new Customer("Jamila", email(), 19)
+        );
+
+        // when
+        jdbc.insertCustomers(customers);
+        underTest.sequence(1000);
+
+        // then
+        assertThat(underTest.selectEventsAfter(after, 1000))
+                .extracting(event -> event.customer().getEmail())
+                .containsExactly(customers.get(0).getEmail(), customers.get(1).getEmail());
+    }
+
+    @Test
+    void willGivePositionsInTheOrderTheChangesCommitted() {
+        // given
+        long after = underTest.latestPosition();
+        // its own connections, so the transaction below stays open while the other insert commits
+        JdbcTemplate otherJdbcTemplate = getJdbcTemplate();
+        TransactionTemplate transaction = new TransactionTemplate(
+                new DataSourceTransactionManager(otherJdbcTemplate.getDataSource())
+        );
+        CustomerJDBCDataAccessService otherJdbc =
+                new CustomerJDBCDataAccessService(otherJdbcTemplate, new CustomerRowMapper());
+
+        // when
+        Integer[] ids = new Integer[2];
+        transaction.executeWithoutResult(status -> {
+            // the lower id, committed last
+            ids[0] = otherJdbc.insertCustomerReturningId(new Customer("Alex", email(), 20)).orElseThrow();
+            ids[1] = jdbc.insertCustomerReturningId(new Customer("Jamila", email(), 19)).orElseThrow();
+            assertThat(underTest.sequence(1000)).hasSize(1);
+        });
+        underTest.sequence(1000);
+
+        // then
+        assertThat(underTest.selectEventsAfter(after, 1000))
+                .extracting(CustomerEvent::customerId)
+                .containsExactly(ids[1], ids[0]);
+    }
+
+    @Test
+    void purgeWillKeepTheLatestEvent() {
+        // given
+        jdbc.insertCustomerReturningId(new Customer("Alex", email(), 20));
+        jdbc.insertCustomerReturningId(new Customer("Jamila", email(), 19));
+        underTest.sequence(1000);
+        long latest = underTest.latestPosition();
+
+        // when
+        underTest.purge(Duration.ZERO, 100_000);
+
+        // then
+        assertThat(underTest.earliestPosition()).isEqualTo(latest);
+        // positions carry on from there
+        jdbc.insertCustomerReturningId(new Customer("Bob", email(), 40));
+        underTest.sequence(1000);
+        assertThat(underTest.latestPosition()).isEqualTo(latest + 1);
+    }
+}
@@ -0,0 +1,82 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerOutboxRelayTest {
+
+    private CustomerOutboxRelay underTest;
+
+    @Mock
+    private CustomerOutboxDAO outboxDAO;
+
+    @BeforeEach
+    void setUp() {
+        // ticks are run by the tests, afterPropertiesSet would schedule them
+        underTest = new CustomerOutboxRelay(outboxDAO, Duration.ofMillis(50), Duration.ofDays(7));
+    }
+
+    @Test
+    void willWakeUpTheReadersOnceThereIsSomethingAfterTheirPosition() {
+        // given
+        when(outboxDAO.sequence(anyInt())).thenReturn(List.of(Instant.now()));
+        when(outboxDAO.latestPosition()).thenReturn(1L);
+        CompletableFuture<Void> atZero = underTest.whenAfter(0);
+        CompletableFuture<Void> atOne = underTest.whenAfter(1);
+
+        // when
+        underTest.tick();
+
+        // then
+        assertThat(atZero).isCompleted();
+        assertThat(atOne).isNotDone();
+        assertThat(underTest.latestPosition()).isEqualTo(1);
+        assertThat(underTest.whenAfter(0)).isCompleted();
+    }
+
+    @Test
+    void willSequenceUntilTheBacklogIsDone() {
+        // given
+        List<Instant> full = Collections.nCopies(1000, Instant.now());
+        when(outboxDAO.sequence(1000)).thenReturn(full, full, List.of());
+
+        // when
+        underTest.tick();
+
+        // then
+        verify(outboxDAO, times(3)).sequence(1000);
+    }
+
+    @Test
+    void willCarryOnAfterAFailure() {
+        // given
+        when(outboxDAO.sequence(anyInt()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(List.of(Instant.now()));
+        when(outboxDAO.latestPosition()).thenReturn(1L);
+        CompletableFuture<Void> waiting = underTest.whenAfter(0);
+
+        // when
+        underTest.tick();
+        underTest.tick();
+
+        // then
+        assertThat(waiting).isCompleted();
+    }
+}
@@ -0,0 +1,86 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerPostgresInvalidationTransportTest extends AbstractTestContainers {
+
+    private CustomerPostgresInvalidationTransport publisher;
+    private CustomerPostgresInvalidationTransport listener;
+    private final BlockingQueue<CustomerInvalidation> received = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() {
+        publisher = transport();
+        listener = transport();
+        listener.subscribe(received::add);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        publisher.destroy();
+        listener.destroy();
+    }
+
+    private static CustomerPostgresInvalidationTransport transport() {
+        return new CustomerPostgresInvalidationTransport(
+                getJdbcTemplate(),
+                new ObjectMapper(),
+                postgreSQLContainer.getJdbcUrl(),
+                postgreSQLContainer.getUsername(),
+                postgreSQLContainer.getPassword(),
+                "customer_invalidation"
+        );
+    }
+
+    @Test
+    void willDeliverToTheOtherNodes() throws InterruptedException {
+        // given
+        CustomerInvalidation invalidation = new CustomerInvalidation(
+                "node-1", List.of(10), List.of("alex@gmail.com"), false, 1L
+        );
+
+        // when
+        publisher.publish(invalidation);
+
+        // then
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo(invalidation);
+    }
+
+    @Test
+    void willSplitWhatDoesNotFitInANotification() throws InterruptedException {
+        // given
+        List<String> emails = IntStream.range(0, 1000)
+                .mapToObj(i -> "customer" + i + "@amigoscode.com")
+                .toList();
+
+        // when
+        publisher.publish(new CustomerInvalidation("node-1", List.of(), emails, false, 1L));
+
+        // then
+        Set<String> delivered = new HashSet<>();
+        List<CustomerInvalidation> notifications = new ArrayList<>();
+        while (delivered.size() < emails.size()) {
+            CustomerInvalidation invalidation = received.poll(5, TimeUnit.SECONDS);
+            assertThat(invalidation).isNotNull();
+            notifications.add(invalidation);
+            delivered.addAll(invalidation.emails());
+        }
+        assertThat(delivered).containsExactlyInAnyOrderElementsOf(emails);
+        assertThat(notifications).hasSizeGreaterThan(1);
+    }
+}
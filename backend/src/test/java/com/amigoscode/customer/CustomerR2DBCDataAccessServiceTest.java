@@ -0,0 +1,136 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerR2DBCDataAccessServiceTest extends AbstractTestContainers {
+
+    private CustomerR2DBCDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        // same database as the jdbc tests, reached through the r2dbc driver
+        String url = postgreSQLContainer.getJdbcUrl().replaceFirst("^jdbc:", "r2dbc:").split("\\?")[0];
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url)
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, postgreSQLContainer.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, postgreSQLContainer.getPassword())
+                .build();
+        underTest = new CustomerR2DBCDataAccessService(
+                DatabaseClient.create(ConnectionFactories.get(options))
+        );
+    }
+
+    private Integer insert(String name, int age) {
+        String email = name + "-" + UUID.randomUUID() + "@gmail.com";
+        return underTest.insertCustomerReturningId(new Customer(name, email, age)).block();
+    }
+
+    @Test
+    void selectAllCustomers() {
+        // Given
+        Integer id = insert("alex", 20);
+
+        // When
+        List<Customer> actual = underTest.selectAllCustomers().collectList().block();
+
+        // Then
+        assertThat(actual).extracting(Customer::getId).contains(id).isSorted();
+    }
+
+    @Test
+    void selectCustomersAfter() {
+        // Given
+        Integer first = insert("alex", 20);
+        Integer second = insert("alex", 21);
+
+        // When
+        List<Customer> actual = underTest.selectCustomersAfter(first, 1).collectList().block();
+
+        // Then
+        assertThat(actual).extracting(Customer::getId).containsExactly(second);
+    }
+
+    @Test
+    void selectCustomerById() {
+        // Given
+        Integer id = insert("alex", 20);
+
+        // When
+        Customer actual = underTest.selectCustomerById(id).block();
+
+        // Then
+        assertThat(actual).isNotNull();
+        assertThat(actual.getId()).isEqualTo(id);
+        assertThat(actual.getAge()).isEqualTo(20);
+    }
+
+    @Test
+    void willReturnEmptyWhenEmailIsTaken() {
+        // Given
+        String email = "taken-" + UUID.randomUUID() + "@gmail.com";
+        underTest.insertCustomerReturningId(new Customer("alex", email, 20)).block();
+
+        // When
+        Integer actual = underTest.insertCustomerReturningId(new Customer("alex", email, 20)).block();
+
+        // Then
+        assertThat(actual).isNull();
+    }
+
+    @Test
+    void deleteCustomer() {
+        // Given
+        Integer id = insert("alex", 20);
+
+        // When
+        Boolean deleted = underTest.deleteCustomer(id).block();
+
+        // Then
+        assertThat(deleted).isTrue();
+        assertThat(underTest.deleteCustomer(id).block()).isFalse();
+        assertThat(underTest.existsCustomerWithId(id).block()).isFalse();
+    }
+
+    @Test
+    void updateCustomerIfChanged() {
+        // Given
+        Integer id = insert("before", 20);
+
+        // When
+        CustomerUpdateResult updated = underTest.updateCustomerIfChanged(new Customer(id, "after", null, 21)).block();
+        CustomerUpdateResult unchanged = underTest.updateCustomerIfChanged(new Customer(id, "again", null, 21)).block();
+        CustomerUpdateResult missing = underTest.updateCustomerIfChanged(new Customer(-1, "after", null, null)).block();
+
+        // Then
+        assertThat(updated.updated()).isTrue();
+        assertThat(updated.previous().getName()).isEqualTo("before");
+        assertThat(unchanged.updated()).isFalse(); // same age
+        assertThat(missing).isNull();
+        assertThat(underTest.selectCustomerById(id).block().getName()).isEqualTo("after");
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerEmailIsTaken() {
+        // Given
+        String email = "taken-" + UUID.randomUUID() + "@gmail.com";
+        underTest.insertCustomerReturningId(new Customer("alex", email, 20)).block();
+        Integer id = insert("alex", 20);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomerIfChanged(new Customer(id, null, email, null)).block())
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+}
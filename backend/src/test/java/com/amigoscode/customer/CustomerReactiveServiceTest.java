@@ -0,0 +1,150 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.exception.DublicateResourceException;
+import com.amigoscode.exception.RequestValidationException;
+import com.amigoscode.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerReactiveServiceTest {
+
+    private CustomerReactiveService underTest;
+
+    @Mock
+    private CustomerReactiveDAO customerDAO;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerReactiveService(customerDAO);
+    }
+
+    @Test
+    void getCustomersPage() {
+        // given
+        // one row more than the limit means there is a next page
+        when(customerDAO.selectCustomersAfter(null, 3)).thenReturn(Flux.just(
+                new Customer(1, "a", "a@gmail.com", 20),
+                new Customer(2, "b", "b@gmail.com", 20),
+                new Customer(3, "c", "c@gmail.com", 20)
+        ));
+
+        // when
+        CustomerPage page = underTest.getCustomersPage(null, 2).block();
+
+        // then
+        assertThat(page.customers()).extracting(Customer::getId).containsExactly(1, 2);
+        assertThat(page.nextCursor()).isEqualTo(2);
+    }
+
+    @Test
+    void willThrowWhenPageLimitIsTooBig() {
+        // when
+        Mono<CustomerPage> page = underTest.getCustomersPage(null, CustomerService.MAX_PAGE_SIZE + 1);
+
+        // then
+        assertThatThrownBy(page::block)
+                .isInstanceOf(RequestValidationException.class);
+        verifyNoInteractions(customerDAO);
+    }
+
+    @Test
+    void willThrowWhenGetCustomerReturnEmpty() {
+        // given
+        int id = 10;
+        when(customerDAO.selectCustomerById(id)).thenReturn(Mono.empty());
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.getCustomer(id).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id: " + id + " doesn't exist");
+    }
+
+    @Test
+    void willThrowWhenEmailIsTakenWhileAddingCustomer() {
+        // given
+        when(customerDAO.insertCustomerReturningId(any())).thenReturn(Mono.empty());
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.addCustomer(
+                new CustomerRegistratioRequest("Alex", "alex@gmail.com", 20)
+        ).block())
+                .isInstanceOf(DublicateResourceException.class)
+                .hasMessage("email already taken");
+    }
+
+    @Test
+    void willShowErrorWhenCustomerIdDoesntExist() {
+        // given
+        int id = 10;
+        when(customerDAO.deleteCustomer(id)).thenReturn(Mono.just(false));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.deleteCustomer(id).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessageContaining("customer with id: [%s] doesn't exist".formatted(id));
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerNameIsTheSame() {
+        // given
+        int id = 10;
+        Customer previous = new Customer(id, "Alex", "alex@gmail.com", 20);
+        when(customerDAO.updateCustomerIfChanged(any()))
+                .thenReturn(Mono.just(new CustomerUpdateResult(previous, false)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                id, new CustomerEditRequest("Alex", null, null)
+        ).block())
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("The name field can't be the same");
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerEmailIsTaken() {
+        // given
+        when(customerDAO.updateCustomerIfChanged(any()))
+                .thenReturn(Mono.error(new DuplicateKeyException("customer_email_unique")));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(
+                10, new CustomerEditRequest(null, "taken@gmail.com", null)
+        ).block())
+                .isInstanceOf(DublicateResourceException.class);
+    }
+
+    @Test
+    void canUpdateCustomer() {
+        // given
+        int id = 10;
+        Customer previous = new Customer(id, "Alex", "alex@gmail.com", 20);
+        when(customerDAO.updateCustomerIfChanged(new Customer(id, null, null, 21)))
+                .thenReturn(Mono.just(new CustomerUpdateResult(previous, true)));
+
+        // when
+        underTest.updateCustomer(id, new CustomerEditRequest(null, null, 21)).block();
+
+        // then
+        // only the age is written
+        verify(customerDAO).updateCustomerIfChanged(new Customer(id, null, null, 21));
+    }
+}
@@ -2,13 +2,19 @@ package com.amigoscode.customer;
 
 import com.amigoscode.AbstractTestContainers;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
 
@@ -16,11 +22,15 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest
 @AutoConfigureTestDatabase( replace = AutoConfigureTestDatabase.Replace.NONE )
+@Import(CustomerJPADataAccesService.class)
 class CustomerRepositoryTest extends AbstractTestContainers {
 
     @Autowired
     private CustomerRepository underTest;
 
+    @Autowired
+    private CustomerJPADataAccesService customerJPADataAccesService;
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -29,6 +39,23 @@ class CustomerRepositoryTest extends AbstractTestContainers {
         // System.out.println(applicationContext.getBeanDefinitionCount());
     }
 
+    // the same tests as the other daos, on the jpa one. outside of the test's transaction, every dao call commits
+    // its own like it does in the app, the concurrent updates couldn't see each other otherwise
+    @Nested
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    class Contract extends CustomerDAOContractTest<CustomerJPADataAccesService> {
+
+        @Override
+        protected CustomerJPADataAccesService createDAO() {
+            return customerJPADataAccesService;
+        }
+
+        @Override
+        protected int concurrentUpdatesPerThread() {
+            return 25; // every try is a round trip
+        }
+    }
+
 
     @Test
     void existsCustomerByEmail() {
@@ -49,4 +76,73 @@ class CustomerRepositoryTest extends AbstractTestContainers {
         // then
         assertThat(result).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void insertCustomerIfEmailAvailable() {
+        String email = "native-" + UUID.randomUUID() + "@gmail.com";
+
+        // when
+        Optional<Integer> id = underTest.insertCustomerIfEmailAvailable("native", email, 20);
+        Optional<Integer> duplicateId = underTest.insertCustomerIfEmailAvailable("again", email, 21);
+
+        // then
+        assertThat(id).isPresent();
+        assertThat(duplicateId).isEmpty();
+    }
+
+    @Test
+    void insertCustomersIfEmailAvailable() {
+        String taken = "taken-" + UUID.randomUUID() + "@gmail.com";
+        String email = "batch-" + UUID.randomUUID() + "@gmail.com";
+        String other = "batch-" + UUID.randomUUID() + "@gmail.com";
+        underTest.insertCustomerIfEmailAvailable("taken", taken, 30);
+
+        // when
+        List<String> inserted = underTest.insertCustomersIfEmailAvailable(
+                new String[]{"first", "taken", "again", "other"},
+                new String[]{email, taken, email, other},
+                new Integer[]{20, 30, 21, 40}
+        );
+
+        // then
+        assertThat(inserted).containsExactly(email, other);
+        assertThat(underTest.findEmailsByEmailIn(List.of(email, taken, other)))
+                .containsExactlyInAnyOrder(email, taken, other);
+    }
+
+    @Test
+    void searchCustomers() {
+        // Given
+        String domain = UUID.randomUUID() + ".com";
+        Customer alex = underTest.save(new Customer("Alex", "alex@" + domain, 20));
+        underTest.save(new Customer("Ana", "ana@" + domain, 30));
+
+        // when
+        List<Customer> byDomain = underTest.searchCustomers(0, null, domain, null, null, 10);
+        List<Customer> byAll = underTest.searchCustomers(0, "al%", domain, 18, 25, 10);
+
+        // then
+        assertThat(byDomain).extracting(Customer::getName).containsExactly("Alex", "Ana");
+        assertThat(byAll).extracting(Customer::getId).containsExactly(alex.getId());
+    }
+
+    @Test
+    void findChangesAfter() {
+        // Given
+        long start = underTest.safeWatermark();
+        Integer id = underTest.insertCustomerIfEmailAvailable(
+                "changed", "changed-" + UUID.randomUUID() + "@gmail.com", 20
+        ).orElseThrow();
+
+        // when
+        List<Object[]> changes = underTest.findChangesAfter(start, 0, Long.MAX_VALUE, 1000);
+
+        // then
+        assertThat(changes).anySatisfy(row -> {
+            assertThat(((Number) row[0]).longValue()).isGreaterThanOrEqualTo(start);
+            assertThat(((Number) row[1]).intValue()).isEqualTo(id);
+            assertThat(row[2]).isEqualTo("changed");
+            assertThat(row[6]).isEqualTo(false);
+        });
+    }
+}
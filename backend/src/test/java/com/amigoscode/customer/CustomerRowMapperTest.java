@@ -20,6 +20,7 @@ class CustomerRowMapperTest {
         when(resultSet.getInt("age")).thenReturn(19);
         when(resultSet.getString("name")).thenReturn("Jamila");
         when(resultSet.getString("email")).thenReturn("jamila@gmail.com");
+        when(resultSet.getLong("version")).thenReturn(2L);
 
         // when
         Customer actual = customerRowMapper.mapRow(resultSet, 1);
@@ -30,5 +31,6 @@ class CustomerRowMapperTest {
         );
 
         assertThat(actual).isEqualTo(expected);
+        assertThat(actual.getVersion()).isEqualTo(2L);
     }
 }
\ No newline at end of file
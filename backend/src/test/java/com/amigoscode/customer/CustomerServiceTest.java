@@ -1,7 +1,11 @@
 package com.amigoscode.customer;
 
+import com.amigoscode.exception.ConcurrentUpdateException;
 import com.amigoscode.exception.DublicateResourceException;
+import com.amigoscode.exception.PreconditionFailedException;
+import com.amigoscode.exception.RequestValidationException;
 import com.amigoscode.exception.ResourceNotFoundException;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,8 +14,16 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -26,10 +38,19 @@ class CustomerServiceTest {
     @Mock
     private CustomerDAO customerDAO;
 
+    @Mock
+    private CustomerCopyDAO customerCopyDAO;
+
+    @Mock
+    private CustomerFuzzySearch customerFuzzySearch;
+
+    @Mock
+    private CustomerSyncDAO customerSyncDAO;
+
 
     @BeforeEach
     void setUp() {
-        underTest = new CustomerService(customerDAO);
+        underTest = new CustomerService(customerDAO, customerCopyDAO, customerFuzzySearch, customerSyncDAO);
     }
 
     @Test
@@ -42,6 +63,167 @@ class CustomerServiceTest {
         verify(customerDAO).selectAllCustomers();
     }
 
+    @Test
+    void canGetCustomersPageWithNextCursor() {
+        // given
+        int limit = 2;
+        List<Customer> customers = List.of(
+                new Customer(1, "Alex", "alex@gmail.com", 20),
+                new Customer(2, "Jamila", "jamila@gmail.com", 19),
+                new Customer(3, "Ana", "ana@gmail.com", 30)
+        );
+        // the service asks for one extra row to detect the next page
+        when(customerDAO.selectCustomersAfter(null, limit + 1)).thenReturn(customers);
+
+        // when
+        CustomerPage page = underTest.getCustomersPage(null, limit);
+
+        // then
+        assertThat(page.customers()).containsExactly(customers.get(0), customers.get(1));
+        assertThat(page.nextCursor()).isEqualTo(2);
+    }
+
+    @Test
+    void willReturnNoCursorOnLastPage() {
+        // given
+        int after = 2;
+        int limit = 2;
+        List<Customer> customers = List.of(
+                new Customer(3, "Ana", "ana@gmail.com", 30)
+        );
+        when(customerDAO.selectCustomersAfter(after, limit + 1)).thenReturn(customers);
+
+        // when
+        CustomerPage page = underTest.getCustomersPage(after, limit);
+
+        // then
+        assertThat(page.customers()).containsExactly(customers.get(0));
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowWhenPageLimitIsOutOfRange() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, 0))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("limit must be between 1 and " + CustomerService.MAX_PAGE_SIZE);
+
+        verify(customerDAO, Mockito.never()).selectCustomersAfter(Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    void canGetCustomerChangesSinceWatermark() {
+        // given
+        long since = 1000;
+        long until = 1050;
+        Customer updated = new Customer(7, "Alex", "alex@gmail.com", 21, 2L);
+        when(customerSyncDAO.safeWatermark()).thenReturn(until);
+        when(customerSyncDAO.selectChangesAfter(since, 7, until, 11)).thenReturn(List.of(
+                new CustomerChange(since + 1, 3, null),
+                new CustomerChange(since + 2, 7, updated)
+        ));
+
+        // when
+        CustomerChanges changes = underTest.getCustomerChanges(
+                new CustomerWatermark(since, 7).format(), 10
+        );
+
+        // then
+        assertThat(changes.customers()).containsExactly(updated);
+        assertThat(changes.deletedCustomerIds()).containsExactly(3);
+        assertThat(changes.more()).isFalse();
+        // everything before until was read
+        assertThat(CustomerWatermark.parse(changes.watermark())).isEqualTo(new CustomerWatermark(until, 0));
+    }
+
+    @Test
+    void willResumeCustomerChangesAfterTheLastOneWhenThereAreMore() {
+        // given
+        long until = 1050;
+        long xid = 1000;
+        when(customerSyncDAO.safeWatermark()).thenReturn(until);
+        when(customerSyncDAO.selectChangesAfter(0, 0, until, 3)).thenReturn(List.of(
+                new CustomerChange(xid, 1, new Customer(1, "Alex", "alex@gmail.com", 21, 0L)),
+                new CustomerChange(xid, 2, new Customer(2, "Jamila", "jamila@gmail.com", 19, 0L)),
+                new CustomerChange(xid, 3, new Customer(3, "Ana", "ana@gmail.com", 30, 0L))
+        ));
+
+        // when
+        CustomerChanges changes = underTest.getCustomerChanges(null, 2);
+
+        // then
+        // same xid for all of them (one COPY import), the id tells where to go on
+        assertThat(changes.customers()).extracting(Customer::getId).containsExactly(1, 2);
+        assertThat(changes.more()).isTrue();
+        assertThat(CustomerWatermark.parse(changes.watermark())).isEqualTo(new CustomerWatermark(xid, 2));
+    }
+
+    @Test
+    void willKeepTheClientWatermarkWhenTheSafeOneIsBehind() {
+        // given
+        // a watermark from somewhere else than here, the safe one never goes back
+        long since = 1050;
+        long until = 1000;
+        when(customerSyncDAO.safeWatermark()).thenReturn(until);
+        when(customerSyncDAO.selectChangesAfter(since, 0, until, 11)).thenReturn(List.of());
+
+        // when
+        CustomerChanges changes = underTest.getCustomerChanges(new CustomerWatermark(since, 0).format(), 10);
+
+        // then
+        assertThat(changes.customers()).isEmpty();
+        assertThat(changes.deletedCustomerIds()).isEmpty();
+        assertThat(CustomerWatermark.parse(changes.watermark())).isEqualTo(new CustomerWatermark(since, 0));
+    }
+
+    @Test
+    void willThrowWhenWatermarkIsMalformed() {
+        assertThatThrownBy(() -> underTest.getCustomerChanges("yesterday", 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("not a watermark");
+
+        verify(customerSyncDAO, Mockito.never()).safeWatermark();
+    }
+
+    @Test
+    void searchCustomers() {
+        // given
+        CustomerSearch search = new CustomerSearch("A", null, 18, 30);
+        int limit = 1;
+        List<Customer> customers = List.of(
+                new Customer(4, "Alex", "alex@gmail.com", 20),
+                new Customer(9, "Ana", "ana@gmail.com", 30)
+        );
+        when(customerDAO.searchCustomers(search, null, limit + 1)).thenReturn(customers);
+
+        // when
+        CustomerPage page = underTest.searchCustomers(search, null, limit);
+
+        // then
+        assertThat(page.customers()).containsExactly(customers.get(0));
+        assertThat(page.nextCursor()).isEqualTo(4);
+    }
+
+    @Test
+    void willThrowWhenSearchAgeRangeIsEmpty() {
+        assertThatThrownBy(() -> underTest.searchCustomers(new CustomerSearch(null, null, 30, 18), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("minAge can't be greater than maxAge");
+
+        verify(customerDAO, Mockito.never()).searchCustomers(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    void exportCustomers() {
+        // given
+        Consumer<Customer> action = customer -> {};
+
+        // when
+        underTest.exportCustomers(action);
+
+        // then
+        verify(customerDAO).forEachCustomer(action);
+    }
+
     @Test
     void getCustomer() {
 
@@ -92,17 +274,19 @@ class CustomerServiceTest {
         String email = "alex@gmail.com";
 
         // when
-        Mockito.when(customerDAO.existsCustomerWithEmail(email)).thenReturn(false);
+        Mockito.when(customerDAO.insertCustomerReturningId(Mockito.any())).thenReturn(Optional.of(1));
 
         CustomerRegistratioRequest request = new CustomerRegistratioRequest(
                 "Alex", email, 20
         );
 
-        underTest.addCustomer(request);
+        Integer id = underTest.addCustomer(request);
 
         // then
+        assertThat(id).isEqualTo(1);
         ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDAO).insertCustomer(customerArgumentCaptor.capture()); // captureaza orice argument pasat metodei insertCustomer care este de tip Customer
+        verify(customerDAO).insertCustomerReturningId(customerArgumentCaptor.capture()); // captureaza orice argument pasat metodei insertCustomerReturningId care este de tip Customer
+        verify(customerDAO, Mockito.never()).existsCustomerWithEmail(email); // no extra round trip
 
         Customer capturedCustomer = customerArgumentCaptor.getValue(); // extract the value to perform some assertions
 
@@ -119,7 +303,8 @@ class CustomerServiceTest {
         // given
         String email = "alex@gmail.com";
         // when
-        Mockito.when(customerDAO.existsCustomerWithEmail(email)).thenReturn(true);
+        // the insert finds the email taken and returns no id
+        Mockito.when(customerDAO.insertCustomerReturningId(Mockito.any())).thenReturn(Optional.empty());
 
         CustomerRegistratioRequest request = new CustomerRegistratioRequest(
                 "Alex", email, 20
@@ -130,37 +315,110 @@ class CustomerServiceTest {
                 .isInstanceOf(DublicateResourceException.class)
                 .hasMessageContaining("email already taken");
 
-        // verify that will never insert a customer
+        // verify that will never insert a customer with the old insert
         verify(customerDAO, Mockito.never()).insertCustomer(Mockito.any());
     }
 
 
+    @Test
+    void canAddCustomersInBatch() {
+        // given
+        List<CustomerRegistratioRequest> requests = List.of(
+                new CustomerRegistratioRequest("Alex", "alex@gmail.com", 20),
+                new CustomerRegistratioRequest("Jamila", "jamila@gmail.com", 19),
+                new CustomerRegistratioRequest("Alex", "alex@gmail.com", 20), // repeated in the batch
+                new CustomerRegistratioRequest(null, "ana@gmail.com", 30), // no name
+                new CustomerRegistratioRequest("Taken", "taken@gmail.com", 40),
+                new CustomerRegistratioRequest("Race", "race@gmail.com", 50)
+        );
+        when(customerDAO.selectExistingEmails(Set.of("alex@gmail.com", "jamila@gmail.com", "taken@gmail.com", "race@gmail.com")))
+                .thenReturn(Set.of("taken@gmail.com"));
+        // race@gmail.com was registered between the check and the insert
+        when(customerDAO.insertCustomers(Mockito.anyList())).thenReturn(new int[]{1, 1, 0});
+
+        // when
+        List<CustomerBatchRegistrationResult> results = underTest.addCustomers(requests);
+
+        // then
+        ArgumentCaptor<List<Customer>> customersCaptor = ArgumentCaptor.forClass(List.class);
+        verify(customerDAO).insertCustomers(customersCaptor.capture());
+        assertThat(customersCaptor.getValue())
+                .extracting(Customer::getEmail)
+                .containsExactly("alex@gmail.com", "jamila@gmail.com", "race@gmail.com");
+
+        assertThat(results)
+                .extracting(CustomerBatchRegistrationResult::status)
+                .containsExactly(
+                        CustomerBatchRegistrationResult.Status.CREATED,
+                        CustomerBatchRegistrationResult.Status.CREATED,
+                        CustomerBatchRegistrationResult.Status.DUPLICATE,
+                        CustomerBatchRegistrationResult.Status.INVALID,
+                        CustomerBatchRegistrationResult.Status.DUPLICATE,
+                        CustomerBatchRegistrationResult.Status.DUPLICATE
+                );
+    }
+
+    @Test
+    void willThrowWhenBatchIsEmpty() {
+        assertThatThrownBy(() -> underTest.addCustomers(List.of()))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("a batch must have between 1 and " + CustomerService.MAX_BATCH_SIZE + " customers");
+
+        verify(customerDAO, Mockito.never()).insertCustomers(Mockito.anyList());
+    }
+
+    @Test
+    void importCustomersCsv() {
+        // given
+        InputStream csv = new ByteArrayInputStream("name,email,age\nAlex,alex@gmail.com,20\n".getBytes());
+        when(customerCopyDAO.copyCustomersIn(csv)).thenReturn(new CustomerImportResult(1, 1));
+
+        // when
+        CustomerImportResult actual = underTest.importCustomersCsv(csv);
+
+        // then
+        assertThat(actual).isEqualTo(new CustomerImportResult(1, 1));
+    }
+
+    @Test
+    void willThrowWhenCsvIsMalformed() {
+        // given
+        InputStream csv = new ByteArrayInputStream("name,email,age\nAlex,alex@gmail.com,twenty\n".getBytes());
+        when(customerCopyDAO.copyCustomersIn(csv))
+                .thenThrow(new DataIntegrityViolationException("invalid input syntax for type integer"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.importCustomersCsv(csv))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("invalid csv");
+    }
+
     @Test
     void deleteCustomer() {
         int id = 10;
 
-        // test if customer don't exist
-        Mockito.when(customerDAO.existsCustomerWithId(id)).thenReturn(true);
+        // the delete reports that a row was removed
+        Mockito.when(customerDAO.deleteCustomer(id)).thenReturn(true);
 
         // when
         underTest.deleteCustomer(id);
 
         //then
         verify(customerDAO).deleteCustomer(id);
+        verify(customerDAO, Mockito.never()).existsCustomerWithId(id); // no extra round trip
     }
 
     @Test
     void willShowErrorWhenCustomerIdDoesntExist() {
         int id = 10;
-        // test if customer don't exist
-        Mockito.when(customerDAO.existsCustomerWithId(id)).thenReturn(false);
+        // test if customer don't exist, nothing was deleted
+        Mockito.when(customerDAO.deleteCustomer(id)).thenReturn(false);
 
         // when
         assertThatThrownBy(() -> underTest.deleteCustomer(id))
                 .isInstanceOf(ResourceNotFoundException.class)
                         .hasMessageContaining("customer with id: [%s] doesn't exist".formatted(id));
-        //then
-        verify(customerDAO, Mockito.never()).deleteCustomer(id);
     }
 
     @Test
@@ -172,25 +430,29 @@ class CustomerServiceTest {
                 "alexandru", "alex2001@yahoo.com", 21
         );
 
-        // create the customer for the getCustomer call
+        // the customer as it was before the update
         Customer customer = new Customer(
                 customerId, "alex", "alex2001@yahoo.com", 20
         );
 
         // instead of mocking, we can create the customer and other dependencies, or just mock them
-        Mockito.when(customerDAO.selectCustomerById(customerId)).thenReturn(Optional.of(customer));
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, true)));
 
         // when
         underTest.updateCustomer(customerId, request);
 
         // then
         ArgumentCaptor<Customer> argumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDAO).updateCustomer(argumentCaptor.capture());
+        verify(customerDAO).updateCustomerIfChanged(argumentCaptor.capture());
 
-        Customer capturedCustomer = argumentCaptor.getValue();
+        Customer capturedChanges = argumentCaptor.getValue();
 
-        assertThat(capturedCustomer.getName()).isEqualTo(request.name());
-        assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
+        assertThat(capturedChanges.getId()).isEqualTo(customerId);
+        assertThat(capturedChanges.getName()).isEqualTo(request.name());
+        assertThat(capturedChanges.getAge()).isEqualTo(request.age());
+        assertThat(capturedChanges.getEmail()).isNull(); // only the changed columns are written
+        verify(customerDAO, Mockito.never()).selectCustomerById(customerId);
     }
 
 
@@ -204,24 +466,26 @@ class CustomerServiceTest {
                 "alexandru", null, null
         );
 
-        // create the customer for the getCustomer call
+        // the customer as it was before the update
         Customer customer = new Customer(
                 customerId, "alex", "alex2001@yahoo.com", 20
         );
 
-        // instead of mocking, we can create the customer and other dependencies, or just mock them
-        Mockito.when(customerDAO.selectCustomerById(customerId)).thenReturn(Optional.of(customer));
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, true)));
 
         // when
         underTest.updateCustomer(customerId, request);
 
         // then
         ArgumentCaptor<Customer> argumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDAO).updateCustomer(argumentCaptor.capture());
+        verify(customerDAO).updateCustomerIfChanged(argumentCaptor.capture());
 
-        Customer capturedCustomer = argumentCaptor.getValue();
+        Customer capturedChanges = argumentCaptor.getValue();
 
-        assertThat(capturedCustomer.getName()).isEqualTo(request.name());
+        assertThat(capturedChanges.getName()).isEqualTo(request.name());
+        assertThat(capturedChanges.getAge()).isNull();
+        assertThat(capturedChanges.getEmail()).isNull();
     }
 
     // test updating just the age
@@ -234,24 +498,25 @@ class CustomerServiceTest {
                 null, null, 25
         );
 
-        // create the customer for the getCustomer call
+        // the customer as it was before the update
         Customer customer = new Customer(
                 customerId, "alex", "alex2001@yahoo.com", 20
         );
 
-        // instead of mocking, we can create the customer and other dependencies, or just mock them
-        Mockito.when(customerDAO.selectCustomerById(customerId)).thenReturn(Optional.of(customer));
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, true)));
 
         // when
         underTest.updateCustomer(customerId, request);
 
         // then
         ArgumentCaptor<Customer> argumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDAO).updateCustomer(argumentCaptor.capture());
+        verify(customerDAO).updateCustomerIfChanged(argumentCaptor.capture());
 
-        Customer capturedCustomer = argumentCaptor.getValue();
+        Customer capturedChanges = argumentCaptor.getValue();
 
-        assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
+        assertThat(capturedChanges.getAge()).isEqualTo(request.age());
+        assertThat(capturedChanges.getName()).isNull();
     }
 
     // test updating just the email
@@ -264,25 +529,217 @@ class CustomerServiceTest {
                 null, "alex2002@yahoo.com", null
         );
 
-        // create the customer for the getCustomer call
+        // the customer as it was before the update
         Customer customer = new Customer(
                 customerId, "alex", "alex2001@yahoo.com", 20
         );
 
-        // instead of mocking, we can create the customer and other dependencies, or just mock them
-        Mockito.when(customerDAO.selectCustomerById(customerId)).thenReturn(Optional.of(customer));
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, true)));
 
         // when
         underTest.updateCustomer(customerId, request);
 
         // then
         ArgumentCaptor<Customer> argumentCaptor = ArgumentCaptor.forClass(Customer.class);
-        verify(customerDAO).updateCustomer(argumentCaptor.capture());
+        verify(customerDAO).updateCustomerIfChanged(argumentCaptor.capture());
 
-        Customer capturedCustomer = argumentCaptor.getValue();
+        Customer capturedChanges = argumentCaptor.getValue();
 
-        assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
+        assertThat(capturedChanges.getEmail()).isEqualTo(request.email());
     }
 
+    @Test
+    void willThrowWhenUpdateCustomerDoesntExist() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                "alexandru", null, null
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any())).thenReturn(Optional.empty());
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessageContaining("customer with id: " + customerId + " doesn't exist");
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerAgeIsTheSame() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                "alexandru", null, 20
+        );
+        Customer customer = new Customer(
+                customerId, "alex", "alex2001@yahoo.com", 20
+        );
+        // nothing was written because the age didn't change
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, false)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessageContaining("The age field can't be the same");
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerEmailIsTaken() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, "taken@gmail.com", null
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenThrow(new DuplicateKeyException("customer_email_unique"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request))
+                .isInstanceOf(DublicateResourceException.class)
+                .hasMessageContaining("email already taken");
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerEmailIsTakenWithTheJpaDao() {
+        // given
+        // the jpa dao finds the taken email when it flushes the entity, not in an update statement
+        CustomerRepository customerRepository = Mockito.mock(CustomerRepository.class);
+        CustomerService jpaService = new CustomerService(
+                new CustomerJPADataAccesService(customerRepository, Mockito.mock(EntityManager.class)),
+                customerCopyDAO, customerFuzzySearch, customerSyncDAO
+        );
+        int customerId = 10;
+        when(customerRepository.findById(customerId))
+                .thenReturn(Optional.of(new Customer(customerId, "Alex", "alex@gmail.com", 20, 0L)));
+        Mockito.doThrow(CustomerJPADataAccesServiceTest.violated("customer_email_unique"))
+                .when(customerRepository).flush();
+
+        // when
+        // then
+        // a 409 like with the other daos, not a 500
+        assertThatThrownBy(() -> jpaService.updateCustomer(
+                customerId, new CustomerEditRequest(null, "taken@gmail.com", null)
+        ))
+                .isInstanceOf(DublicateResourceException.class)
+                .hasMessageContaining("email already taken");
+    }
+
+    @Test
+    void canUpdateCustomerWithExpectedVersion() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, null, 21
+        );
+        Customer customer = new Customer(
+                customerId, "alex", "alex2001@yahoo.com", 20, 3L
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, true)));
+
+        // when
+        underTest.updateCustomer(customerId, request, 3L);
 
-}
\ No newline at end of file
+        // then
+        ArgumentCaptor<Customer> argumentCaptor = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDAO).updateCustomerIfChanged(argumentCaptor.capture());
+        // the dao checks the version in the same statement that writes
+        assertThat(argumentCaptor.getValue().getVersion()).isEqualTo(3L);
+    }
+
+    @Test
+    void willThrowWhenUpdateCustomerVersionChanged() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, null, 20
+        );
+        // somebody else updated it in the meantime, and even set the same age
+        Customer customer = new Customer(
+                customerId, "alex", "alex2001@yahoo.com", 20, 4L
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, false)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request, 3L))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessageContaining("version is now 4");
+    }
+
+    @Test
+    void willThrowWhenNothingToUpdateAndVersionChanged() {
+        // given
+        int customerId = 10;
+        Mockito.when(customerDAO.selectCustomerById(customerId))
+                .thenReturn(Optional.of(new Customer(customerId, "alex", "alex2001@yahoo.com", 20, 4L)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, new CustomerEditRequest(null, null, null), 3L))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void willThrowConflictWhenUpdateCustomerLosesTheRace() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, null, 21
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenThrow(new OptimisticLockingFailureException("row was updated"));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request, 3L))
+                .isInstanceOf(ConcurrentUpdateException.class)
+                .hasMessageContaining("customer with id: 10");
+    }
+
+    @Test
+    void willThrowConflictWhenTheVersionMatchedButNothingWasUpdated() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, null, 21
+        );
+        // the row still says version 3 when it is read back, but our write didn't happen
+        Customer customer = new Customer(
+                customerId, "alex", "alex2001@yahoo.com", 20, 3L
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, false)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request, 3L))
+                .isInstanceOf(ConcurrentUpdateException.class);
+    }
+
+    @Test
+    void willThrowConflictWhenNothingWasUpdatedWithoutAVersion() {
+        // given
+        int customerId = 10;
+        CustomerEditRequest request = new CustomerEditRequest(
+                null, null, 21
+        );
+        // the row is there and every field differs, another update got to it first
+        Customer customer = new Customer(
+                customerId, "alex", "alex2001@yahoo.com", 20, 3L
+        );
+        Mockito.when(customerDAO.updateCustomerIfChanged(Mockito.any()))
+                .thenReturn(Optional.of(new CustomerUpdateResult(customer, false)));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(customerId, request))
+                .isInstanceOf(ConcurrentUpdateException.class)
+                .hasMessageContaining("customer with id: 10");
+    }
+}
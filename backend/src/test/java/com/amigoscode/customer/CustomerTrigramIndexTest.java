@@ -0,0 +1,99 @@
+package com.amigoscode.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerTrigramIndexTest {
+    private static final double THRESHOLD = 0.5;
+
+    private CustomerTrigramIndex underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerTrigramIndex();
+        underTest.put(new Customer(1, "Jamila Ahmed", "jamila.ahmed@gmail.com", 19, 0L));
+        underTest.put(new Customer(2, "Alex Smith", "alex@amigoscode.com", 20, 0L));
+        underTest.put(new Customer(3, "Alexandra Jones", "ajones@yahoo.com", 30, 0L));
+        underTest.put(new Customer(4, "Bob Marley", "bob@gmail.com", 40, 0L));
+    }
+
+    private List<Integer> ids(String query) {
+        return underTest.search(query, THRESHOLD, 10)
+                .stream()
+                .map(match -> match.customer().getId())
+                .toList();
+    }
+
+    @Test
+    void trigrams() {
+        // "  a", " al", "al " and "  b", " b ": lower cased, the @ splits words
+        assertThat(CustomerTrigramIndex.trigrams("Al@b")).hasSize(5);
+        assertThat(CustomerTrigramIndex.trigrams("al")).isEqualTo(CustomerTrigramIndex.trigrams("AL"));
+        assertThat(CustomerTrigramIndex.trigrams("  ")).isEmpty();
+    }
+
+    @Test
+    void mostFrequent() {
+        int[] ids = {7, 3, 5, 3, 9, 7, 3, 1};
+
+        // 3 is there 3 times, 7 twice, the others once
+        assertThat(CustomerTrigramIndex.mostFrequent(ids.clone(), ids.length, 3, 2)).containsExactly(3, 7);
+        assertThat(CustomerTrigramIndex.mostFrequent(ids.clone(), ids.length, 3, 3)).containsExactly(3, 7, 1);
+        // everything fits, in id order
+        assertThat(CustomerTrigramIndex.mostFrequent(ids.clone(), ids.length, 3, 10)).containsExactly(1, 3, 5, 7, 9);
+        // only the first 4
+        assertThat(CustomerTrigramIndex.mostFrequent(ids.clone(), 4, 3, 10)).containsExactly(3, 5, 7);
+    }
+
+    @Test
+    void willFindMisspelledNamesAndEmails() {
+        assertThat(ids("jamla")).containsExactly(1);
+        assertThat(ids("jamila.ahmd@gmial.com")).first().isEqualTo(1);
+        assertThat(ids("marly")).containsExactly(4);
+        assertThat(ids("zzzz")).isEmpty();
+    }
+
+    @Test
+    void willRankTheWholeNameBeforeALongerOne() {
+        // both start with alex, Alex Smith is the closer one
+        assertThat(ids("alex")).containsSubsequence(2, 3);
+        assertThat(underTest.search("alex smith", THRESHOLD, 10).get(0).score()).isGreaterThan(0.9);
+    }
+
+    @Test
+    void willReturnAtMostLimitMatches() {
+        assertThat(underTest.search("gmail", THRESHOLD, 1)).hasSize(1);
+    }
+
+    @Test
+    void willFollowUpdatesAndDeletes() {
+        // when
+        underTest.put(new Customer(4, "Robert Nesta", "bob@gmail.com", 40, 1L));
+        underTest.remove(1);
+
+        // then
+        assertThat(ids("marley")).isEmpty();
+        assertThat(ids("nesta")).containsExactly(4);
+        assertThat(ids("jamila")).isEmpty();
+        assertThat(underTest.size()).isEqualTo(3);
+        // the update changed the name, the email still finds it
+        assertThat(ids("bob@gmail.com")).first().isEqualTo(4);
+    }
+
+    @Test
+    void willKeepFindingCustomersAfterManyUpdates() {
+        // enough stale postings to have them dropped a few times
+        for (int i = 0; i < 2000; i++) {
+            underTest.put(new Customer(2, "Alex" + (i % 2 == 0 ? "ander" : "is"), "alex@amigoscode.com", 20, (long) i));
+        }
+
+        // then
+        assertThat(ids("alexis")).contains(2);
+        assertThat(ids("alex smith")).doesNotContain(2);
+        assertThat(underTest.search("alexis", THRESHOLD, 10).get(0).customer().getVersion()).isEqualTo(1999L);
+    }
+}
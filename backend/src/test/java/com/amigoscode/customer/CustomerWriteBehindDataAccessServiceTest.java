@@ -0,0 +1,203 @@
+package com.amigoscode.customer;
+
+import com.amigoscode.AbstractTestContainers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerWriteBehindDataAccessServiceTest extends AbstractTestContainers {
+
+    private final JdbcTemplate jdbcTemplate = getJdbcTemplate();
+    private final CustomerJDBCDataAccessService jdbc =
+            new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper());
+    private CustomerWriteBehindDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerWriteBehindDataAccessService(
+                jdbc,
+                jdbcTemplate,
+                new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                1000,
+                100,
+                Duration.ofMillis(50),
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(10)
+        );
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        underTest.destroy();
+    }
+
+    private static String email() {
+        return UUID.randomUUID() + "@gmail.com";
+    }
+
+    @Test
+    void willGroupConcurrentInsertsIntoBatches() {
+        // given
+        List<CompletableFuture<Optional<Integer>>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 250; i++) {
+            futures.add(underTest.submitInsert(new Customer("alex", email(), 20)));
+        }
+        List<Optional<Integer>> ids = futures.stream().map(CompletableFuture::join).toList();
+
+        // then
+        assertThat(ids).allMatch(Optional::isPresent);
+        assertThat(ids).extracting(Optional::get).doesNotHaveDuplicates();
+        // 100 per batch at most, far fewer commits than rows
+        assertThat(underTest.batches()).isBetween(3L, 10L);
+        assertThat(jdbc.selectCustomerById(ids.get(0).orElseThrow())).isPresent();
+    }
+
+    @Test
+    void willReturnEmptyForTakenEmailsInTheSameBatch() {
+        // given
+        String email = email();
+
+        // when
+        CompletableFuture<Optional<Integer>> first = underTest.submitInsert(new Customer("first", email, 20));
+        CompletableFuture<Optional<Integer>> second = underTest.submitInsert(new Customer("second", email, 20));
+
+        // then
+        assertThat(first.join()).isPresent();
+        assertThat(second.join()).isEmpty();
+        assertThat(jdbc.selectCustomerById(first.join().orElseThrow()).orElseThrow().getName()).isEqualTo("first");
+        assertThatThrownBy(() -> underTest.insertCustomer(new Customer("third", email, 20)))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void willNotFailTheWholeBatchForOneBadUpdate() {
+        // given
+        String taken = email();
+        Integer owner = underTest.insertCustomerReturningId(new Customer("owner", taken, 20)).orElseThrow();
+        Integer id = underTest.insertCustomerReturningId(new Customer("alex", email(), 20)).orElseThrow();
+
+        // when
+        CompletableFuture<Optional<CustomerUpdateResult>> missing =
+                underTest.submitUpdate(new Customer(owner + id, "x", null, null));
+        CompletableFuture<Optional<CustomerUpdateResult>> badEmail =
+                underTest.submitUpdate(new Customer(id, null, taken, null));
+        CompletableFuture<Optional<Integer>> good = underTest.submitInsert(new Customer("good", email(), 20));
+
+        // then
+        assertThat(missing).succeedsWithin(Duration.ofSeconds(5)).isEqualTo(Optional.empty()); // no such id
+        assertThat(badEmail).failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(DuplicateKeyException.class);
+        assertThat(good.join()).isPresent();
+    }
+
+    @Test
+    void updateCustomerIfChanged() {
+        // given
+        String email = email();
+        Integer id = underTest.insertCustomerReturningId(new Customer("alex", email, 20)).orElseThrow();
+
+        // when
+        Optional<CustomerUpdateResult> result = underTest.updateCustomerIfChanged(new Customer(id, "alexandru", null, 21));
+
+        // then it's committed when the call returns
+        assertThat(result).hasValueSatisfying(r -> {
+            assertThat(r.updated()).isTrue();
+            assertThat(r.previous()).isEqualTo(new Customer(id, "alex", email, 20));
+        });
+        assertThat(jdbc.selectCustomerById(id)).contains(new Customer(id, "alexandru", email, 21));
+    }
+
+    @Test
+    void willGroupConcurrentUpdatesIntoBatches() {
+        // given
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            ids.add(jdbc.insertCustomerReturningId(new Customer("alex", email(), 20)).orElseThrow());
+        }
+        long batchesBefore = underTest.batches();
+
+        // when
+        List<CompletableFuture<Optional<CustomerUpdateResult>>> futures = new ArrayList<>();
+        for (Integer id : ids) {
+            futures.add(underTest.submitUpdate(new Customer(id, null, null, 21)));
+        }
+        List<Optional<CustomerUpdateResult>> results = futures.stream().map(CompletableFuture::join).toList();
+
+        // then
+        assertThat(results).allSatisfy(result -> assertThat(result).hasValueSatisfying(r -> assertThat(r.updated()).isTrue()));
+        assertThat(underTest.batches() - batchesBefore).isBetween(3L, 10L);
+        assertThat(jdbc.selectCustomerById(ids.get(0))).hasValueSatisfying(c -> assertThat(c.getAge()).isEqualTo(21));
+    }
+
+    @Test
+    void willNotUpdateAQueuedUpdateWithAStaleVersion() {
+        // given
+        String email = email();
+        Integer id = underTest.insertCustomerReturningId(new Customer("alex", email, 20)).orElseThrow();
+
+        // when two writers both read version 0, possibly in the same batch
+        CompletableFuture<Optional<CustomerUpdateResult>> first = underTest.submitUpdate(new Customer(id, null, null, 21, 0L));
+        CompletableFuture<Optional<CustomerUpdateResult>> second = underTest.submitUpdate(new Customer(id, null, null, 22, 0L));
+
+        // then the second sees the version the first one wrote
+        assertThat(first.join()).hasValueSatisfying(r -> assertThat(r.updated()).isTrue());
+        assertThat(second.join()).hasValueSatisfying(r -> {
+            assertThat(r.updated()).isFalse();
+            assertThat(r.previous().getVersion()).isEqualTo(1L);
+        });
+        assertThat(jdbc.selectCustomerById(id)).hasValueSatisfying(c -> {
+            assertThat(c.getAge()).isEqualTo(21);
+            assertThat(c.getVersion()).isEqualTo(1L);
+        });
+    }
+
+    @Test
+    void updateCustomer() {
+        // given
+        String email = email();
+        Integer id = underTest.insertCustomerReturningId(new Customer("alex", email, 20)).orElseThrow();
+        underTest.updateCustomer(new Customer(id, "alex", email, 21, 0L));
+
+        // when
+        // then
+        assertThatThrownBy(() -> underTest.updateCustomer(new Customer(id, "alex", email, 22, 0L)))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(jdbc.selectCustomerById(id)).hasValueSatisfying(c -> assertThat(c.getAge()).isEqualTo(21));
+    }
+
+    @Test
+    void willFlushQueuedWritesOnShutdownAndRefuseNewOnes() throws InterruptedException {
+        // given
+        List<CompletableFuture<Optional<Integer>>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            futures.add(underTest.submitInsert(new Customer("alex", email(), 20)));
+        }
+
+        // when
+        underTest.destroy();
+
+        // then
+        assertThat(futures).allMatch(future -> future.isDone() && future.join().isPresent());
+        assertThatThrownBy(() -> underTest.submitInsert(new Customer("late", email(), 20)))
+                .isInstanceOf(TransientDataAccessResourceException.class);
+    }
+}
@@ -0,0 +1,142 @@
+package com.amigoscode.customer;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class SqlStatementMonitorTest {
+
+    private SqlStatementMonitor underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new SqlStatementMonitor(Duration.ofMillis(100), 3, 2, 10);
+    }
+
+    private void execute(String sql, long millis) {
+        ExecutionInfo execution = new ExecutionInfo();
+        execution.setElapsedTime(millis);
+        underTest.afterQuery(execution, List.of(new QueryInfo(sql)));
+    }
+
+    @Test
+    void willWrapDataSources() {
+        // when
+        Object wrapped = underTest.postProcessAfterInitialization(mock(DataSource.class), "dataSource");
+
+        // then
+        assertThat(wrapped).isInstanceOf(ProxyDataSource.class);
+        assertThat(underTest.postProcessAfterInitialization(wrapped, "dataSource")).isSameAs(wrapped);
+        assertThat(underTest.postProcessAfterInitialization("not a datasource", "other")).isEqualTo("not a datasource");
+    }
+
+    @Test
+    void willCountStatementsPerRoute() {
+        // when
+        underTest.beginRequest();
+        execute("SELECT id, name, email, age FROM customer WHERE id = ?", 1);
+        underTest.endRequest("GET /api/v1/customers/{customerId}", 2);
+        underTest.beginRequest();
+        underTest.endRequest("GET /api/v1/customers/{customerId}", 1);
+        // outside of a request, e.g. the write-behind flusher
+        execute("UPDATE customer SET age = ? WHERE id = ?", 1);
+
+        // then
+        SqlStatementMonitor.Summary summary = underTest.summary();
+        assertThat(summary.statements()).isEqualTo(2);
+        assertThat(summary.flaggedRequests()).isZero();
+        assertThat(summary.routes()).containsExactly(Map.entry(
+                "GET /api/v1/customers/{customerId}",
+                new SqlStatementMonitor.RouteSummary(2, 1, 0.5, 1, 0)
+        ));
+    }
+
+    @Test
+    void willFlagRequestsOverTheThreshold() {
+        // when
+        underTest.beginRequest();
+        for (int i = 0; i < 4; i++) {
+            execute("INSERT INTO customer(name, email, age) VALUES (?, ?, ?) -- " + i, 1);
+        }
+        underTest.endRequest("POST /api/v1/customers/batch", 10);
+
+        // then
+        SqlStatementMonitor.Summary summary = underTest.summary();
+        assertThat(summary.flaggedRequests()).isEqualTo(1);
+        assertThat(summary.recentFlaggedRequests())
+                .singleElement()
+                .satisfies(flagged -> {
+                    assertThat(flagged.route()).isEqualTo("POST /api/v1/customers/batch");
+                    assertThat(flagged.statementCount()).isEqualTo(4);
+                });
+    }
+
+    @Test
+    void willFlagRepeatedStatements() {
+        // when
+        underTest.beginRequest();
+        execute("SELECT id, name, email, age FROM customer WHERE id = ?", 1);
+        execute("SELECT id, name, email, age FROM customer WHERE id = ?", 1);
+        underTest.endRequest("PUT /api/v1/customers/{customerId}", 3);
+
+        // then
+        assertThat(underTest.summary().recentFlaggedRequests())
+                .singleElement()
+                .satisfies(flagged -> assertThat(flagged.statements())
+                        .containsEntry("SELECT id, name, email, age FROM customer WHERE id = ?", 2));
+    }
+
+    @Test
+    void willKeepSlowStatements() {
+        // when
+        execute("SELECT id, name, email, age FROM customer", 250);
+        execute("SELECT id, name, email, age FROM customer WHERE id = ?", 1);
+
+        // then
+        SqlStatementMonitor.Summary summary = underTest.summary();
+        assertThat(summary.slowStatements()).isEqualTo(1);
+        assertThat(summary.recentSlowStatements())
+                .singleElement()
+                .satisfies(slow -> {
+                    assertThat(slow.sql()).isEqualTo("SELECT id, name, email, age FROM customer");
+                    assertThat(slow.millis()).isEqualTo(250);
+                });
+    }
+
+    @Test
+    void willKeepTheTypesOfTheParametersNotTheValues() throws Exception {
+        // given
+        QueryInfo query = new QueryInfo("SELECT id FROM customer WHERE email = ? AND age = ? AND name = ?");
+        query.getParametersList().add(List.of(
+                new ParameterSetOperation(PreparedStatement.class.getMethod("setString", int.class, String.class),
+                        new Object[]{1, "alex@gmail.com"}),
+                new ParameterSetOperation(PreparedStatement.class.getMethod("setInt", int.class, int.class),
+                        new Object[]{2, 20}),
+                new ParameterSetOperation(PreparedStatement.class.getMethod("setNull", int.class, int.class),
+                        new Object[]{3, Types.VARCHAR})
+        ));
+        ExecutionInfo execution = new ExecutionInfo();
+        execution.setElapsedTime(250);
+
+        // when
+        underTest.afterQuery(execution, List.of(query));
+
+        // then
+        assertThat(underTest.summary().recentSlowStatements())
+                .singleElement()
+                .satisfies(slow -> assertThat(slow.parameters()).containsExactly("[1=String, 2=Integer, 3=null]"));
+    }
+}
@@ -3,12 +3,19 @@ package com.amigoscode.journey;
 import com.amigoscode.customer.Customer;
 import com.amigoscode.customer.CustomerController;
 import com.amigoscode.customer.CustomerEditRequest;
+import com.amigoscode.customer.CustomerPage;
 import com.amigoscode.customer.CustomerRegistratioRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
@@ -86,7 +93,7 @@ public class CustomerIntegrationTest {
         );
 
         assertThat(allCustomers)
-                .usingRecursiveFieldByFieldElementComparatorIgnoringFields("id")
+                .usingRecursiveFieldByFieldElementComparatorIgnoringFields("id", "version")
                 .contains(expectedCustomer);
 
         int id = allCustomers
@@ -266,5 +273,189 @@ public class CustomerIntegrationTest {
         assertThat(updatedCustomer).isEqualTo(expected);
     }
 
+    @Test
+    void canRevalidateCustomerWithETag() {
+        // create a customer
+        String name = UUID.randomUUID() + "alex";
+        String email = name + "@amigoscode.com";
+        int age = RANDOM.nextInt(1, 100);
+
+        Integer id = webTestClient
+                .post()
+                .uri(customerURI)
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new CustomerRegistratioRequest(name, email, age)), CustomerRegistratioRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Integer.class)
+                .returnResult()
+                .getResponseBody();
+
+        // the first get gives the etag
+        String eTag = webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().cacheControl(CacheControl.noCache())
+                .returnResult(Customer.class)
+                .getResponseHeaders()
+                .getETag();
+        assertThat(eTag).isEqualTo("\"0\"");
+
+        // nothing changed, no body
+        webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        // update with the etag we read
+        webTestClient
+                .put()
+                .uri(customerURI + "/{id}", id)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new CustomerEditRequest(null, null, age + 1)), CustomerEditRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // the same etag is stale now
+        webTestClient
+                .put()
+                .uri(customerURI + "/{id}", id)
+                .header(HttpHeaders.IF_MATCH, eTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Mono.just(new CustomerEditRequest(null, null, age + 2)), CustomerEditRequest.class)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectBody(Customer.class)
+                .isEqualTo(new Customer(id, name, email, age + 1));
+    }
+
+    @Test
+    void canRegisterAndGetCustomerInBinaryFormats() throws Exception {
+        String name = UUID.randomUUID() + "alex";
+        String email = name + "@amigoscode.com";
+        int age = RANDOM.nextInt(1, 100);
+        MediaType cbor = MediaType.APPLICATION_CBOR;
+        MediaType smile = MediaType.parseMediaType("application/x-jackson-smile");
+        ObjectMapper cborMapper = new CBORMapper();
+        ObjectMapper smileMapper = new SmileMapper();
+
+        // register in cbor, the id comes back in cbor too
+        byte[] cborId = webTestClient
+                .post()
+                .uri(customerURI)
+                .contentType(cbor)
+                .accept(cbor)
+                .bodyValue(cborMapper.writeValueAsBytes(new CustomerRegistratioRequest(name, email, age)))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().contentType(cbor)
+                .expectHeader().values(HttpHeaders.VARY, vary -> assertThat(vary).contains(HttpHeaders.ACCEPT))
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        int id = cborMapper.readValue(cborId, Integer.class);
+
+        // read it back in cbor, and a page with it in smile
+        byte[] cborCustomer = webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .accept(cbor)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().contentType(cbor)
+                .expectHeader().values(HttpHeaders.VARY, vary -> assertThat(vary).contains(HttpHeaders.ACCEPT))
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0-cbor\"")
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        byte[] smilePage = webTestClient
+                .get()
+                .uri(customerURI + "?limit=1&after={after}", id - 1)
+                .accept(smile)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().contentType(smile)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        Customer expectedCustomer = new Customer(id, name, email, age, 0L);
+        assertThat(cborMapper.readValue(cborCustomer, Customer.class)).isEqualTo(expectedCustomer);
+        assertThat(smileMapper.readValue(smilePage, CustomerPage.class).customers()).containsExactly(expectedCustomer);
+
+        // the etag of the json is not one of the cbor, that still needs the body
+        byte[] cborAgain = webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .accept(cbor)
+                .ifNoneMatch("\"0\"")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().contentType(cbor)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(cborMapper.readValue(cborAgain, Customer.class)).isEqualTo(expectedCustomer);
+
+        // its own is
+        webTestClient
+                .get()
+                .uri(customerURI + "/{id}", id)
+                .accept(cbor)
+                .ifNoneMatch("\"0-cbor\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader().values(HttpHeaders.VARY, vary -> assertThat(vary).contains(HttpHeaders.ACCEPT));
+
+        // and it works for If-Match as well, the version is the same in every format
+        webTestClient
+                .put()
+                .uri(customerURI + "/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "\"0-cbor\"")
+                .contentType(cbor)
+                .bodyValue(cborMapper.writeValueAsBytes(new CustomerEditRequest(null, null, age + 1)))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        // json stays the default
+        webTestClient
+                .get()
+                .uri(customerURI)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().values(HttpHeaders.VARY, vary -> assertThat(vary).contains(HttpHeaders.ACCEPT));
+    }
+
     // we can also test specific journeys , and we can write separate integration test classes for those journeys , and it should do what the client journey is from screen a to screen b
 }